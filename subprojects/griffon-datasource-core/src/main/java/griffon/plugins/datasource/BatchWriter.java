@@ -0,0 +1,78 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.datasource.exceptions.RuntimeSQLException;
+
+import java.util.List;
+
+/**
+ * Writes rows in JDBC batches using a single connection. Rows are sent every {@code batch.size} rows and
+ * committed every {@code batch.commitInterval} batches; closing the writer flushes and commits any remaining
+ * rows. A failed flush rolls back the uncommitted batches and closes the writer.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface BatchWriter extends AutoCloseable {
+    /**
+     * Adds a row. Values are bound to the statement's parameters in order.
+     */
+    void add(@Nonnull Object... values) throws RuntimeSQLException;
+
+    /**
+     * Adds a row. Values are bound to the statement's parameters in order.
+     */
+    void add(@Nonnull List<?> values) throws RuntimeSQLException;
+
+    /**
+     * Sends pending rows to the database and commits them.
+     */
+    void flush() throws RuntimeSQLException;
+
+    @Override
+    void close() throws RuntimeSQLException;
+
+    /**
+     * Number of rows sent to the database so far.
+     */
+    long getRowCount();
+
+    /**
+     * Number of batches sent to the database so far.
+     */
+    long getFlushCount();
+
+    /**
+     * Rows sent per second since the writer was created.
+     */
+    double getRowsPerSecond();
+
+    /**
+     * Average time spent sending a batch, in milliseconds.
+     */
+    double getAverageFlushTime();
+
+    /**
+     * Longest time spent sending a batch, in milliseconds.
+     */
+    double getMaxFlushTime();
+}
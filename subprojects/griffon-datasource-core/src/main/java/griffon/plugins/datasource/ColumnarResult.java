@@ -0,0 +1,459 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A query result stored column by column. Integer, bigint and floating point columns are read into primitive
+ * arrays, character columns are dictionary encoded; every other type is kept as objects. Nulls are tracked with
+ * a bitmap per column. Column lookups by name are case insensitive.
+ * <p>
+ * Use it inside a {@code ConnectionCallback} when reading many rows of few distinct types, for example
+ * <pre>
+ * ColumnarResult result = dataSourceHandler.withConnection((dataSourceName, dataSource, connection) -&gt; {
+ *     try (Statement statement = connection.createStatement();
+ *          ResultSet resultSet = statement.executeQuery("SELECT region, amount FROM sales")) {
+ *         return ColumnarResult.read(resultSet);
+ *     }
+ * });
+ * </pre>
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class ColumnarResult {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final Map<String, Integer> names;
+    private final List<String> columnNames;
+    private final Column[] columns;
+    private final int rowCount;
+
+    private ColumnarResult(@Nonnull Map<String, Integer> names, @Nonnull List<String> columnNames, @Nonnull Column[] columns, int rowCount) {
+        this.names = names;
+        this.columnNames = columnNames;
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Reads all remaining rows of the given result set. The result set is not closed.
+     */
+    @Nonnull
+    public static ColumnarResult read(@Nonnull ResultSet resultSet) throws SQLException {
+        return read(resultSet, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Reads all remaining rows of the given result set. The result set is not closed.
+     *
+     * @param expectedRows initial capacity of each column, columns grow geometrically past it
+     */
+    @Nonnull
+    public static ColumnarResult read(@Nonnull ResultSet resultSet, int expectedRows) throws SQLException {
+        requireNonNull(resultSet, "Argument 'resultSet' must not be null");
+        int capacity = Math.max(1, expectedRows);
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        Map<String, Integer> names = new TreeMap<>(CASE_INSENSITIVE_ORDER);
+        List<String> columnNames = new ArrayList<>(columnCount);
+        Column[] columns = new Column[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            String label = metaData.getColumnLabel(i + 1);
+            names.putIfAbsent(label, i);
+            columnNames.add(label);
+            columns[i] = column(label, metaData.getColumnType(i + 1), capacity);
+        }
+
+        int rows = 0;
+        while (resultSet.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                columns[i].read(resultSet, i + 1, rows);
+            }
+            rows++;
+        }
+        for (Column column : columns) {
+            column.size = rows;
+        }
+        return new ColumnarResult(Collections.unmodifiableMap(names), Collections.unmodifiableList(columnNames), columns, rows);
+    }
+
+    @Nonnull
+    private static Column column(@Nonnull String name, int sqlType, int capacity) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return new IntColumn(name, capacity);
+            case Types.BIGINT:
+                return new LongColumn(name, capacity);
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleColumn(name, capacity);
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return new StringColumn(name, capacity);
+            default:
+                return new ObjectColumn(name, capacity);
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Nonnull
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    @Nonnull
+    public Column getColumn(int index) {
+        return columns[index];
+    }
+
+    @Nonnull
+    public Column getColumn(@Nonnull String name) {
+        Integer index = names.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown column '" + name + "'. Available columns are " + columnNames);
+        }
+        return columns[index];
+    }
+
+    @Nonnull
+    public IntColumn getIntColumn(@Nonnull String name) {
+        return as(getColumn(name), IntColumn.class);
+    }
+
+    @Nonnull
+    public LongColumn getLongColumn(@Nonnull String name) {
+        return as(getColumn(name), LongColumn.class);
+    }
+
+    @Nonnull
+    public DoubleColumn getDoubleColumn(@Nonnull String name) {
+        return as(getColumn(name), DoubleColumn.class);
+    }
+
+    @Nonnull
+    public StringColumn getStringColumn(@Nonnull String name) {
+        return as(getColumn(name), StringColumn.class);
+    }
+
+    @Nonnull
+    private static <C extends Column> C as(@Nonnull Column column, @Nonnull Class<C> type) {
+        if (!type.isInstance(column)) {
+            throw new IllegalArgumentException("Column '" + column.getName() + "' is a " + column.getClass().getSimpleName() + ", expected a " + type.getSimpleName());
+        }
+        return type.cast(column);
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarResult{columns=" + columnNames + ", rows=" + rowCount + '}';
+    }
+
+    /**
+     * A single column of a {@code ColumnarResult}.
+     */
+    public abstract static class Column {
+        private final String name;
+        private long[] nulls;
+        int size;
+
+        private Column(@Nonnull String name, int capacity) {
+            this.name = name;
+            this.nulls = new long[(capacity + 63) >>> 6];
+        }
+
+        @Nonnull
+        public String getName() {
+            return name;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isNull(int row) {
+            checkIndex(row);
+            // the bitmap only grows when a null is set
+            int word = row >>> 6;
+            return word < nulls.length && (nulls[word] & (1L << row)) != 0;
+        }
+
+        /**
+         * Returns the value at the given row, boxed.
+         */
+        @Nullable
+        public abstract Object get(int row);
+
+        abstract void read(@Nonnull ResultSet resultSet, int index, int row) throws SQLException;
+
+        void setNull(int row) {
+            int word = row >>> 6;
+            if (word >= nulls.length) {
+                nulls = Arrays.copyOf(nulls, Math.max(word + 1, nulls.length << 1));
+            }
+            nulls[word] |= 1L << row;
+        }
+
+        void checkIndex(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " is out of bounds [0, " + size + ")");
+            }
+        }
+
+        static int grow(int length, int row) {
+            return row < length ? length : Math.max(row + 1, length + (length >> 1) + 1);
+        }
+    }
+
+    public static final class IntColumn extends Column {
+        private int[] values;
+
+        private IntColumn(@Nonnull String name, int capacity) {
+            super(name, capacity);
+            this.values = new int[capacity];
+        }
+
+        /**
+         * Returns the value at the given row, {@code 0} if null.
+         */
+        public int getInt(int row) {
+            checkIndex(row);
+            return values[row];
+        }
+
+        @Nonnull
+        public int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = resultSet.getInt(index);
+            if (resultSet.wasNull()) {
+                setNull(row);
+            }
+        }
+    }
+
+    public static final class LongColumn extends Column {
+        private long[] values;
+
+        private LongColumn(@Nonnull String name, int capacity) {
+            super(name, capacity);
+            this.values = new long[capacity];
+        }
+
+        /**
+         * Returns the value at the given row, {@code 0} if null.
+         */
+        public long getLong(int row) {
+            checkIndex(row);
+            return values[row];
+        }
+
+        @Nonnull
+        public long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = resultSet.getLong(index);
+            if (resultSet.wasNull()) {
+                setNull(row);
+            }
+        }
+    }
+
+    public static final class DoubleColumn extends Column {
+        private double[] values;
+
+        private DoubleColumn(@Nonnull String name, int capacity) {
+            super(name, capacity);
+            this.values = new double[capacity];
+        }
+
+        /**
+         * Returns the value at the given row, {@code 0} if null.
+         */
+        public double getDouble(int row) {
+            checkIndex(row);
+            return values[row];
+        }
+
+        @Nonnull
+        public double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = resultSet.getDouble(index);
+            if (resultSet.wasNull()) {
+                setNull(row);
+            }
+        }
+    }
+
+    /**
+     * A dictionary encoded character column. Every distinct value is stored once; rows hold its code.
+     */
+    public static final class StringColumn extends Column {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private int[] values;
+
+        private StringColumn(@Nonnull String name, int capacity) {
+            super(name, capacity);
+            this.values = new int[capacity];
+        }
+
+        @Nullable
+        public String getString(int row) {
+            checkIndex(row);
+            return isNull(row) ? null : dictionary.get(values[row]);
+        }
+
+        /**
+         * Returns the dictionary code of the value at the given row, {@code -1} if null.
+         */
+        public int getCode(int row) {
+            checkIndex(row);
+            return isNull(row) ? -1 : values[row];
+        }
+
+        /**
+         * Returns the distinct values of this column, indexed by code.
+         */
+        @Nonnull
+        public List<String> getDictionary() {
+            return Collections.unmodifiableList(dictionary);
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            return getString(row);
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            String value = resultSet.getString(index);
+            if (value == null) {
+                setNull(row);
+                return;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                codes.put(value, code);
+                dictionary.add(value);
+            }
+            values[row] = code;
+        }
+    }
+
+    public static final class ObjectColumn extends Column {
+        private Object[] values;
+
+        private ObjectColumn(@Nonnull String name, int capacity) {
+            super(name, capacity);
+            this.values = new Object[capacity];
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            checkIndex(row);
+            return values[row];
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = resultSet.getObject(index);
+            if (values[row] == null) {
+                setNull(row);
+            }
+        }
+    }
+}
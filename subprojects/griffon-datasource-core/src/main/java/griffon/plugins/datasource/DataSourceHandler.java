@@ -21,10 +21,22 @@ import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 import griffon.plugins.datasource.exceptions.RuntimeSQLException;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
 /**
  * @author Andres Almiray
  */
 public interface DataSourceHandler {
+    /**
+     * Keeps the connection's transaction isolation level when passed to {@code withTransaction}.
+     *
+     * @since 3.0.0
+     */
+    int ISOLATION_DEFAULT = -1;
+
     // tag::methods[]
     @Nullable
     <R> R withDataSource(@Nonnull DataSourceCallback<R> callback) throws RuntimeSQLException;
@@ -40,6 +52,69 @@ public interface DataSourceHandler {
     <R> R withConnection(@Nonnull String dataSourceName, @Nonnull ConnectionCallback<R> callback)
         throws RuntimeSQLException;
 
+    @Nullable
+    <R> R withTransaction(@Nonnull ConnectionCallback<R> callback) throws RuntimeSQLException;
+
+    @Nullable
+    <R> R withTransaction(@Nonnull String dataSourceName, @Nonnull ConnectionCallback<R> callback)
+        throws RuntimeSQLException;
+
+    @Nullable
+    <R> R withTransaction(@Nonnull String dataSourceName, int isolation, boolean readOnly, @Nonnull ConnectionCallback<R> callback)
+        throws RuntimeSQLException;
+
+    @Nonnull
+    <R> CompletableFuture<R> withDataSourceAsync(@Nonnull DataSourceCallback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withDataSourceAsync(@Nonnull String dataSourceName, @Nonnull DataSourceCallback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withConnectionAsync(@Nonnull ConnectionCallback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withConnectionAsync(@Nonnull String dataSourceName, @Nonnull ConnectionCallback<R> callback);
+
+    @Nonnull
+    Stream<Row> stream(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException;
+
+    @Nonnull
+    Stream<Row> stream(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params)
+        throws RuntimeSQLException;
+
+    @Nonnull
+    Stream<Row> stream(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize)
+        throws RuntimeSQLException;
+
+    @Nonnull
+    List<Row> query(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException;
+
+    @Nonnull
+    List<Row> query(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params)
+        throws RuntimeSQLException;
+
+    @Nullable
+    <R> R withResultBuffer(@Nonnull String sql, @Nonnull List<?> params, @Nonnull ResultBufferCallback<R> callback)
+        throws RuntimeSQLException;
+
+    @Nullable
+    <R> R withResultBuffer(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params, @Nonnull ResultBufferCallback<R> callback)
+        throws RuntimeSQLException;
+
+    int update(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException;
+
+    int update(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException;
+
+    @Nonnull
+    BatchWriter batchWriter(@Nonnull String sql) throws RuntimeSQLException;
+
+    @Nonnull
+    BatchWriter batchWriter(@Nonnull String dataSourceName, @Nonnull String sql) throws RuntimeSQLException;
+
+    void swapDataSource(@Nonnull Map<String, Object> configuration) throws RuntimeSQLException;
+
+    void swapDataSource(@Nonnull String dataSourceName, @Nonnull Map<String, Object> configuration) throws RuntimeSQLException;
+
     void closeDataSource();
 
     void closeDataSource(@Nonnull String dataSourceName);
@@ -0,0 +1,47 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource;
+
+import griffon.annotations.core.Nonnull;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Marks a callback as read-only. Routing dataSources send read-only callbacks to one of their replicas. On every
+ * dataSource, a writable call nested in a read-only one does not take part in its thread bound connection but runs
+ * on a connection of its own.
+ * <p>
+ * Callbacks may implement this interface directly, for example with an intersection cast
+ * {@code (ConnectionCallback<R> & ReadOnly) (name, ds, c) -> ...}, or be wrapped with one of the factory methods.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface ReadOnly {
+    @Nonnull
+    static <R> ConnectionCallback<R> connectionCallback(@Nonnull ConnectionCallback<R> callback) {
+        requireNonNull(callback, "Argument 'callback' must not be null");
+        return (ConnectionCallback<R> & ReadOnly) callback::handle;
+    }
+
+    @Nonnull
+    static <R> DataSourceCallback<R> dataSourceCallback(@Nonnull DataSourceCallback<R> callback) {
+        requireNonNull(callback, "Argument 'callback' must not be null");
+        return (DataSourceCallback<R> & ReadOnly) callback::handle;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.List;
+
+/**
+ * A fully materialized query result that supports random access and repeated iteration. Rows are stored in a
+ * compact binary format; the first {@code resultBuffer.heapSize} bytes are kept on the heap and the rest is
+ * spilled into a memory mapped temporary file, which is deleted once the buffer is closed.
+ * <p>
+ * Rows are decoded on every access. Instances are safe for concurrent reads.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface ResultBuffer extends Iterable<Row>, AutoCloseable {
+    /**
+     * Number of rows in this buffer.
+     */
+    int size();
+
+    @Nonnull
+    Row get(int index);
+
+    @Nonnull
+    List<String> getColumnNames();
+
+    /**
+     * Number of bytes held on the heap.
+     */
+    long getHeapBytes();
+
+    /**
+     * Number of bytes spilled to disk, {@code 0} if the result fit on the heap.
+     */
+    long getSpilledBytes();
+
+    /**
+     * Releases the temporary file, if any. Rows can not be accessed afterwards.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,101 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A single row of a query result. Column lookups by name are case insensitive.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class Row {
+    private final Map<String, Integer> columns;
+    private final Object[] values;
+
+    /**
+     * @param columns column indexes keyed by name, shared by all rows of the same result
+     * @param values  the values of this row
+     */
+    public Row(@Nonnull Map<String, Integer> columns, @Nonnull Object[] values) {
+        this.columns = requireNonNull(columns, "Argument 'columns' must not be null");
+        this.values = requireNonNull(values, "Argument 'values' must not be null");
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T get(int index) {
+        return (T) values[index];
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T get(@Nonnull String column) {
+        Integer index = columns.get(column);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown column '" + column + "'. Available columns are " + columns.keySet());
+        }
+        return (T) values[index];
+    }
+
+    @Nonnull
+    public Set<String> getColumnNames() {
+        return Collections.unmodifiableSet(columns.keySet());
+    }
+
+    @Nonnull
+    public Map<String, Object> asMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> column : columns.entrySet()) {
+            map.put(column.getKey(), values[column.getValue()]);
+        }
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Row row = (Row) o;
+        return columns.keySet().equals(row.columns.keySet()) && Arrays.equals(values, row.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return "Row" + asMap();
+    }
+}
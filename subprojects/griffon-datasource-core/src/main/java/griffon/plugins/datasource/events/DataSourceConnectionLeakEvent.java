@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Triggered when a sampled connection has been held for longer than the leak detection threshold without
+ * being closed. All times are expressed in milliseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DataSourceConnectionLeakEvent extends Event {
+    private final String name;
+    private final String callSite;
+    private final StackTraceElement[] stackTrace;
+    private final long heldTime;
+    private final long threshold;
+
+    public DataSourceConnectionLeakEvent(@Nonnull String name, @Nonnull String callSite, @Nonnull StackTraceElement[] stackTrace, long heldTime, long threshold) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.callSite = requireNonBlank(callSite, "Argument 'callSite' must not be blank");
+        this.stackTrace = requireNonNull(stackTrace, "Argument 'stackTrace' must not be null");
+        this.heldTime = heldTime;
+        this.threshold = threshold;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The first frame of the borrowing stack outside of this plugin and its connection pool.
+     */
+    @Nonnull
+    public String getCallSite() {
+        return callSite;
+    }
+
+    /**
+     * The stack of the thread that borrowed the connection, at the time it did so.
+     */
+    @Nonnull
+    public StackTraceElement[] getStackTrace() {
+        return stackTrace.clone();
+    }
+
+    public long getHeldTime() {
+        return heldTime;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    @Nonnull
+    public static DataSourceConnectionLeakEvent of(@Nonnull String name, @Nonnull String callSite, @Nonnull StackTraceElement[] stackTrace, long heldTime, long threshold) {
+        return new DataSourceConnectionLeakEvent(name, callSite, stackTrace, heldTime, threshold);
+    }
+}
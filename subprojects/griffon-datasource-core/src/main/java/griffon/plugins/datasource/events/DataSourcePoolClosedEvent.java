@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Triggered when the connection pool of a dataSource has been closed.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DataSourcePoolClosedEvent extends Event {
+    private final String name;
+    private final int activeConnections;
+    private final long waitTime;
+
+    public DataSourcePoolClosedEvent(@Nonnull String name, int activeConnections, long waitTime) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.activeConnections = activeConnections;
+        this.waitTime = waitTime;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of connections that were still in use when the pool was closed, and thus were aborted.
+     */
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * Milliseconds spent waiting for connections in use to be returned.
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    public boolean isDrained() {
+        return activeConnections == 0;
+    }
+
+    @Nonnull
+    public static DataSourcePoolClosedEvent of(@Nonnull String name, int activeConnections, long waitTime) {
+        return new DataSourcePoolClosedEvent(name, activeConnections, waitTime);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Triggered when a property of a connection pool is changed while the application is running.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DataSourcePoolReconfiguredEvent extends Event {
+    private final String name;
+    private final String property;
+    private final long oldValue;
+    private final long newValue;
+
+    public DataSourcePoolReconfiguredEvent(@Nonnull String name, @Nonnull String property, long oldValue, long newValue) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.property = requireNonBlank(property, "Argument 'property' must not be blank");
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public String getProperty() {
+        return property;
+    }
+
+    public long getOldValue() {
+        return oldValue;
+    }
+
+    public long getNewValue() {
+        return newValue;
+    }
+
+    @Nonnull
+    public static DataSourcePoolReconfiguredEvent of(@Nonnull String name, @Nonnull String property, long oldValue, long newValue) {
+        return new DataSourcePoolReconfiguredEvent(name, property, oldValue, newValue);
+    }
+}
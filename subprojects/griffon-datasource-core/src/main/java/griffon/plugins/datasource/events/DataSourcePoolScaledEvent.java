@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Triggered when the autoscaler of a dataSource changes the maximum size of its connection pool.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DataSourcePoolScaledEvent extends Event {
+    private final String name;
+    private final int oldSize;
+    private final int newSize;
+    private final String reason;
+
+    public DataSourcePoolScaledEvent(@Nonnull String name, int oldSize, int newSize, @Nonnull String reason) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.oldSize = oldSize;
+        this.newSize = newSize;
+        this.reason = requireNonBlank(reason, "Argument 'reason' must not be blank");
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    public int getOldSize() {
+        return oldSize;
+    }
+
+    public int getNewSize() {
+        return newSize;
+    }
+
+    /**
+     * Describes the sampled pool state that led to the change.
+     */
+    @Nonnull
+    public String getReason() {
+        return reason;
+    }
+
+    @Nonnull
+    public static DataSourcePoolScaledEvent of(@Nonnull String name, int oldSize, int newSize, @Nonnull String reason) {
+        return new DataSourcePoolScaledEvent(name, oldSize, newSize, reason);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Triggered when a callback held on to a dataSource for longer than the configured threshold.
+ * All times are expressed in milliseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DataSourceSlowCallbackEvent extends Event {
+    private final String name;
+    private final Class<?> callbackClass;
+    private final long duration;
+    private final long threshold;
+
+    public DataSourceSlowCallbackEvent(@Nonnull String name, @Nonnull Class<?> callbackClass, long duration, long threshold) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.callbackClass = requireNonNull(callbackClass, "Argument 'callbackClass' must not be null");
+        this.duration = duration;
+        this.threshold = threshold;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public Class<?> getCallbackClass() {
+        return callbackClass;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    @Nonnull
+    public static DataSourceSlowCallbackEvent of(@Nonnull String name, @Nonnull Class<?> callbackClass, long duration, long threshold) {
+        return new DataSourceSlowCallbackEvent(name, callbackClass, duration, threshold);
+    }
+}
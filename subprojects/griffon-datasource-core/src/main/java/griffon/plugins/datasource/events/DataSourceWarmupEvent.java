@@ -0,0 +1,98 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.datasource.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+
+import java.util.Map;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Triggered once a dataSource flagged with {@code connect_on_startup} has been warmed up.
+ * All times are expressed in milliseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DataSourceWarmupEvent extends Event {
+    private final String name;
+    private final Map<String, Object> config;
+    private final long connectTime;
+    private final long fillTime;
+    private final long queryTime;
+    private final int connections;
+
+    public DataSourceWarmupEvent(@Nonnull String name, @Nonnull Map<String, Object> config, long connectTime, long fillTime, long queryTime, int connections) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.config = requireNonNull(config, "Argument 'config' must not be null");
+        this.connectTime = connectTime;
+        this.fillTime = fillTime;
+        this.queryTime = queryTime;
+        this.connections = connections;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public Map<String, Object> getConfig() {
+        return config;
+    }
+
+    /**
+     * Time spent creating the dataSource and obtaining its first connection.
+     */
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * Time spent filling the connection pool up to its {@code minimumIdle} setting.
+     */
+    public long getFillTime() {
+        return fillTime;
+    }
+
+    /**
+     * Time spent executing the configured warmup queries.
+     */
+    public long getQueryTime() {
+        return queryTime;
+    }
+
+    public long getTotalTime() {
+        return connectTime + fillTime + queryTime;
+    }
+
+    /**
+     * Number of connections held open at the same time while filling the pool.
+     */
+    public int getConnections() {
+        return connections;
+    }
+
+    @Nonnull
+    public static DataSourceWarmupEvent of(@Nonnull String name, @Nonnull Map<String, Object> config, long connectTime, long fillTime, long queryTime, int connections) {
+        return new DataSourceWarmupEvent(name, config, connectTime, fillTime, queryTime, connections);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binds a connection to the current thread so that nested {@code withConnection} calls on the same dataSource
+ * reuse it. The connection is reference counted; only the outermost call closes it. Callbacks receive a view
+ * of the connection whose {@code close()} method does nothing.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class ConnectionHolder {
+    private static final ThreadLocal<Map<String, ConnectionHolder>> HOLDERS = new ThreadLocal<>();
+    private static final Class<?>[] CONNECTION_TYPES = {Connection.class};
+
+    private final String dataSourceName;
+    private final Connection connection;
+    private final boolean readOnly;
+    private int references = 1;
+    private int transactions;
+    private List<Runnable> completions;
+
+    private ConnectionHolder(@Nonnull String dataSourceName, @Nonnull Connection connection, boolean readOnly) {
+        this.dataSourceName = dataSourceName;
+        this.connection = (Connection) Proxy.newProxyInstance(ConnectionHolder.class.getClassLoader(), CONNECTION_TYPES, new UncloseableConnection(connection));
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Returns the connection bound to the current thread, incrementing its reference count.
+     *
+     * @param dataSourceName the name of the dataSource
+     * @param readOnly       whether a read-only connection suffices
+     * @return the bound holder or {@code null} if there is none, or if it holds a read-only connection
+     * and a writable one was requested
+     */
+    @Nullable
+    static ConnectionHolder acquire(@Nonnull String dataSourceName, boolean readOnly) {
+        Map<String, ConnectionHolder> holders = HOLDERS.get();
+        ConnectionHolder holder = holders != null ? holders.get(dataSourceName) : null;
+        if (holder == null || (holder.readOnly && !readOnly)) {
+            return null;
+        }
+        holder.references++;
+        return holder;
+    }
+
+    /**
+     * Binds a freshly obtained connection to the current thread.
+     *
+     * @return the new holder or {@code null} if another connection is already bound for this dataSource
+     */
+    @Nullable
+    static ConnectionHolder bind(@Nonnull String dataSourceName, @Nonnull Connection connection, boolean readOnly) {
+        Map<String, ConnectionHolder> holders = HOLDERS.get();
+        if (holders == null) {
+            holders = new HashMap<>();
+            HOLDERS.set(holders);
+        } else if (holders.containsKey(dataSourceName)) {
+            return null;
+        }
+        ConnectionHolder holder = new ConnectionHolder(dataSourceName, connection, readOnly);
+        holders.put(dataSourceName, holder);
+        return holder;
+    }
+
+    static boolean isBound(@Nonnull String dataSourceName) {
+        Map<String, ConnectionHolder> holders = HOLDERS.get();
+        return holders != null && holders.containsKey(dataSourceName);
+    }
+
+    /**
+     * Returns the connection bound to the current thread without changing its reference count.
+     */
+    @Nullable
+    static ConnectionHolder current(@Nonnull String dataSourceName) {
+        Map<String, ConnectionHolder> holders = HOLDERS.get();
+        return holders != null ? holders.get(dataSourceName) : null;
+    }
+
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    boolean isTransactionActive() {
+        return transactions > 0;
+    }
+
+    void beginTransaction() {
+        transactions++;
+    }
+
+    void endTransaction() {
+        if (--transactions == 0 && completions != null) {
+            List<Runnable> tasks = completions;
+            completions = null;
+            tasks.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Runs the given task once the outermost transaction completes, either committed or rolled back.
+     */
+    void afterTransaction(@Nonnull Runnable task) {
+        if (completions == null) {
+            completions = new ArrayList<>();
+        }
+        completions.add(task);
+    }
+
+    @Nonnull
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Decrements the reference count, unbinding this holder once it reaches zero.
+     *
+     * @return {@code true} if the caller should close the physical connection
+     */
+    boolean release() {
+        if (--references > 0) {
+            return false;
+        }
+        Map<String, ConnectionHolder> holders = HOLDERS.get();
+        holders.remove(dataSourceName);
+        if (holders.isEmpty()) {
+            HOLDERS.remove();
+        }
+        return true;
+    }
+
+    private static final class UncloseableConnection implements InvocationHandler {
+        private final Connection target;
+
+        private UncloseableConnection(@Nonnull Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ThreadBound[" + target + "]";
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -21,21 +21,36 @@ import griffon.annotations.core.Nonnull;
 import griffon.annotations.inject.DependsOn;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Metadata;
+import griffon.core.events.StartupEndEvent;
 import griffon.core.events.StartupStartEvent;
-import griffon.plugins.datasource.ConnectionCallback;
 import griffon.plugins.datasource.DataSourceFactory;
 import griffon.plugins.datasource.DataSourceHandler;
 import griffon.plugins.datasource.DataSourceStorage;
+import griffon.plugins.datasource.events.DataSourceWarmupEvent;
 import griffon.plugins.monitor.MBeanManager;
 import org.codehaus.griffon.runtime.core.addon.AbstractGriffonAddon;
+import org.codehaus.griffon.runtime.datasource.monitor.DataSourceHandlerMonitor;
 import org.codehaus.griffon.runtime.datasource.monitor.DataSourceStorageMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.application.event.EventHandler;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
-import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 
 /**
  * @author Andres Almiray
@@ -44,6 +59,10 @@ import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 @Named("datasource")
 @DependsOn("monitor")
 public class DataSourceAddon extends AbstractGriffonAddon {
+    private static final Logger LOG = LoggerFactory.getLogger(DataSourceAddon.class);
+    // HikariCP spends up to 10 seconds aborting the connections of a pool that is closed while in use
+    private static final long SHUTDOWN_MARGIN = 10_000L;
+
     @Inject
     private DataSourceHandler dataSourceHandler;
 
@@ -59,25 +78,134 @@ public class DataSourceAddon extends AbstractGriffonAddon {
     @Inject
     private Metadata metadata;
 
+    @Inject
+    private GriffonApplication application;
+
     @Override
     public void init(@Nonnull GriffonApplication application) {
         mbeanManager.registerMBean(new DataSourceStorageMonitor(metadata, dataSourceStorage));
+        mbeanManager.registerMBean(new DataSourceHandlerMonitor(metadata, dataSourceHandler, dataSourceFactory));
     }
 
     @EventHandler
     public void handleStartupStartEvent(@Nonnull StartupStartEvent event) {
+        List<String> dataSourceNames = new ArrayList<>();
         for (String dataSourceName : dataSourceFactory.getDataSourceNames()) {
-            Map<String, Object> config = dataSourceFactory.getConfigurationFor(dataSourceName);
-            if (getConfigValueAsBoolean(config, "connect_on_startup", false)) {
-                dataSourceHandler.withConnection((ConnectionCallback<Void>) (dataSourceName1, dataSource, connection) -> null);
+            if (DataSourceSettings.of(dataSourceFactory, dataSourceName).isConnectOnStartup()) {
+                dataSourceNames.add(dataSourceName);
+            }
+        }
+
+        if (dataSourceNames.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        List<DataSourceWarmupEvent> reports = new DataSourceWarmup(dataSourceHandler, dataSourceFactory).warmup(dataSourceNames);
+        long elapsed = System.currentTimeMillis() - start;
+
+        for (DataSourceWarmupEvent report : reports) {
+            LOG.info("DataSource[{}] warmed up in {}ms (connect={}ms, fill={}ms [{} connections], queries={}ms)",
+                report.getName(), report.getTotalTime(), report.getConnectTime(), report.getFillTime(),
+                report.getConnections(), report.getQueryTime());
+            application.getEventRouter().publishEvent(report);
+        }
+        LOG.info("Warmed up {} dataSource(s) in {}ms", reports.size(), elapsed);
+    }
+
+    @EventHandler
+    public void handleStartupEndEvent(@Nonnull StartupEndEvent event) {
+        List<String> dataSourceNames = new ArrayList<>();
+        for (String dataSourceName : dataSourceFactory.getDataSourceNames()) {
+            DataSourceSettings settings = DataSourceSettings.of(dataSourceFactory, dataSourceName);
+            if (settings.isLazy() && settings.isLazyBackground()) {
+                dataSourceNames.add(dataSourceName);
+            }
+        }
+
+        if (dataSourceNames.isEmpty()) {
+            return;
+        }
+
+        Thread thread = new Thread(() -> initialize(dataSourceNames), "datasource-initializer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void initialize(@Nonnull List<String> dataSourceNames) {
+        for (String dataSourceName : dataSourceNames) {
+            try {
+                dataSourceHandler.withDataSource(dataSourceName, (name, dataSource) -> {
+                    if (dataSource.isWrapperFor(LazyDataSource.class)) {
+                        dataSource.unwrap(LazyDataSource.class).initialize();
+                    }
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                // the dataSource is created again on first use
+                LOG.warn("Could not create dataSource '{}' in the background", dataSourceName, e);
             }
         }
     }
 
     @Override
     public void onShutdown(@Nonnull GriffonApplication application) {
-        for (String dataSourceName : dataSourceFactory.getDataSourceNames()) {
-            dataSourceHandler.closeDataSource(dataSourceName);
+        List<String> dataSourceNames = new ArrayList<>(dataSourceFactory.getDataSourceNames());
+        long timeout = 0;
+        for (String dataSourceName : dataSourceNames) {
+            timeout = Math.max(timeout, DataSourceSettings.of(dataSourceFactory, dataSourceName).getDrainTimeout());
+        }
+        timeout += SHUTDOWN_MARGIN;
+
+        // every pool gets the whole grace period instead of waiting for the ones closed before it
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, dataSourceNames.size()), runnable -> {
+            Thread thread = new Thread(runnable, "datasource-shutdown-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Future<Integer>> closures = new LinkedHashMap<>();
+        for (String dataSourceName : dataSourceNames) {
+            closures.put(dataSourceName, executor.submit(() -> closeDataSource(dataSourceName)));
+        }
+        executor.shutdown();
+
+        long start = System.nanoTime();
+        long deadline = start + MILLISECONDS.toNanos(timeout);
+        List<String> pending = new ArrayList<>();
+        Map<String, Integer> undrainedPools = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<Integer>> closure : closures.entrySet()) {
+            try {
+                int activeConnections = closure.getValue().get(Math.max(0L, deadline - System.nanoTime()), NANOSECONDS);
+                if (activeConnections > 0) {
+                    undrainedPools.put(closure.getKey(), activeConnections);
+                }
+            } catch (TimeoutException e) {
+                pending.add(closure.getKey());
+            } catch (ExecutionException e) {
+                LOG.error("Could not close dataSource '{}'", closure.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.add(closure.getKey());
+            }
+        }
+        executor.shutdownNow();
+
+        long elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (!pending.isEmpty()) {
+            LOG.warn("DataSource(s) {} were not closed within {}ms", pending, timeout);
+        }
+        if (!undrainedPools.isEmpty()) {
+            LOG.warn("Connection pool(s) closed with connections still in use (by dataSource): {}", undrainedPools);
+        }
+        LOG.info("Closed dataSources in {}ms", elapsed);
+    }
+
+    private int closeDataSource(@Nonnull String dataSourceName) {
+        if (dataSourceHandler instanceof DefaultDataSourceHandler) {
+            return ((DefaultDataSourceHandler) dataSourceHandler).close(dataSourceName);
         }
+        dataSourceHandler.closeDataSource(dataSourceName);
+        return 0;
     }
 }
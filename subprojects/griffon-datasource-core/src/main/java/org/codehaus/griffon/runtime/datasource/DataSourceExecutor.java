@@ -0,0 +1,277 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Runs asynchronous callbacks for a single dataSource. Concurrency matches the pool's {@code maximumPoolSize}
+ * so that excess work waits in a bounded queue rather than on the pool's {@code connectionTimeout}.
+ * <p>
+ * Callbacks run on a fixed set of platform threads by default. When {@code async.virtualThreads} is enabled
+ * and the JVM supports them, every callback gets its own virtual thread instead, and a semaphore caps how many
+ * of them may hold a connection at the same time.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class DataSourceExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(DataSourceExecutor.class);
+
+    static final int DEFAULT_POOL_SIZE = 10;
+    static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    enum RejectionPolicy {
+        /**
+         * Completes the returned future with a {@code RejectedExecutionException}.
+         */
+        ABORT,
+        /**
+         * Runs the callback on the calling thread.
+         */
+        CALLER_RUNS
+    }
+
+    private final ExecutorService executor;
+    private final RejectionPolicy rejectionPolicy;
+    private final Semaphore permits;
+    private final int capacity;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // draining only turns new work away, shutting down also cancels callbacks still waiting for a permit
+    private volatile boolean draining;
+    private volatile boolean shutdown;
+
+    DataSourceExecutor(@Nonnull String dataSourceName, int threads, int queueSize, @Nonnull RejectionPolicy rejectionPolicy) {
+        this(dataSourceName, threads, queueSize, rejectionPolicy, false);
+    }
+
+    DataSourceExecutor(@Nonnull String dataSourceName, int threads, int queueSize, @Nonnull RejectionPolicy rejectionPolicy, boolean virtualThreads) {
+        requireNonBlank(dataSourceName, "Argument 'dataSourceName' must not be blank");
+        this.rejectionPolicy = requireNonNull(rejectionPolicy, "Argument 'rejectionPolicy' must not be null");
+        threads = Math.max(1, threads);
+        queueSize = Math.max(1, queueSize);
+
+        ExecutorService virtualThreadExecutor = virtualThreads ? VirtualThreads.newExecutor("datasource-" + dataSourceName + "-") : null;
+        if (virtualThreadExecutor != null) {
+            this.executor = virtualThreadExecutor;
+            this.permits = new Semaphore(threads);
+            this.capacity = threads + queueSize;
+        } else {
+            if (virtualThreads) {
+                LOG.warn("Virtual threads are not supported by this JVM. DataSource '{}' will use platform threads", dataSourceName);
+            }
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads, 60L, SECONDS,
+                new LinkedBlockingQueue<>(queueSize), new DataSourceThreadFactory(dataSourceName));
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            this.executor = threadPoolExecutor;
+            this.permits = null;
+            this.capacity = Integer.MAX_VALUE;
+        }
+    }
+
+    @Nonnull
+    static DataSourceExecutor create(@Nonnull DataSourceSettings settings) {
+        return new DataSourceExecutor(settings.getName(), settings.getAsyncThreads(), settings.getAsyncQueueSize(),
+            RejectionPolicy.valueOf(settings.getAsyncRejectionPolicy()), settings.isAsyncVirtualThreads());
+    }
+
+    boolean isVirtual() {
+        return permits != null;
+    }
+
+    @Nonnull
+    <R> CompletableFuture<R> submit(@Nonnull Supplier<R> supplier) {
+        AsyncTask<R> task = new AsyncTask<>(supplier);
+        try {
+            if (permits != null) {
+                submitLimited(task);
+            } else {
+                executor.execute(task);
+            }
+        } catch (RejectedExecutionException e) {
+            if (rejectionPolicy == RejectionPolicy.CALLER_RUNS && !draining && !shutdown) {
+                task.run();
+            } else {
+                task.future.completeExceptionally(e);
+            }
+        }
+        return task.future;
+    }
+
+    private void submitLimited(@Nonnull AsyncTask<?> task) {
+        if (outstanding.incrementAndGet() > capacity) {
+            outstanding.decrementAndGet();
+            throw new RejectedExecutionException("Too many pending callbacks");
+        }
+        try {
+            executor.execute(() -> runLimited(task));
+        } catch (RejectedExecutionException e) {
+            outstanding.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void runLimited(@Nonnull AsyncTask<?> task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.cancel(false);
+            outstanding.decrementAndGet();
+            return;
+        }
+        try {
+            if (shutdown) {
+                task.future.cancel(false);
+            } else {
+                task.run();
+            }
+        } finally {
+            permits.release();
+            outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stops accepting new work while letting callbacks already submitted run.
+     */
+    void drain() {
+        draining = true;
+        executor.shutdown();
+    }
+
+    /**
+     * Stops accepting new work. Callbacks that are already running are allowed to finish whereas
+     * queued callbacks are cancelled.
+     */
+    void shutdown() {
+        shutdown = true;
+        executor.shutdown();
+        if (executor instanceof ThreadPoolExecutor) {
+            List<Runnable> pending = new ArrayList<>();
+            ((ThreadPoolExecutor) executor).getQueue().drainTo(pending);
+            for (Runnable runnable : pending) {
+                ((AsyncTask<?>) runnable).future.cancel(false);
+            }
+        }
+    }
+
+    private static class AsyncTask<R> implements Runnable {
+        private final Supplier<R> supplier;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private AsyncTask(@Nonnull Supplier<R> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                // cancelled while queued
+                return;
+            }
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    private static class DataSourceThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private DataSourceThreadFactory(@Nonnull String dataSourceName) {
+            this.prefix = "datasource-" + dataSourceName + "-";
+        }
+
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Looks up the virtual thread API reflectively as this plugin targets Java 8.
+     */
+    private static final class VirtualThreads {
+        private static final Method OF_VIRTUAL;
+        private static final Method NAME;
+        private static final Method FACTORY;
+        private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method factory = null;
+            Method newThreadPerTaskExecutor = null;
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builderClass.getMethod("name", String.class, long.class);
+                factory = builderClass.getMethod("factory");
+                newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            } catch (ReflectiveOperationException e) {
+                // not available
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            FACTORY = factory;
+            NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        }
+
+        @Nullable
+        private static ExecutorService newExecutor(@Nonnull String prefix) {
+            if (NEW_THREAD_PER_TASK_EXECUTOR == null) {
+                return null;
+            }
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 1L);
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, FACTORY.invoke(builder));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // preview API disabled or otherwise unusable
+                LOG.debug("Could not create a virtual thread executor", e);
+                return null;
+            }
+        }
+    }
+}
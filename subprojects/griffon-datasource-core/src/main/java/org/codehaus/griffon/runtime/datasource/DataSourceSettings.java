@@ -0,0 +1,779 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.datasource.DataSourceFactory;
+import org.codehaus.griffon.runtime.datasource.metrics.ConnectionLeakTracker;
+import org.codehaus.griffon.runtime.datasource.metrics.SlowCallbackTracker;
+import org.codehaus.griffon.runtime.datasource.schema.SqlScriptExecutor;
+import org.codehaus.griffon.runtime.datasource.schema.SqlScriptReader;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Typed, immutable view of a single dataSource configuration. Every value is read, converted and checked once
+ * when the settings are created, so that a misspelled pool property or a value of the wrong type fails at
+ * startup instead of being silently ignored or failing on first use.
+ * <p>
+ * Pool properties are applied to {@code HikariConfig} through its setters directly; only the properties listed
+ * by {@link #getPoolPropertyNames()} are accepted.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class DataSourceSettings {
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final String name;
+    private final Map<String, Object> configuration;
+    private final String driverClassName;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final boolean pooled;
+    private final boolean jmx;
+    private final boolean connectOnStartup;
+    private final boolean skipSchema;
+    private final String dbCreate;
+    private final boolean threadBoundConnections;
+    private final long drainTimeout;
+    private final Map<String, Object> pool;
+    private final String poolOverrides;
+
+    private final boolean lazy;
+    private final boolean lazyBackground;
+
+    private final boolean warmupFillPool;
+    private final List<String> warmupQueries;
+
+    private final String ddlDelimiter;
+    private final int ddlBatchSize;
+    private final boolean ddlContinueOnError;
+
+    private final int streamFetchSize;
+
+    private final int batchSize;
+    private final boolean batchRewriteInserts;
+    private final int batchMaxParameters;
+    private final int batchCommitInterval;
+
+    private final int statementCacheSize;
+    private final int statementCacheMaxSqlLength;
+
+    private final long slowCallbackThreshold;
+    private final int slowCallbackCapacity;
+
+    private final long leakDetectionThreshold;
+    private final int leakDetectionSampleRate;
+    private final boolean leakDetectionAdaptive;
+    private final int leakDetectionCapacity;
+
+    private final int asyncThreads;
+    private final int asyncQueueSize;
+    private final String asyncRejectionPolicy;
+    private final boolean asyncVirtualThreads;
+
+    private final boolean routing;
+    private final String routingPrimary;
+    private final List<String> routingReplicas;
+    private final long routingEjectTime;
+
+    private final long resultCacheMaxRows;
+    private final long resultCacheTtl;
+
+    private final boolean autoscale;
+    private final int autoscaleMinPoolSize;
+    private final int autoscaleMaxPoolSize;
+    private final int autoscaleStep;
+    private final long autoscaleInterval;
+    private final long autoscaleCooldown;
+    private final int autoscaleGrowAfter;
+    private final int autoscaleShrinkAfter;
+    private final long autoscaleAcquireTimeThreshold;
+
+    private final long resultBufferHeapSize;
+    private final String resultBufferDirectory;
+
+    private DataSourceSettings(@Nonnull String name, @Nonnull Map<String, Object> configuration) {
+        this.name = name;
+        this.configuration = unmodifiableMap(new LinkedHashMap<>(configuration));
+
+        Section root = new Section(name, configuration);
+        driverClassName = root.asString("driverClassName", "");
+        url = root.asString("url", "");
+        username = root.asString("username", "");
+        password = root.asString("password", "");
+        pooled = root.asBoolean("pooled", true);
+        jmx = root.asBoolean("jmx", true);
+        connectOnStartup = root.asBoolean("connect_on_startup", false);
+        skipSchema = root.asBoolean("schema", false);
+        dbCreate = root.asString("dbCreate", "skip");
+        threadBoundConnections = root.asBoolean("threadBoundConnections", false);
+        drainTimeout = root.asLong("drainTimeout", 30_000L);
+        pool = readPool(root.section("pool"));
+        poolOverrides = root.asString("poolOverrides", null);
+
+        Section lazyInit = root.section("lazy");
+        lazy = lazyInit.asBoolean("enabled", false);
+        lazyBackground = lazyInit.asBoolean("background", false);
+
+        Section warmup = root.section("warmup");
+        warmupFillPool = warmup.asBoolean("fillPool", true);
+        warmupQueries = warmup.asList("queries");
+
+        Section ddl = root.section("ddl");
+        ddlDelimiter = ddl.asString("delimiter", SqlScriptReader.DEFAULT_DELIMITER);
+        ddlBatchSize = ddl.asInt("batchSize", SqlScriptExecutor.DEFAULT_BATCH_SIZE);
+        ddlContinueOnError = ddl.asBoolean("continueOnError", false);
+
+        streamFetchSize = root.section("stream").asInt("fetchSize", DEFAULT_FETCH_SIZE);
+
+        Section batch = root.section("batch");
+        batchSize = batch.asInt("size", DefaultBatchWriter.DEFAULT_BATCH_SIZE);
+        batchRewriteInserts = batch.asBoolean("rewriteInserts", false);
+        batchMaxParameters = batch.asInt("maxParameters", DefaultBatchWriter.DEFAULT_MAX_PARAMETERS);
+        batchCommitInterval = batch.asInt("commitInterval", DefaultBatchWriter.DEFAULT_COMMIT_INTERVAL);
+
+        Section statementCache = root.section("statementCache");
+        statementCacheSize = statementCache.asInt("size", 0);
+        statementCacheMaxSqlLength = statementCache.asInt("maxSqlLength", StatementCachingDataSource.DEFAULT_MAX_SQL_LENGTH);
+
+        Section slowCallback = root.section("slowCallback");
+        slowCallbackThreshold = slowCallback.asLong("threshold", 0L);
+        slowCallbackCapacity = slowCallback.asInt("capacity", SlowCallbackTracker.DEFAULT_CAPACITY);
+
+        Section leakDetection = root.section("leakDetection");
+        leakDetectionThreshold = leakDetection.asLong("threshold", 0L);
+        leakDetectionSampleRate = leakDetection.asInt("sampleRate", ConnectionLeakTracker.DEFAULT_SAMPLE_RATE);
+        leakDetectionAdaptive = leakDetection.asBoolean("adaptive", true);
+        leakDetectionCapacity = leakDetection.asInt("capacity", ConnectionLeakTracker.DEFAULT_CAPACITY);
+        if (leakDetectionThreshold > 0) {
+            leakDetection.check("sampleRate", leakDetectionSampleRate, leakDetectionSampleRate >= 1, "at least 1");
+        }
+
+        Section async = root.section("async");
+        asyncThreads = async.asInt("threads", getMaximumPoolSize());
+        asyncQueueSize = async.asInt("queueSize", DataSourceExecutor.DEFAULT_QUEUE_SIZE);
+        asyncRejectionPolicy = readRejectionPolicy(async);
+        asyncVirtualThreads = async.asBoolean("virtualThreads", false);
+
+        Section routingSection = root.section("routing");
+        routing = !routingSection.values.isEmpty();
+        routingPrimary = routingSection.asString("primary", DefaultDataSourceFactory.KEY_DEFAULT);
+        routingReplicas = routingSection.asList("replicas");
+        routingEjectTime = routingSection.asLong("ejectTime", RoutingDataSource.DEFAULT_EJECT_TIME);
+
+        Section resultCache = root.section("resultCache");
+        resultCacheMaxRows = resultCache.asLong("maxRows", 0L);
+        resultCacheTtl = resultCache.asLong("ttl", 0L);
+
+        Section autoscaleSection = root.section("autoscale");
+        autoscale = autoscaleSection.asBoolean("enabled", false);
+        autoscaleMinPoolSize = autoscaleSection.asInt("minPoolSize", 1);
+        autoscaleMaxPoolSize = autoscaleSection.asInt("maxPoolSize", 2 * getMaximumPoolSize());
+        autoscaleStep = autoscaleSection.asInt("step", 2);
+        autoscaleInterval = autoscaleSection.asLong("interval", 1000L);
+        autoscaleCooldown = autoscaleSection.asLong("cooldown", 10_000L);
+        autoscaleGrowAfter = autoscaleSection.asInt("growAfter", 2);
+        autoscaleShrinkAfter = autoscaleSection.asInt("shrinkAfter", 30);
+        autoscaleAcquireTimeThreshold = autoscaleSection.asLong("acquireTimeThreshold", 50L);
+        if (autoscale) {
+            autoscaleSection.check("minPoolSize", autoscaleMinPoolSize, autoscaleMinPoolSize >= 1, "at least 1");
+            autoscaleSection.check("maxPoolSize", autoscaleMaxPoolSize, autoscaleMaxPoolSize >= autoscaleMinPoolSize, "at least minPoolSize (" + autoscaleMinPoolSize + ")");
+            autoscaleSection.check("step", autoscaleStep, autoscaleStep >= 1, "at least 1");
+            autoscaleSection.check("interval", autoscaleInterval, autoscaleInterval >= 1, "at least 1");
+            autoscaleSection.check("growAfter", autoscaleGrowAfter, autoscaleGrowAfter >= 1, "at least 1");
+            autoscaleSection.check("shrinkAfter", autoscaleShrinkAfter, autoscaleShrinkAfter >= 1, "at least 1");
+        }
+
+        Section resultBuffer = root.section("resultBuffer");
+        resultBufferHeapSize = resultBuffer.asLong("heapSize", DefaultResultBuffer.DEFAULT_HEAP_SIZE);
+        resultBufferDirectory = resultBuffer.asString("directory", null);
+    }
+
+    /**
+     * Reads and validates the configuration of a dataSource.
+     *
+     * @param name          the name of the dataSource
+     * @param configuration the configuration of the dataSource
+     *
+     * @return the settings of the dataSource
+     *
+     * @throws IllegalArgumentException if a pool property is unknown or a value cannot be converted to the expected type
+     */
+    @Nonnull
+    public static DataSourceSettings of(@Nonnull String name, @Nonnull Map<String, Object> configuration) {
+        requireNonBlank(name, "Argument 'name' must not be blank");
+        requireNonNull(configuration, "Argument 'configuration' must not be null");
+        return new DataSourceSettings(name, configuration);
+    }
+
+    /**
+     * Returns the settings held by the factory when it keeps them, reads them from its configuration otherwise.
+     */
+    @Nonnull
+    static DataSourceSettings of(@Nonnull DataSourceFactory dataSourceFactory, @Nonnull String name) {
+        if (dataSourceFactory instanceof DefaultDataSourceFactory) {
+            return ((DefaultDataSourceFactory) dataSourceFactory).getSettingsFor(name);
+        }
+        return of(name, dataSourceFactory.getConfigurationFor(name));
+    }
+
+    /**
+     * Returns the names of all pool properties that may be set on a pooled dataSource.
+     */
+    @Nonnull
+    public static Collection<String> getPoolPropertyNames() {
+        List<String> names = new ArrayList<>();
+        for (PoolProperty property : PoolProperty.values()) {
+            names.add(property.key);
+        }
+        return unmodifiableList(names);
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the configuration these settings were read from.
+     */
+    @Nonnull
+    public Map<String, Object> getConfiguration() {
+        return configuration;
+    }
+
+    @Nonnull
+    public String getDriverClassName() {
+        return driverClassName;
+    }
+
+    @Nonnull
+    public String getUrl() {
+        return url;
+    }
+
+    @Nonnull
+    public String getUsername() {
+        return username;
+    }
+
+    @Nonnull
+    public String getPassword() {
+        return password;
+    }
+
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    public boolean isConnectOnStartup() {
+        return connectOnStartup;
+    }
+
+    public boolean isSkipSchema() {
+        return skipSchema;
+    }
+
+    @Nonnull
+    public String getDbCreate() {
+        return dbCreate;
+    }
+
+    public boolean isThreadBoundConnections() {
+        return threadBoundConnections;
+    }
+
+    /**
+     * Milliseconds a replaced dataSource is given to finish its callbacks before it is closed.
+     */
+    public long getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    /**
+     * Returns the converted pool properties, keyed by property name.
+     */
+    @Nonnull
+    public Map<String, Object> getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the path of the file that keeps pool properties changed at runtime, if any.
+     */
+    @Nullable
+    public String getPoolOverrides() {
+        return poolOverrides;
+    }
+
+    public int getMaximumPoolSize() {
+        Object maximumPoolSize = pool.get(PoolProperty.MAXIMUM_POOL_SIZE.key);
+        return maximumPoolSize != null ? (Integer) maximumPoolSize : DataSourceExecutor.DEFAULT_POOL_SIZE;
+    }
+
+    /**
+     * Whether the pool and schema are created when a connection is requested for the first time.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Whether a lazy dataSource is created in the background once the application has started.
+     */
+    public boolean isLazyBackground() {
+        return lazyBackground;
+    }
+
+    public boolean isWarmupFillPool() {
+        return warmupFillPool;
+    }
+
+    @Nonnull
+    public List<String> getWarmupQueries() {
+        return warmupQueries;
+    }
+
+    @Nonnull
+    public String getDdlDelimiter() {
+        return ddlDelimiter;
+    }
+
+    public int getDdlBatchSize() {
+        return ddlBatchSize;
+    }
+
+    public boolean isDdlContinueOnError() {
+        return ddlContinueOnError;
+    }
+
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public boolean isBatchRewriteInserts() {
+        return batchRewriteInserts;
+    }
+
+    public int getBatchMaxParameters() {
+        return batchMaxParameters;
+    }
+
+    public int getBatchCommitInterval() {
+        return batchCommitInterval;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public int getStatementCacheMaxSqlLength() {
+        return statementCacheMaxSqlLength;
+    }
+
+    public long getSlowCallbackThreshold() {
+        return slowCallbackThreshold;
+    }
+
+    public int getSlowCallbackCapacity() {
+        return slowCallbackCapacity;
+    }
+
+    /**
+     * Milliseconds a sampled connection may be held before it is reported as leaked, {@code 0} if disabled.
+     */
+    public long getLeakDetectionThreshold() {
+        return leakDetectionThreshold;
+    }
+
+    public int getLeakDetectionSampleRate() {
+        return leakDetectionSampleRate;
+    }
+
+    /**
+     * Whether every borrow is sampled while threads are waiting for a connection.
+     */
+    public boolean isLeakDetectionAdaptive() {
+        return leakDetectionAdaptive;
+    }
+
+    public int getLeakDetectionCapacity() {
+        return leakDetectionCapacity;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    @Nonnull
+    public String getAsyncRejectionPolicy() {
+        return asyncRejectionPolicy;
+    }
+
+    public boolean isAsyncVirtualThreads() {
+        return asyncVirtualThreads;
+    }
+
+    public boolean isRouting() {
+        return routing;
+    }
+
+    @Nonnull
+    public String getRoutingPrimary() {
+        return routingPrimary;
+    }
+
+    @Nonnull
+    public List<String> getRoutingReplicas() {
+        return routingReplicas;
+    }
+
+    public long getRoutingEjectTime() {
+        return routingEjectTime;
+    }
+
+    public long getResultCacheMaxRows() {
+        return resultCacheMaxRows;
+    }
+
+    public long getResultCacheTtl() {
+        return resultCacheTtl;
+    }
+
+    public boolean isAutoscale() {
+        return autoscale;
+    }
+
+    public int getAutoscaleMinPoolSize() {
+        return autoscaleMinPoolSize;
+    }
+
+    public int getAutoscaleMaxPoolSize() {
+        return autoscaleMaxPoolSize;
+    }
+
+    public int getAutoscaleStep() {
+        return autoscaleStep;
+    }
+
+    public long getAutoscaleInterval() {
+        return autoscaleInterval;
+    }
+
+    public long getAutoscaleCooldown() {
+        return autoscaleCooldown;
+    }
+
+    public int getAutoscaleGrowAfter() {
+        return autoscaleGrowAfter;
+    }
+
+    public int getAutoscaleShrinkAfter() {
+        return autoscaleShrinkAfter;
+    }
+
+    public long getAutoscaleAcquireTimeThreshold() {
+        return autoscaleAcquireTimeThreshold;
+    }
+
+    public long getResultBufferHeapSize() {
+        return resultBufferHeapSize;
+    }
+
+    @Nullable
+    public String getResultBufferDirectory() {
+        return resultBufferDirectory;
+    }
+
+    /**
+     * Returns a copy of these settings with the given pool properties replaced.
+     */
+    @Nonnull
+    DataSourceSettings withPool(@Nonnull Map<String, ?> properties) {
+        if (properties.isEmpty()) {
+            return this;
+        }
+        Map<String, Object> poolConfiguration = new LinkedHashMap<>(new Section(name, configuration).section("pool").values);
+        poolConfiguration.putAll(properties);
+        Map<String, Object> copy = new LinkedHashMap<>(configuration);
+        copy.put("pool", poolConfiguration);
+        return new DataSourceSettings(name, copy);
+    }
+
+    /**
+     * Applies the pool properties to the given {@code HikariConfig}.
+     */
+    void configure(@Nonnull HikariConfig hikariConfig) {
+        for (Map.Entry<String, Object> entry : pool.entrySet()) {
+            PoolProperty.of(entry.getKey()).setter.accept(hikariConfig, entry.getValue());
+        }
+    }
+
+    @Nonnull
+    private Map<String, Object> readPool(@Nonnull Section section) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : section.values.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            PoolProperty property = PoolProperty.of(key);
+            if (property == null) {
+                throw new IllegalArgumentException("Configuration for " + section.path + "." + key +
+                    " is not a known pool property. Valid properties are " + new TreeSet<>(getPoolPropertyNames()));
+            }
+            if (entry.getValue() != null) {
+                values.put(key, property.convert(section, key));
+            }
+        }
+        return unmodifiableMap(values);
+    }
+
+    @Nonnull
+    private static String readRejectionPolicy(@Nonnull Section section) {
+        String policy = section.asString("rejectionPolicy", DataSourceExecutor.RejectionPolicy.ABORT.name())
+            .toUpperCase(Locale.ENGLISH).replace('-', '_');
+        try {
+            return DataSourceExecutor.RejectionPolicy.valueOf(policy).name();
+        } catch (IllegalArgumentException e) {
+            throw section.invalid("rejectionPolicy", "one of abort, caller-runs");
+        }
+    }
+
+    private static final class Section {
+        private final String path;
+        private final Map<String, Object> values;
+
+        private Section(@Nonnull String path, @Nonnull Map<String, Object> values) {
+            this.path = path;
+            this.values = values;
+        }
+
+        @Nonnull
+        @SuppressWarnings("unchecked")
+        private Section section(@Nonnull String key) {
+            Object value = values.get(key);
+            if (value == null) {
+                return new Section(path + "." + key, Collections.<String, Object>emptyMap());
+            }
+            if (!(value instanceof Map)) {
+                throw invalid(key, "a map");
+            }
+            return new Section(path + "." + key, (Map<String, Object>) value);
+        }
+
+        private String asString(@Nonnull String key, @Nullable String defaultValue) {
+            Object value = values.get(key);
+            return value != null ? String.valueOf(value) : defaultValue;
+        }
+
+        private boolean asBoolean(@Nonnull String key, boolean defaultValue) {
+            Object value = values.get(key);
+            if (value == null) {
+                return defaultValue;
+            } else if (value instanceof Boolean) {
+                return (Boolean) value;
+            }
+            String s = String.valueOf(value).trim();
+            if ("true".equalsIgnoreCase(s)) {
+                return true;
+            } else if ("false".equalsIgnoreCase(s)) {
+                return false;
+            }
+            throw invalid(key, "a boolean");
+        }
+
+        private int asInt(@Nonnull String key, int defaultValue) {
+            long value = asLong(key, defaultValue);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw invalid(key, "an int");
+            }
+            return (int) value;
+        }
+
+        private long asLong(@Nonnull String key, long defaultValue) {
+            Object value = values.get(key);
+            if (value == null) {
+                return defaultValue;
+            } else if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            try {
+                return Long.parseLong(String.valueOf(value).trim());
+            } catch (NumberFormatException e) {
+                throw invalid(key, "a number");
+            }
+        }
+
+        @Nonnull
+        private List<String> asList(@Nonnull String key) {
+            Object value = values.get(key);
+            if (value == null) {
+                return Collections.emptyList();
+            } else if (!(value instanceof Collection)) {
+                throw invalid(key, "a list");
+            }
+            List<String> list = new ArrayList<>();
+            for (Object element : (Collection<?>) value) {
+                list.add(String.valueOf(element));
+            }
+            return unmodifiableList(list);
+        }
+
+        @Nonnull
+        private <T> T asInstanceOf(@Nonnull String key, @Nonnull Class<T> type) {
+            Object value = values.get(key);
+            if (!type.isInstance(value)) {
+                throw invalid(key, "an instance of " + type.getName());
+            }
+            return type.cast(value);
+        }
+
+        @Nonnull
+        private Properties asProperties(@Nonnull String key) {
+            Object value = values.get(key);
+            if (value instanceof Properties) {
+                return (Properties) value;
+            } else if (!(value instanceof Map)) {
+                throw invalid(key, "a map");
+            }
+            Properties properties = new Properties();
+            properties.putAll((Map<?, ?>) value);
+            return properties;
+        }
+
+        private void check(@Nonnull String key, long value, boolean condition, @Nonnull String expected) {
+            if (!condition) {
+                throw new IllegalArgumentException("Configuration for " + path + "." + key + " must be " + expected + " but was '" + value + "'");
+            }
+        }
+
+        @Nonnull
+        private IllegalArgumentException invalid(@Nonnull String key, @Nonnull String expected) {
+            return new IllegalArgumentException("Configuration for " + path + "." + key + " must be " + expected + " but was '" + values.get(key) + "'");
+        }
+    }
+
+    private enum PoolProperty {
+        ALLOW_POOL_SUSPENSION("allowPoolSuspension", Boolean.class, (c, v) -> c.setAllowPoolSuspension((Boolean) v)),
+        AUTO_COMMIT("autoCommit", Boolean.class, (c, v) -> c.setAutoCommit((Boolean) v)),
+        CATALOG("catalog", String.class, (c, v) -> c.setCatalog((String) v)),
+        CONNECTION_INIT_SQL("connectionInitSql", String.class, (c, v) -> c.setConnectionInitSql((String) v)),
+        CONNECTION_TEST_QUERY("connectionTestQuery", String.class, (c, v) -> c.setConnectionTestQuery((String) v)),
+        CONNECTION_TIMEOUT("connectionTimeout", Long.class, (c, v) -> c.setConnectionTimeout((Long) v)),
+        DATA_SOURCE("dataSource", DataSource.class, (c, v) -> c.setDataSource((DataSource) v)),
+        DATA_SOURCE_CLASS_NAME("dataSourceClassName", String.class, (c, v) -> c.setDataSourceClassName((String) v)),
+        DATA_SOURCE_JNDI("dataSourceJNDI", String.class, (c, v) -> c.setDataSourceJNDI((String) v)),
+        DATA_SOURCE_PROPERTIES("dataSourceProperties", Properties.class, (c, v) -> c.setDataSourceProperties((Properties) v)),
+        DRIVER_CLASS_NAME("driverClassName", String.class, (c, v) -> c.setDriverClassName((String) v)),
+        EXCEPTION_OVERRIDE_CLASS_NAME("exceptionOverrideClassName", String.class, (c, v) -> c.setExceptionOverrideClassName((String) v)),
+        HEALTH_CHECK_PROPERTIES("healthCheckProperties", Properties.class, (c, v) -> c.setHealthCheckProperties((Properties) v)),
+        HEALTH_CHECK_REGISTRY("healthCheckRegistry", Object.class, HikariConfig::setHealthCheckRegistry),
+        IDLE_TIMEOUT("idleTimeout", Long.class, (c, v) -> c.setIdleTimeout((Long) v)),
+        INITIALIZATION_FAIL_TIMEOUT("initializationFailTimeout", Long.class, (c, v) -> c.setInitializationFailTimeout((Long) v)),
+        ISOLATE_INTERNAL_QUERIES("isolateInternalQueries", Boolean.class, (c, v) -> c.setIsolateInternalQueries((Boolean) v)),
+        JDBC_URL("jdbcUrl", String.class, (c, v) -> c.setJdbcUrl((String) v)),
+        LEAK_DETECTION_THRESHOLD("leakDetectionThreshold", Long.class, (c, v) -> c.setLeakDetectionThreshold((Long) v)),
+        MAX_LIFETIME("maxLifetime", Long.class, (c, v) -> c.setMaxLifetime((Long) v)),
+        MAXIMUM_POOL_SIZE("maximumPoolSize", Integer.class, (c, v) -> c.setMaximumPoolSize((Integer) v)),
+        METRIC_REGISTRY("metricRegistry", Object.class, HikariConfig::setMetricRegistry),
+        METRICS_TRACKER_FACTORY("metricsTrackerFactory", MetricsTrackerFactory.class, (c, v) -> c.setMetricsTrackerFactory((MetricsTrackerFactory) v)),
+        MINIMUM_IDLE("minimumIdle", Integer.class, (c, v) -> c.setMinimumIdle((Integer) v)),
+        PASSWORD("password", String.class, (c, v) -> c.setPassword((String) v)),
+        POOL_NAME("poolName", String.class, (c, v) -> c.setPoolName((String) v)),
+        READ_ONLY("readOnly", Boolean.class, (c, v) -> c.setReadOnly((Boolean) v)),
+        REGISTER_MBEANS("registerMbeans", Boolean.class, (c, v) -> c.setRegisterMbeans((Boolean) v)),
+        SCHEDULED_EXECUTOR("scheduledExecutor", ScheduledExecutorService.class, (c, v) -> c.setScheduledExecutor((ScheduledExecutorService) v)),
+        SCHEMA("schema", String.class, (c, v) -> c.setSchema((String) v)),
+        THREAD_FACTORY("threadFactory", ThreadFactory.class, (c, v) -> c.setThreadFactory((ThreadFactory) v)),
+        TRANSACTION_ISOLATION("transactionIsolation", String.class, (c, v) -> c.setTransactionIsolation((String) v)),
+        USERNAME("username", String.class, (c, v) -> c.setUsername((String) v)),
+        VALIDATION_TIMEOUT("validationTimeout", Long.class, (c, v) -> c.setValidationTimeout((Long) v));
+
+        private static final Map<String, PoolProperty> BY_KEY = new LinkedHashMap<>();
+
+        static {
+            for (PoolProperty property : values()) {
+                BY_KEY.put(property.key, property);
+            }
+        }
+
+        private final String key;
+        private final Class<?> type;
+        private final BiConsumer<HikariConfig, Object> setter;
+
+        PoolProperty(@Nonnull String key, @Nonnull Class<?> type, @Nonnull BiConsumer<HikariConfig, Object> setter) {
+            this.key = key;
+            this.type = type;
+            this.setter = setter;
+        }
+
+        @Nullable
+        private static PoolProperty of(@Nonnull String key) {
+            return BY_KEY.get(key);
+        }
+
+        @Nonnull
+        private Object convert(@Nonnull Section section, @Nonnull String key) {
+            if (type == Integer.class) {
+                return section.asInt(key, 0);
+            } else if (type == Long.class) {
+                return section.asLong(key, 0L);
+            } else if (type == Boolean.class) {
+                return section.asBoolean(key, false);
+            } else if (type == String.class) {
+                return section.asString(key, "");
+            } else if (type == Properties.class) {
+                return section.asProperties(key);
+            }
+            return section.asInstanceOf(key, type);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.datasource.DataSourceFactory;
+import griffon.plugins.datasource.DataSourceHandler;
+import griffon.plugins.datasource.events.DataSourceWarmupEvent;
+import griffon.plugins.datasource.exceptions.RuntimeSQLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Initializes a set of dataSources in parallel, filling each pool up to {@code minimumIdle} and
+ * executing the queries configured in {@code warmup.queries}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class DataSourceWarmup {
+    private static final Logger LOG = LoggerFactory.getLogger(DataSourceWarmup.class);
+
+    private final DataSourceHandler dataSourceHandler;
+    private final DataSourceFactory dataSourceFactory;
+
+    DataSourceWarmup(@Nonnull DataSourceHandler dataSourceHandler, @Nonnull DataSourceFactory dataSourceFactory) {
+        this.dataSourceHandler = requireNonNull(dataSourceHandler, "Argument 'dataSourceHandler' must not be null");
+        this.dataSourceFactory = requireNonNull(dataSourceFactory, "Argument 'dataSourceFactory' must not be null");
+    }
+
+    @Nonnull
+    List<DataSourceWarmupEvent> warmup(@Nonnull Collection<String> dataSourceNames) {
+        if (dataSourceNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int threads = Math.min(dataSourceNames.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new WarmupThreadFactory());
+        try {
+            List<Future<DataSourceWarmupEvent>> futures = new ArrayList<>();
+            for (String dataSourceName : dataSourceNames) {
+                futures.add(executor.submit(() -> warmup(dataSourceName)));
+            }
+
+            List<DataSourceWarmupEvent> reports = new ArrayList<>();
+            RuntimeException failure = null;
+            for (Future<DataSourceWarmupEvent> future : futures) {
+                try {
+                    reports.add(future.get());
+                } catch (ExecutionException e) {
+                    RuntimeException re = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+                    if (failure == null) {
+                        failure = re;
+                    } else {
+                        failure.addSuppressed(re);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while warming up dataSources", e);
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            return reports;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Nonnull
+    private DataSourceWarmupEvent warmup(@Nonnull String dataSourceName) {
+        DataSourceSettings settings = DataSourceSettings.of(dataSourceFactory, dataSourceName);
+
+        long start = System.nanoTime();
+        dataSourceHandler.withConnection(dataSourceName, (name, dataSource, connection) -> null);
+        long connected = System.nanoTime();
+
+        int connections = 1;
+        if (settings.isWarmupFillPool()) {
+            connections = dataSourceHandler.withDataSource(dataSourceName, DataSourceWarmup::fillPool);
+        }
+        long filled = System.nanoTime();
+
+        List<String> queries = settings.getWarmupQueries();
+        if (!queries.isEmpty()) {
+            dataSourceHandler.withConnection(dataSourceName, (name, dataSource, connection) -> {
+                executeQueries(connection, queries);
+                return null;
+            });
+        }
+        long queried = System.nanoTime();
+
+        return DataSourceWarmupEvent.of(dataSourceName, settings.getConfiguration(),
+            NANOSECONDS.toMillis(connected - start),
+            NANOSECONDS.toMillis(filled - connected),
+            NANOSECONDS.toMillis(queried - filled),
+            connections);
+    }
+
+    /**
+     * Opens a connection, runs the warmup queries and fills the pool of a dataSource that is not in use yet.
+     *
+     * @return the number of connections opened
+     */
+    static int prepare(@Nonnull DataSourceSettings settings, @Nonnull DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            executeQueries(connection, settings.getWarmupQueries());
+        }
+        return settings.isWarmupFillPool() ? fillPool(settings.getName(), dataSource) : 1;
+    }
+
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    private static int fillPool(@Nonnull String dataSourceName, @Nonnull DataSource dataSource) throws SQLException {
+        if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+            return 1;
+        }
+
+        HikariDataSource hikariDataSource = dataSource.unwrap(HikariDataSource.class);
+        int target = Math.min(hikariDataSource.getMinimumIdle(), hikariDataSource.getMaximumPoolSize());
+
+        // holding connections open forces the pool to create new ones instead of handing out the same idle connection
+        List<Connection> connections = new ArrayList<>(target);
+        Throwable failure = null;
+        try {
+            for (int i = 0; i < target; i++) {
+                connections.add(dataSource.getConnection());
+            }
+        } catch (SQLException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            // every connection goes back to the pool, even if some of them fail to close
+            RuntimeSQLException closeFailure = null;
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    if (failure != null) {
+                        failure.addSuppressed(e);
+                    } else if (closeFailure == null) {
+                        closeFailure = new RuntimeSQLException(dataSourceName, e);
+                    } else {
+                        closeFailure.addSuppressed(e);
+                    }
+                }
+            }
+            if (closeFailure != null) {
+                throw closeFailure;
+            }
+        }
+        return connections.size();
+    }
+
+    private static void executeQueries(@Nonnull Connection connection, @Nonnull List<String> queries) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String query : queries) {
+                LOG.trace("Executing warmup query {}", query);
+                if (statement.execute(query)) {
+                    try (ResultSet resultSet = statement.getResultSet()) {
+                        while (resultSet.next()) {
+                            // drain results so that the driver fully processes the query
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static class WarmupThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread thread = new Thread(r, "datasource-warmup-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
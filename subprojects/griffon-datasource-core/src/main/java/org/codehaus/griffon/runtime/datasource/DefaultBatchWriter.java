@@ -0,0 +1,405 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.datasource.BatchWriter;
+import griffon.plugins.datasource.exceptions.RuntimeSQLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * {@code BatchWriter} backed by JDBC batches or, for {@code INSERT ... VALUES (...)} statements, by multi-row
+ * inserts of the form {@code INSERT ... VALUES (...), (...), ...}. A writer running on a connection borrowed from
+ * an enclosing transaction neither commits, rolls back nor closes it; that is left to the transaction.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class DefaultBatchWriter implements BatchWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultBatchWriter.class);
+
+    static final int DEFAULT_BATCH_SIZE = 500;
+    static final int DEFAULT_COMMIT_INTERVAL = 1;
+    // below the 2100 bind parameters accepted by SQL Server, the lowest limit among common databases
+    static final int DEFAULT_MAX_PARAMETERS = 2000;
+
+    private static final Pattern INSERT_VALUES = Pattern.compile("(?is)^\\s*INSERT\\s+INTO\\s+.+?\\s+VALUES\\s*(?=\\()");
+    private static final Pattern STATEMENT_END = Pattern.compile("\\s*;?\\s*");
+
+    private final String dataSourceName;
+    private final Connection connection;
+    private final boolean owned;
+    private final boolean autoCommit;
+    private final int batchSize;
+    private final int commitInterval;
+    private final Runnable onCommit;
+    private final Consumer<SQLException> completion;
+    private final long start = System.nanoTime();
+
+    // multi-row insert rewriting, prefix is null when disabled
+    private final String prefix;
+    private final String row;
+    private final int parametersPerRow;
+    private final List<Object[]> pendingRows = new ArrayList<>();
+
+    private PreparedStatement statement;
+    private int pendingBatch;
+    private int uncommittedBatches;
+    private long rowCount;
+    private long flushCount;
+    private long totalFlushTime;
+    private long maxFlushTime;
+    private boolean closed;
+
+    private DefaultBatchWriter(@Nonnull String dataSourceName, @Nonnull Connection connection, boolean owned, @Nonnull String sql, int batchSize, boolean rewriteInserts, int maxParameters, int commitInterval, @Nonnull Runnable onCommit, @Nonnull Consumer<SQLException> completion) throws SQLException {
+        this.dataSourceName = dataSourceName;
+        this.connection = connection;
+        this.owned = owned;
+        this.onCommit = onCommit;
+        this.completion = completion;
+        this.commitInterval = Math.max(1, commitInterval);
+
+        Matcher matcher = rewriteInserts ? INSERT_VALUES.matcher(sql) : null;
+        int rowEnd = matcher != null && matcher.lookingAt() ? closingParenthesis(sql, matcher.end()) : -1;
+        // only a statement ending right after its row can be repeated, e.g. ON CONFLICT clauses or extra rows can not
+        if (rowEnd > 0 && STATEMENT_END.matcher(sql).region(rowEnd, sql.length()).matches()) {
+            this.prefix = sql.substring(0, matcher.end());
+            this.row = sql.substring(matcher.end(), rowEnd);
+            this.parametersPerRow = Math.max(1, countParameters(row));
+            this.batchSize = Math.max(1, Math.min(batchSize, maxParameters / parametersPerRow));
+        } else {
+            if (rewriteInserts) {
+                LOG.warn("Statement on dataSource '{}' can not be rewritten as a multi-row insert: {}", dataSourceName, sql);
+            }
+            this.prefix = null;
+            this.row = null;
+            this.parametersPerRow = 0;
+            this.batchSize = Math.max(1, batchSize);
+        }
+
+        // the auto-commit mode of a borrowed connection is left to its owner
+        this.autoCommit = owned && connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        this.statement = connection.prepareStatement(prefix != null ? rewrite(this.batchSize) : sql);
+    }
+
+    /**
+     * @param owned         whether the writer owns the connection, committing and closing it
+     * @param maxParameters bind parameters allowed in a single multi-row insert, caps the rows per rewritten batch
+     * @param onCommit      invoked after every commit, or after every batch on a borrowed connection, e.g. to invalidate
+     *                      cached query results
+     * @param completion    invoked once the writer has been released, with the failure if there was one
+     */
+    @Nonnull
+    static BatchWriter open(@Nonnull String dataSourceName, @Nonnull Connection connection, boolean owned, @Nonnull String sql, int batchSize, boolean rewriteInserts, int maxParameters, int commitInterval, @Nonnull Runnable onCommit, @Nonnull Consumer<SQLException> completion) {
+        requireNonBlank(dataSourceName, "Argument 'dataSourceName' must not be blank");
+        requireNonNull(connection, "Argument 'connection' must not be null");
+        requireNonBlank(sql, "Argument 'sql' must not be blank");
+        requireNonNull(onCommit, "Argument 'onCommit' must not be null");
+        requireNonNull(completion, "Argument 'completion' must not be null");
+        try {
+            return new DefaultBatchWriter(dataSourceName, connection, owned, sql, batchSize, rewriteInserts, maxParameters, commitInterval, onCommit, completion);
+        } catch (SQLException e) {
+            RuntimeSQLException exception = new RuntimeSQLException(dataSourceName, e);
+            if (owned) {
+                try {
+                    connection.close();
+                } catch (SQLException closeException) {
+                    exception.addSuppressed(closeException);
+                }
+            }
+            completion.accept(e);
+            throw exception;
+        }
+    }
+
+    @Override
+    public void add(@Nonnull Object... values) {
+        requireNonNull(values, "Argument 'values' must not be null");
+        checkOpen();
+
+        if (prefix != null) {
+            if (values.length != parametersPerRow) {
+                throw new IllegalArgumentException("Expected " + parametersPerRow + " values but got " + values.length);
+            }
+            pendingRows.add(values.clone());
+            if (pendingRows.size() >= batchSize) {
+                send();
+            }
+            return;
+        }
+
+        try {
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            statement.addBatch();
+        } catch (SQLException e) {
+            throw fail(e);
+        }
+        if (++pendingBatch >= batchSize) {
+            send();
+        }
+    }
+
+    @Override
+    public void add(@Nonnull List<?> values) {
+        requireNonNull(values, "Argument 'values' must not be null");
+        add(values.toArray());
+    }
+
+    @Override
+    public void flush() {
+        checkOpen();
+        if (pendingBatch > 0 || !pendingRows.isEmpty()) {
+            send();
+        }
+        if (uncommittedBatches > 0) {
+            commit();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            LOG.debug("Wrote {} rows in {} batches to dataSource '{}' ({} rows/s)", rowCount, flushCount, dataSourceName, (long) getRowsPerSecond());
+        } finally {
+            release(null);
+        }
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        long elapsed = System.nanoTime() - start;
+        return elapsed > 0 ? rowCount * 1_000_000_000d / elapsed : 0d;
+    }
+
+    @Override
+    public double getAverageFlushTime() {
+        return flushCount > 0 ? totalFlushTime / (double) flushCount / 1_000_000d : 0d;
+    }
+
+    @Override
+    public double getMaxFlushTime() {
+        return maxFlushTime / 1_000_000d;
+    }
+
+    private void send() {
+        long begin = System.nanoTime();
+        int rows;
+        try {
+            if (prefix != null) {
+                rows = sendRows();
+            } else {
+                statement.executeBatch();
+                rows = pendingBatch;
+                pendingBatch = 0;
+            }
+        } catch (SQLException e) {
+            throw fail(e);
+        }
+
+        long elapsed = System.nanoTime() - begin;
+        totalFlushTime += elapsed;
+        maxFlushTime = Math.max(maxFlushTime, elapsed);
+        rowCount += rows;
+        flushCount++;
+        if (++uncommittedBatches >= commitInterval) {
+            commit();
+        }
+    }
+
+    private int sendRows() throws SQLException {
+        int rows = pendingRows.size();
+        if (rows == batchSize) {
+            bind(statement);
+            statement.executeUpdate();
+        } else {
+            // trailing rows, only happens when flushing
+            try (PreparedStatement trailing = connection.prepareStatement(rewrite(rows))) {
+                bind(trailing);
+                trailing.executeUpdate();
+            }
+        }
+        pendingRows.clear();
+        return rows;
+    }
+
+    private void bind(@Nonnull PreparedStatement target) throws SQLException {
+        int index = 1;
+        for (Object[] values : pendingRows) {
+            for (Object value : values) {
+                target.setObject(index++, value);
+            }
+        }
+    }
+
+    private void commit() {
+        if (!owned) {
+            uncommittedBatches = 0;
+            onCommit.run();
+            return;
+        }
+        try {
+            connection.commit();
+            uncommittedBatches = 0;
+        } catch (SQLException e) {
+            throw fail(e);
+        }
+        onCommit.run();
+    }
+
+    @Nonnull
+    private RuntimeSQLException fail(@Nonnull SQLException e) {
+        RuntimeSQLException exception = new RuntimeSQLException(dataSourceName, e);
+        if (owned) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                exception.addSuppressed(rollbackException);
+            }
+        }
+        release(exception);
+        return exception;
+    }
+
+    private void release(RuntimeSQLException failure) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pendingRows.clear();
+
+        RuntimeSQLException exception = failure;
+        try {
+            statement.close();
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            exception = suppress(exception, e);
+        }
+        if (owned) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                exception = suppress(exception, e);
+            }
+        }
+        completion.accept(cause(exception));
+        if (exception != null && failure == null) {
+            throw exception;
+        }
+    }
+
+    @Nullable
+    private static SQLException cause(@Nullable RuntimeSQLException exception) {
+        return exception != null && exception.getCause() instanceof SQLException ? (SQLException) exception.getCause() : null;
+    }
+
+    @Nonnull
+    private RuntimeSQLException suppress(RuntimeSQLException exception, @Nonnull SQLException e) {
+        if (exception == null) {
+            return new RuntimeSQLException(dataSourceName, e);
+        }
+        exception.addSuppressed(e);
+        return exception;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("BatchWriter on dataSource '" + dataSourceName + "' has been closed");
+        }
+    }
+
+    @Nonnull
+    private String rewrite(int rows) {
+        StringBuilder sql = new StringBuilder(prefix.length() + (row.length() + 1) * rows).append(prefix);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(',');
+            }
+            sql.append(row);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Returns the index right after the parenthesis closing the one at {@code start}, or -1 if there is none.
+     */
+    private static int closingParenthesis(@Nonnull String sql, int start) {
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = start; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')' && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int countParameters(@Nonnull String row) {
+        int count = 0;
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -19,47 +19,70 @@ package org.codehaus.griffon.runtime.datasource;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
 import com.zaxxer.hikari.util.DriverDataSource;
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import griffon.core.Configuration;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Environment;
 import griffon.core.env.Metadata;
 import griffon.exceptions.GriffonException;
 import griffon.plugins.datasource.DataSourceFactory;
+import griffon.plugins.datasource.DataSourceHandler;
+import griffon.plugins.datasource.DataSourceStorage;
 import griffon.plugins.datasource.events.DataSourceConnectEndEvent;
 import griffon.plugins.datasource.events.DataSourceConnectStartEvent;
+import griffon.plugins.datasource.events.DataSourceConnectionLeakEvent;
 import griffon.plugins.datasource.events.DataSourceDisconnectEndEvent;
 import griffon.plugins.datasource.events.DataSourceDisconnectStartEvent;
+import griffon.plugins.datasource.events.DataSourcePoolClosedEvent;
+import griffon.plugins.datasource.events.DataSourcePoolReconfiguredEvent;
+import griffon.plugins.datasource.exceptions.RuntimeSQLException;
 import griffon.plugins.monitor.MBeanManager;
-import griffon.util.GriffonClassUtils;
 import org.codehaus.griffon.runtime.core.storage.AbstractObjectFactory;
+import org.codehaus.griffon.runtime.datasource.metrics.ConnectionLeakTracker;
+import org.codehaus.griffon.runtime.datasource.metrics.ConnectionPoolMetrics;
+import org.codehaus.griffon.runtime.datasource.monitor.ConnectionLeakMonitor;
 import org.codehaus.griffon.runtime.datasource.monitor.HikariPoolMonitor;
+import org.codehaus.griffon.runtime.datasource.monitor.OperationMonitor;
+import org.codehaus.griffon.runtime.datasource.monitor.PoolAutoscalerMonitor;
+import org.codehaus.griffon.runtime.datasource.monitor.StatementCacheMonitor;
+import org.codehaus.griffon.runtime.datasource.schema.SqlScriptExecutor;
+import org.codehaus.griffon.runtime.datasource.schema.SqlScriptReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
-import static griffon.core.GriffonExceptionHandler.sanitize;
 import static griffon.core.env.Environment.getEnvironmentShortName;
-import static griffon.util.ConfigUtils.getConfigValue;
-import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
-import static griffon.util.ConfigUtils.getConfigValueAsString;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * @author Andres Almiray
@@ -67,7 +90,12 @@ import static java.util.Objects.requireNonNull;
 public class DefaultDataSourceFactory extends AbstractObjectFactory<DataSource> implements DataSourceFactory {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultDataSourceFactory.class);
     private static final String ERROR_DATASOURCE_BLANK = "Argument 'dataSourceName' must not be blank";
+    private static final long CLOSE_POLL_INTERVAL = 10L;
     private final Set<String> dataSourceNames = new LinkedHashSet<>();
+    private final Map<String, DataSourceSettings> settings = new ConcurrentHashMap<>();
+    private final Map<HikariDataSource, PoolAutoscaler> autoscalers = new ConcurrentHashMap<>();
+    private final Map<String, DataSource> mbeanOwners = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
 
     @Inject
     private MBeanManager mBeanManager;
@@ -78,6 +106,12 @@ public class DefaultDataSourceFactory extends AbstractObjectFactory<DataSource>
     @Inject
     private Environment environment;
 
+    @Inject
+    private Provider<DataSourceHandler> dataSourceHandler;
+
+    @Inject
+    private DataSourceStorage dataSourceStorage;
+
     @Inject
     public DefaultDataSourceFactory(@Nonnull @Named("datasource") Configuration configuration, @Nonnull GriffonApplication application) {
         super(configuration, application);
@@ -87,6 +121,11 @@ public class DefaultDataSourceFactory extends AbstractObjectFactory<DataSource>
             Map<String, Object> datasources = (Map<String, Object>) configuration.get(getPluralKey());
             dataSourceNames.addAll(datasources.keySet());
         }
+
+        // read every configuration up front so that invalid settings fail at startup
+        for (String dataSourceName : dataSourceNames) {
+            settings.put(dataSourceName, readSettings(dataSourceName));
+        }
     }
 
     @Nonnull
@@ -98,8 +137,49 @@ public class DefaultDataSourceFactory extends AbstractObjectFactory<DataSource>
     @Nonnull
     @Override
     public Map<String, Object> getConfigurationFor(@Nonnull String dataSourceName) {
+        return getSettingsFor(dataSourceName).getConfiguration();
+    }
+
+    /**
+     * Returns the validated settings of the given dataSource.
+     *
+     * @param dataSourceName the name of the dataSource
+     *
+     * @return the settings of the dataSource
+     */
+    @Nonnull
+    public DataSourceSettings getSettingsFor(@Nonnull String dataSourceName) {
         requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
-        return narrowConfig(dataSourceName);
+        DataSourceSettings dataSourceSettings = settings.get(dataSourceName);
+        return dataSourceSettings != null ? dataSourceSettings : settings.computeIfAbsent(dataSourceName, this::readSettings);
+    }
+
+    /**
+     * Makes the given settings the current ones for their dataSource.
+     */
+    void setSettings(@Nonnull DataSourceSettings dataSourceSettings) {
+        settings.put(dataSourceSettings.getName(), dataSourceSettings);
+    }
+
+    @Nonnull
+    private DataSourceSettings readSettings(@Nonnull String dataSourceName) {
+        return readSettings(dataSourceName, narrowConfig(dataSourceName));
+    }
+
+    /**
+     * Reads the given configuration of a dataSource, applying its pool overrides if any.
+     */
+    @Nonnull
+    DataSourceSettings readSettings(@Nonnull String dataSourceName, @Nonnull Map<String, Object> configuration) {
+        DataSourceSettings dataSourceSettings = DataSourceSettings.of(dataSourceName, configuration);
+        if (dataSourceSettings.getPoolOverrides() != null) {
+            Map<String, Object> overrides = PoolOverrides.read(Paths.get(dataSourceSettings.getPoolOverrides()));
+            if (!overrides.isEmpty()) {
+                LOG.info("DataSource '{}' uses pool overrides {}", dataSourceName, overrides);
+            }
+            dataSourceSettings = dataSourceSettings.withPool(overrides);
+        }
+        return dataSourceSettings;
     }
 
     @Nonnull
@@ -117,60 +197,375 @@ public class DefaultDataSourceFactory extends AbstractObjectFactory<DataSource>
     @Nonnull
     @Override
     public DataSource create(@Nonnull String name) {
-        requireNonBlank(name, ERROR_DATASOURCE_BLANK);
-        Map<String, Object> config = narrowConfig(name);
+        return create(getSettingsFor(name), false);
+    }
+
+    /**
+     * Creates a dataSource from the given settings, which need not be the ones currently held for its name.
+     *
+     * @param dataSourceSettings the settings of the dataSource
+     * @param warmup             whether to open a connection, fill the pool and run the warmup queries before
+     *                           the dataSource is exposed over JMX and returned. Lazy dataSources are created
+     *                           right away when set.
+     *
+     * @return a new dataSource
+     */
+    @Nonnull
+    public DataSource create(@Nonnull DataSourceSettings dataSourceSettings, boolean warmup) {
+        requireNonNull(dataSourceSettings, "Argument 'dataSourceSettings' must not be null");
+        String name = dataSourceSettings.getName();
+        Map<String, Object> config = dataSourceSettings.getConfiguration();
+
+        if (dataSourceSettings.isLazy() && !dataSourceSettings.isRouting() && !warmup) {
+            // events and MBeans follow the pool, which is created on first use
+            LazyDataSource lazyDataSource = new LazyDataSource(name, () -> {
+                event(DataSourceConnectStartEvent.of(name, config));
+                return createPool(dataSourceSettings, false);
+            });
+            DataSource dataSource = decorate(dataSourceSettings, lazyDataSource);
+            lazyDataSource.setInitializationListener(() -> connected(dataSourceSettings, dataSource));
+            LOG.debug("DataSource '{}' will be created on first use", name);
+            return dataSource;
+        }
 
         event(DataSourceConnectStartEvent.of(name, config));
 
-        DataSource dataSource = createDataSource(config, name);
-        boolean skipSchema = getConfigValueAsBoolean(config, "schema", false);
-        if (!skipSchema) {
-            processSchema(config, name, dataSource);
+        if (dataSourceSettings.isRouting()) {
+            DataSource dataSource = createRoutingDataSource(dataSourceSettings, name);
+            event(DataSourceConnectEndEvent.of(name, config, dataSource));
+            return dataSource;
         }
 
-        if (getConfigValueAsBoolean(config, "jmx", true) && getConfigValueAsBoolean(config, "pooled", true)) {
-            dataSource = new JMXAwareDataSource(dataSource);
-            registerMBeans(name, (JMXAwareDataSource) dataSource);
+        DataSource dataSource = decorate(dataSourceSettings, createPool(dataSourceSettings, warmup));
+        connected(dataSourceSettings, dataSource);
+        return dataSource;
+    }
+
+    /**
+     * Creates the dataSource, processes its schema, warms it up if requested and starts its autoscaler.
+     */
+    @Nonnull
+    private DataSource createPool(@Nonnull DataSourceSettings dataSourceSettings, boolean warmup) {
+        String name = dataSourceSettings.getName();
+        DataSource dataSource = createDataSource(dataSourceSettings, name);
+        try {
+            if (!dataSourceSettings.isSkipSchema()) {
+                processSchema(dataSourceSettings, name, dataSource);
+            }
+            if (warmup) {
+                DataSourceWarmup.prepare(dataSourceSettings, dataSource);
+            }
+        } catch (SQLException | RuntimeException e) {
+            // lazy dataSources try again on next use, do not leave the failed pool behind
+            closePool(dataSource);
+            throw e instanceof SQLException ? new RuntimeSQLException(name, (SQLException) e) : (RuntimeException) e;
+        }
+
+        if (dataSourceSettings.isAutoscale() && dataSource instanceof HikariDataSource) {
+            startAutoscaler(dataSourceSettings, (HikariDataSource) dataSource);
         }
+        return dataSource;
+    }
 
-        event(DataSourceConnectEndEvent.of(name, config, dataSource));
+    @Nonnull
+    private DataSource decorate(@Nonnull DataSourceSettings dataSourceSettings, @Nonnull DataSource dataSource) {
+        if (dataSourceSettings.getStatementCacheSize() > 0 && dataSourceSettings.isPooled()) {
+            dataSource = new StatementCachingDataSource(dataSource, dataSourceSettings.getStatementCacheSize(),
+                dataSourceSettings.getStatementCacheMaxSqlLength(), connectionEvictor(dataSource));
+        }
 
+        if (dataSourceSettings.getLeakDetectionThreshold() > 0) {
+            BooleanSupplier pressure = dataSourceSettings.isLeakDetectionAdaptive() && dataSourceSettings.isPooled() ? poolPressure(dataSource) : null;
+            ConnectionLeakTracker tracker = new ConnectionLeakTracker(dataSourceSettings.getName(),
+                dataSourceSettings.getLeakDetectionThreshold(),
+                dataSourceSettings.getLeakDetectionSampleRate(),
+                dataSourceSettings.getLeakDetectionCapacity(),
+                pressure,
+                this::connectionLeaked);
+            dataSource = new LeakTrackingDataSource(dataSource, tracker);
+            tracker.start(getScheduler());
+        }
+
+        if (dataSourceSettings.isJmx()) {
+            dataSource = new JMXAwareDataSource(dataSource);
+        }
         return dataSource;
     }
 
+    /**
+     * Tells whether threads are waiting for a connection. Lazy dataSources are not under pressure until created.
+     */
+    @Nonnull
+    private static BooleanSupplier poolPressure(@Nonnull DataSource dataSource) {
+        HikariPoolMXBean[] pool = new HikariPoolMXBean[1];
+        return () -> {
+            if (pool[0] == null) {
+                HikariDataSource hikariDataSource = unwrap(dataSource, HikariDataSource.class);
+                if (hikariDataSource == null) {
+                    return false;
+                }
+                pool[0] = hikariDataSource.getHikariPoolMXBean();
+            }
+            return pool[0] != null && pool[0].getThreadsAwaitingConnection() > 0;
+        };
+    }
+
+    /**
+     * Evicts broken connections from the pool. Connections are only broken after the dataSource has been created.
+     */
+    @Nonnull
+    private static Consumer<Connection> connectionEvictor(@Nonnull DataSource dataSource) {
+        return connection -> {
+            HikariDataSource hikariDataSource = unwrap(dataSource, HikariDataSource.class);
+            if (hikariDataSource != null) {
+                hikariDataSource.evictConnection(connection);
+            }
+        };
+    }
+
+    private void connectionLeaked(@Nonnull DataSourceConnectionLeakEvent event) {
+        Throwable borrowedAt = new Throwable("Connection borrowed here");
+        borrowedAt.setStackTrace(event.getStackTrace());
+        LOG.warn("Connection of dataSource '{}' borrowed at {} has been held for {}ms, it may have leaked",
+            event.getName(), event.getCallSite(), event.getHeldTime(), borrowedAt);
+        getApplication().getEventRouter().publishEventAsync(event);
+    }
+
+    private void connected(@Nonnull DataSourceSettings dataSourceSettings, @Nonnull DataSource dataSource) {
+        if (dataSource instanceof JMXAwareDataSource) {
+            registerMBeans(dataSourceSettings.getName(), (JMXAwareDataSource) dataSource);
+        }
+        event(DataSourceConnectEndEvent.of(dataSourceSettings.getName(), dataSourceSettings.getConfiguration(), dataSource));
+    }
+
     @Override
     public void destroy(@Nonnull String name, @Nonnull DataSource instance) {
+        close(name, instance);
+    }
+
+    /**
+     * Destroys the given dataSource, closing its connection pool.
+     *
+     * @return the number of connections that were still in use when the pool was closed
+     */
+    public int close(@Nonnull String name, @Nonnull DataSource instance) {
         requireNonBlank(name, ERROR_DATASOURCE_BLANK);
         requireNonNull(instance, "Argument 'instance' must not be null");
-        Map<String, Object> config = narrowConfig(name);
+        DataSourceSettings dataSourceSettings = getSettingsFor(name);
+        Map<String, Object> config = dataSourceSettings.getConfiguration();
+
+        LeakTrackingDataSource leakTrackingDataSource = unwrap(instance, LeakTrackingDataSource.class);
+        if (leakTrackingDataSource != null) {
+            leakTrackingDataSource.getTracker().stop();
+        }
+
+        LazyDataSource lazyDataSource = unwrap(instance, LazyDataSource.class);
+        if (lazyDataSource != null && lazyDataSource.close() == null) {
+            // never created, nothing was announced nor registered
+            LOG.debug("DataSource '{}' was never used", name);
+            return 0;
+        }
 
         event(DataSourceDisconnectStartEvent.of(name, config, instance));
 
-        if (getConfigValueAsBoolean(config, "jmx", true) && getConfigValueAsBoolean(config, "pooled", true)) {
+        HikariDataSource hikariDataSource = unwrap(instance, HikariDataSource.class);
+        PoolAutoscaler autoscaler = hikariDataSource != null ? autoscalers.remove(hikariDataSource) : null;
+        if (autoscaler != null) {
+            autoscaler.stop();
+        }
+
+        if (instance instanceof JMXAwareDataSource) {
             unregisterMBeans((JMXAwareDataSource) instance);
         }
 
+        int activeConnections = 0;
+        if (hikariDataSource != null && !hikariDataSource.isClosed()) {
+            activeConnections = closePool(name, hikariDataSource, dataSourceSettings.getDrainTimeout());
+        }
+
         event(DataSourceDisconnectEndEvent.of(name, config));
+        return activeConnections;
+    }
+
+    /**
+     * Closes idle connections right away and waits up to {@code timeout} milliseconds for the ones in use to be
+     * returned. Connections still in use after that are aborted.
+     *
+     * @return the number of connections that were aborted
+     */
+    private int closePool(@Nonnull String name, @Nonnull HikariDataSource dataSource, long timeout) {
+        long start = System.nanoTime();
+        int activeConnections = 0;
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            pool.softEvictConnections();
+            long deadline = start + MILLISECONDS.toNanos(timeout);
+            while (pool.getActiveConnections() > 0 && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(CLOSE_POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            activeConnections = pool.getActiveConnections();
+        }
+        long waitTime = NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        if (activeConnections > 0) {
+            LOG.warn("Connection pool of dataSource '{}' still had {} active connection(s) after {}ms, closing it anyway", name, activeConnections, waitTime);
+        } else {
+            LOG.debug("Connection pool of dataSource '{}' drained in {}ms", name, waitTime);
+        }
+        dataSource.close();
+
+        event(DataSourcePoolClosedEvent.of(name, activeConnections, waitTime));
+        return activeConnections;
     }
 
     private void registerMBeans(@Nonnull String name, @Nonnull JMXAwareDataSource dataSource) {
-        HikariPoolMonitor poolMonitor = new HikariPoolMonitor(metadata, ((HikariDataSource) dataSource.getDelegate()).getHikariPoolMXBean(), name);
-        dataSource.addObjectName(mBeanManager.registerMBean(poolMonitor, true).getCanonicalName());
+        try {
+            OperationMonitor operationMonitor = new OperationMonitor(metadata, dataSource.getOperationCounters(), name);
+            registerMBean(dataSource, operationMonitor);
+
+            if (dataSource.isWrapperFor(LeakTrackingDataSource.class)) {
+                ConnectionLeakMonitor leakMonitor = new ConnectionLeakMonitor(metadata, dataSource.unwrap(LeakTrackingDataSource.class).getTracker(), name);
+                registerMBean(dataSource, leakMonitor);
+            }
+
+            if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+                // pooled = false
+                return;
+            }
+            HikariDataSource hikariDataSource = dataSource.unwrap(HikariDataSource.class);
+            MetricsTrackerFactory metricsTrackerFactory = hikariDataSource.getMetricsTrackerFactory();
+            ConnectionPoolMetrics metrics = metricsTrackerFactory instanceof ConnectionPoolMetrics ? (ConnectionPoolMetrics) metricsTrackerFactory : new ConnectionPoolMetrics();
+            HikariPoolMonitor poolMonitor = new HikariPoolMonitor(metadata, hikariDataSource.getHikariPoolMXBean(),
+                hikariDataSource.getHikariConfigMXBean(), metrics, name, this::poolReconfigured);
+            registerMBean(dataSource, poolMonitor);
+
+            PoolAutoscaler autoscaler = autoscalers.get(hikariDataSource);
+            if (autoscaler != null) {
+                PoolAutoscalerMonitor autoscalerMonitor = new PoolAutoscalerMonitor(metadata, autoscaler, name);
+                registerMBean(dataSource, autoscalerMonitor);
+            }
+
+            if (dataSource.isWrapperFor(StatementCachingDataSource.class)) {
+                StatementCacheMonitor cacheMonitor = new StatementCacheMonitor(metadata, dataSource.unwrap(StatementCachingDataSource.class), name);
+                registerMBean(dataSource, cacheMonitor);
+            }
+        } catch (SQLException e) {
+            throw new GriffonException(e);
+        }
+    }
+
+    private void startAutoscaler(@Nonnull DataSourceSettings dataSourceSettings, @Nonnull HikariDataSource dataSource) {
+        MetricsTrackerFactory metricsTrackerFactory = dataSource.getMetricsTrackerFactory();
+        PoolAutoscaler autoscaler = new PoolAutoscaler(dataSourceSettings, dataSource.getHikariPoolMXBean(), dataSource.getHikariConfigMXBean(),
+            metricsTrackerFactory instanceof ConnectionPoolMetrics ? (ConnectionPoolMetrics) metricsTrackerFactory : null, this::event);
+        autoscalers.put(dataSource, autoscaler);
+
+        LOG.info("DataSource '{}' autoscales its pool between {} and {} connections", dataSourceSettings.getName(),
+            dataSourceSettings.getAutoscaleMinPoolSize(), dataSourceSettings.getAutoscaleMaxPoolSize());
+        autoscaler.start(getScheduler());
+    }
+
+    @Nullable
+    private static <T> T unwrap(@Nonnull DataSource dataSource, @Nonnull Class<T> type) {
+        try {
+            return dataSource.isWrapperFor(type) ? dataSource.unwrap(type) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private static void closePool(@Nonnull DataSource dataSource) {
+        HikariDataSource hikariDataSource = unwrap(dataSource, HikariDataSource.class);
+        if (hikariDataSource != null) {
+            hikariDataSource.close();
+        }
+    }
+
+    @Nonnull
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "datasource-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    private void poolReconfigured(@Nonnull String name, @Nonnull String property, long oldValue, long newValue) {
+        DataSourceSettings dataSourceSettings = settings.computeIfPresent(name,
+            (dataSourceName, current) -> current.withPool(Collections.singletonMap(property, newValue)));
+
+        if (dataSourceSettings != null && dataSourceSettings.getPoolOverrides() != null) {
+            try {
+                PoolOverrides.write(Paths.get(dataSourceSettings.getPoolOverrides()), name, property, newValue);
+            } catch (UncheckedIOException e) {
+                LOG.error("Pool property {} of dataSource '{}' was changed but could not be saved", property, name, e);
+            }
+        }
+
+        event(DataSourcePoolReconfiguredEvent.of(name, property, oldValue, newValue));
+    }
+
+    private void registerMBean(@Nonnull JMXAwareDataSource dataSource, @Nonnull Object mbean) {
+        // a dataSource that replaces another one under the same name takes over its MBeans
+        String objectName = mBeanManager.registerMBean(mbean, true).getCanonicalName();
+        mbeanOwners.put(objectName, dataSource);
+        dataSource.addObjectName(objectName);
     }
 
     private void unregisterMBeans(@Nonnull JMXAwareDataSource dataSource) {
         for (String objectName : dataSource.getObjectNames()) {
-            mBeanManager.unregisterMBean(objectName);
+            if (mbeanOwners.remove(objectName, dataSource)) {
+                mBeanManager.unregisterMBean(objectName);
+            }
         }
         dataSource.clearObjectNames();
     }
 
+    @Nonnull
+    private DataSource createRoutingDataSource(@Nonnull DataSourceSettings dataSourceSettings, @Nonnull String name) {
+        String primary = dataSourceSettings.getRoutingPrimary();
+        List<String> replicas = dataSourceSettings.getRoutingReplicas();
+        if (primary.equals(name) || replicas.contains(name)) {
+            throw new IllegalArgumentException("Routing dataSource " + name + " must not route to itself");
+        }
+        long ejectTime = dataSourceSettings.getRoutingEjectTime();
+
+        LOG.info("DataSource '{}' routes writes to '{}' and reads to {}", name, primary, replicas);
+        return new RoutingDataSource(name, primary, replicas, ejectTime, this::resolveDataSource);
+    }
+
+    /**
+     * Looks up a dataSource a routing dataSource sends connections to. This is not a callback of its own, thus it
+     * neither counts as an operation nor as a slow callback of the target.
+     */
+    @Nonnull
+    private DataSource resolveDataSource(@Nonnull String name) {
+        DataSource dataSource = dataSourceStorage.get(name);
+        if (dataSource != null) {
+            return dataSource;
+        }
+        DataSourceHandler handler = dataSourceHandler.get();
+        if (handler instanceof DefaultDataSourceHandler) {
+            // shares the creation of the target with concurrent callers
+            return ((DefaultDataSourceHandler) handler).getDataSource(name);
+        }
+        return handler.withDataSource(name, (dataSourceName, target) -> target);
+    }
+
     @Nonnull
     @SuppressWarnings("ConstantConditions")
-    private DataSource createDataSource(@Nonnull Map<String, Object> config, @Nonnull String name) {
-        String driverClassName = getConfigValueAsString(config, "driverClassName", "");
+    private DataSource createDataSource(@Nonnull DataSourceSettings dataSourceSettings, @Nonnull String name) {
+        String driverClassName = dataSourceSettings.getDriverClassName();
         requireNonBlank(driverClassName, "Configuration for " + name + ".driverClassName must not be blank");
-        String url = getConfigValueAsString(config, "url", "");
+        String url = dataSourceSettings.getUrl();
         requireNonBlank(url, "Configuration for " + name + ".url must not be blank");
 
         try {
@@ -179,30 +574,30 @@ public class DefaultDataSourceFactory extends AbstractObjectFactory<DataSource>
             throw new GriffonException(e);
         }
 
-        String username = getConfigValueAsString(config, "username", "");
-        String password = getConfigValueAsString(config, "password", "");
-        boolean pooled = getConfigValueAsBoolean(config, "pooled", true);
+        String username = dataSourceSettings.getUsername();
+        String password = dataSourceSettings.getPassword();
 
-        if (pooled) {
+        if (dataSourceSettings.isPooled()) {
             HikariConfig hikariConfig = new HikariConfig();
             hikariConfig.setJdbcUrl(url);
             hikariConfig.setDriverClassName(driverClassName);
             hikariConfig.setUsername(username);
             hikariConfig.setPassword(password);
-            Map<String, Object> pool = getConfigValue(config, "pool", Collections.<String, Object>emptyMap());
-            GriffonClassUtils.setPropertiesNoException(hikariConfig, pool);
+            dataSourceSettings.configure(hikariConfig);
+            if (hikariConfig.getMetricsTrackerFactory() == null && hikariConfig.getMetricRegistry() == null) {
+                hikariConfig.setMetricsTrackerFactory(new ConnectionPoolMetrics());
+            }
 
             return new HikariDataSource(hikariConfig);
         }
 
         Properties props = new Properties();
-        props.putAll(config);
+        props.putAll(dataSourceSettings.getConfiguration());
         return new DriverDataSource(url, driverClassName, props, username, password);
     }
 
-    private void processSchema(@Nonnull Map<String, Object> config, @Nonnull String name, @Nonnull DataSource dataSource) {
-        String dbCreate = getConfigValueAsString(config, "dbCreate", "skip");
-        if (!"create".equals(dbCreate)) {
+    private void processSchema(@Nonnull DataSourceSettings dataSourceSettings, @Nonnull String name, @Nonnull DataSource dataSource) {
+        if (!"create".equals(dataSourceSettings.getDbCreate())) {
             return;
         }
 
@@ -221,19 +616,17 @@ public class DefaultDataSourceFactory extends AbstractObjectFactory<DataSource>
             return;
         }
         final URL url = ddl;
+        String delimiter = dataSourceSettings.getDdlDelimiter();
+        int batchSize = dataSourceSettings.getDdlBatchSize();
+        boolean continueOnError = dataSourceSettings.isDdlContinueOnError();
 
         LOG.info("Initializing schema on '{}'", name);
 
         DefaultDataSourceHandler.doWithConnection(name, dataSource, (dataSourceName, ds, connection) -> {
-            try (Scanner sc = new Scanner(url.openStream()); Statement statement = connection.createStatement()) {
-                sc.useDelimiter(";");
-                while (sc.hasNext()) {
-                    String line = sc.next().trim();
-                    statement.execute(line);
-                }
-            } catch (IOException | SQLException e) {
-                LOG.error("An error occurred when reading schema DDL from " + url, sanitize(e));
-                return null;
+            try (SqlScriptReader reader = SqlScriptReader.of(url, UTF_8, delimiter)) {
+                new SqlScriptExecutor(dataSourceName, batchSize, continueOnError).execute(connection, reader, url.toString());
+            } catch (IOException e) {
+                throw new GriffonException("An error occurred when reading schema DDL from " + url, e);
             }
 
             return null;
@@ -19,22 +19,51 @@ package org.codehaus.griffon.runtime.datasource;
 
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
+import griffon.core.GriffonApplication;
+import griffon.core.env.Metadata;
+import griffon.plugins.datasource.BatchWriter;
 import griffon.plugins.datasource.ConnectionCallback;
 import griffon.plugins.datasource.DataSourceCallback;
 import griffon.plugins.datasource.DataSourceFactory;
 import griffon.plugins.datasource.DataSourceHandler;
 import griffon.plugins.datasource.DataSourceStorage;
+import griffon.plugins.datasource.ReadOnly;
+import griffon.plugins.datasource.ResultBuffer;
+import griffon.plugins.datasource.ResultBufferCallback;
+import griffon.plugins.datasource.Row;
+import griffon.plugins.datasource.events.DataSourceSlowCallbackEvent;
 import griffon.plugins.datasource.exceptions.RuntimeSQLException;
+import griffon.plugins.monitor.MBeanManager;
+import org.codehaus.griffon.runtime.datasource.cache.QueryResultCache;
+import org.codehaus.griffon.runtime.datasource.metrics.OperationCounters;
+import org.codehaus.griffon.runtime.datasource.metrics.SlowCallbackTracker;
+import org.codehaus.griffon.runtime.datasource.monitor.QueryResultCacheMonitor;
+import org.codehaus.griffon.runtime.datasource.monitor.SlowCallbackMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.sql.DataSource;
+import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * @author Andres Almiray
@@ -44,9 +73,31 @@ public class DefaultDataSourceHandler implements DataSourceHandler {
     private static final String ERROR_DATASOURCE_BLANK = "Argument 'dataSourceName' must not be blank";
     private static final String ERROR_DATASOURCE_NULL = "Argument 'dataSource' must not be null";
     private static final String ERROR_CALLBACK_NULL = "Argument 'callback' must not be null";
+    private static final String ERROR_SQL_BLANK = "Argument 'sql' must not be blank";
+    private static final String ERROR_PARAMS_NULL = "Argument 'params' must not be null";
+    private static final long DRAIN_POLL_INTERVAL = 10L;
 
     private final DataSourceFactory dataSourceFactory;
     private final DataSourceStorage dataSourceStorage;
+    private final ConcurrentMap<String, FutureTask<DataSource>> pendingDataSources = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SlowCallbackTracker> slowCallbackTrackers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> slowCallbackMonitors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, DataSourceExecutor> dataSourceExecutors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> threadBoundConnections = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, QueryResultCache> queryResultCaches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> queryResultCacheMonitors = new ConcurrentHashMap<>();
+    // callbacks in progress by dataSource instance, a swapped dataSource is closed once it has none left
+    private final ConcurrentMap<DataSource, Integer> inFlightCallbacks = new ConcurrentHashMap<>();
+    private final Object swapLock = new Object();
+
+    @Inject
+    private GriffonApplication application;
+
+    @Inject
+    private MBeanManager mbeanManager;
+
+    @Inject
+    private Metadata metadata;
 
     @Inject
     public DefaultDataSourceHandler(@Nonnull DataSourceFactory dataSourceFactory, @Nonnull DataSourceStorage dataSourceStorage) {
@@ -66,11 +117,30 @@ public class DefaultDataSourceHandler implements DataSourceHandler {
         requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
         requireNonNull(callback, ERROR_CALLBACK_NULL);
         DataSource dataSource = getDataSource(dataSourceName);
+        SlowCallbackTracker slowCallbackTracker = getSlowCallbackTracker(dataSourceName);
+        OperationCounters counters = operationCountersOf(dataSource);
+        if (counters != null) {
+            counters.dataSourceCallbackStarted();
+        }
+        callbackStarted(dataSource);
+        long start = System.nanoTime();
         try {
             LOG.debug("Executing statements on dataSource '{}'", dataSourceName);
+            if (callback instanceof ReadOnly && dataSource instanceof RoutingDataSource) {
+                return callback.handle(dataSourceName, ((RoutingDataSource) dataSource).getReadOnlyDataSource());
+            }
             return callback.handle(dataSourceName, dataSource);
         } catch (SQLException e) {
+            if (counters != null) {
+                counters.recordError(e);
+            }
             throw new RuntimeSQLException(dataSourceName, e);
+        } finally {
+            slowCallbackTracker.record(callback, System.nanoTime() - start);
+            if (counters != null) {
+                counters.callbackFinished();
+            }
+            callbackFinished(dataSource);
         }
     }
 
@@ -87,36 +157,450 @@ public class DefaultDataSourceHandler implements DataSourceHandler {
         requireNonNull(callback, ERROR_CALLBACK_NULL);
 
         DataSource dataSource = getDataSource(dataSourceName);
-        return doWithConnection(dataSourceName, dataSource, callback);
+        boolean threadBound = isThreadBound(dataSourceName) || ConnectionHolder.isBound(dataSourceName);
+        callbackStarted(dataSource);
+        try {
+            return doWithConnection(dataSourceName, dataSource, callback, getSlowCallbackTracker(dataSourceName), threadBound);
+        } finally {
+            callbackFinished(dataSource);
+        }
     }
 
     @Nullable
-    @SuppressWarnings("ThrowFromFinallyBlock")
-    static <R> R doWithConnection(@Nonnull String dataSourceName, @Nonnull DataSource dataSource, @Nonnull ConnectionCallback<R> callback) throws RuntimeSQLException {
+    @Override
+    public <R> R withTransaction(@Nonnull ConnectionCallback<R> callback) throws RuntimeSQLException {
+        return withTransaction(DefaultDataSourceFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String dataSourceName, @Nonnull ConnectionCallback<R> callback) throws RuntimeSQLException {
+        return withTransaction(dataSourceName, ISOLATION_DEFAULT, callback instanceof ReadOnly, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String dataSourceName, int isolation, boolean readOnly, @Nonnull ConnectionCallback<R> callback) throws RuntimeSQLException {
         requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
-        requireNonNull(dataSource, ERROR_DATASOURCE_NULL);
         requireNonNull(callback, ERROR_CALLBACK_NULL);
 
-        Connection connection = null;
+        DataSource dataSource = getDataSource(dataSourceName);
+        // transactions always bind their connection so that nested calls take part in them
+        TransactionCallback<R> transaction = TransactionCallback.of(callback, isolation, readOnly, getSlowCallbackTracker(dataSourceName));
+        callbackStarted(dataSource);
         try {
-            connection = dataSource.getConnection();
+            return doWithConnection(dataSourceName, dataSource, transaction, null, true);
+        } finally {
+            callbackFinished(dataSource);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Stream<Row> stream(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+        return stream(DefaultDataSourceFactory.KEY_DEFAULT, sql, params);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<Row> stream(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        return stream(dataSourceName, sql, params, getSettings(dataSourceName).getStreamFetchSize());
+    }
+
+    @Nonnull
+    @Override
+    public Stream<Row> stream(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws RuntimeSQLException {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(params, ERROR_PARAMS_NULL);
+
+        DataSource dataSource = getDataSource(dataSourceName);
+        SlowCallbackTracker slowCallbackTracker = getSlowCallbackTracker(dataSourceName);
+        OperationCounters counters = operationCountersOf(dataSource);
+        if (counters != null) {
+            counters.connectionCallbackStarted();
+        }
+        callbackStarted(dataSource);
+
+        // streams only read, thus they take part in whatever connection is bound to this thread, read-only or not
+        ConnectionHolder holder = ConnectionHolder.current(dataSourceName);
+        Connection connection;
+        if (holder != null) {
+            connection = holder.getConnection();
+        } else {
+            try {
+                if (dataSource instanceof RoutingDataSource) {
+                    connection = ((RoutingDataSource) dataSource).getReadOnlyConnection();
+                } else {
+                    connection = dataSource.getConnection();
+                }
+            } catch (SQLException e) {
+                if (counters != null) {
+                    counters.recordError(e);
+                    counters.callbackFinished();
+                }
+                callbackFinished(dataSource);
+                throw new RuntimeSQLException(dataSourceName, e);
+            }
+        }
+
+        boolean owned = holder == null;
+        LOG.debug("Streaming rows from dataSource '{}'", dataSourceName);
+        return ResultSetSpliterator.stream(dataSourceName, connection, owned, sql, params, fetchSize, completion(dataSource, slowCallbackTracker, counters, owned));
+    }
+
+    @Nonnull
+    @Override
+    public List<Row> query(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+        return query(DefaultDataSourceFactory.KEY_DEFAULT, sql, params);
+    }
+
+    @Nonnull
+    @Override
+    public List<Row> query(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(params, ERROR_PARAMS_NULL);
+
+        // results read inside a transaction may include its uncommitted writes
+        QueryResultCache cache = getQueryResultCache(dataSourceName);
+        boolean cacheable = cache.isEnabled() && !isTransactionActive(dataSourceName);
+        if (cacheable) {
+            List<Row> rows = cache.get(sql, params);
+            if (rows != null) {
+                return rows;
+            }
+        }
+
+        long generation = cache.getGeneration();
+        List<Row> rows = withConnection(dataSourceName, (name, dataSource, connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, params);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return Rows.readAll(resultSet);
+                }
+            }
+        });
+        return cacheable ? cache.put(sql, params, rows, generation) : Collections.unmodifiableList(rows);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withResultBuffer(@Nonnull String sql, @Nonnull List<?> params, @Nonnull ResultBufferCallback<R> callback) throws RuntimeSQLException {
+        return withResultBuffer(DefaultDataSourceFactory.KEY_DEFAULT, sql, params, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withResultBuffer(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params, @Nonnull ResultBufferCallback<R> callback) throws RuntimeSQLException {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(params, ERROR_PARAMS_NULL);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        DataSourceSettings settings = getSettings(dataSourceName);
+        long heapSize = settings.getResultBufferHeapSize();
+        String directory = settings.getResultBufferDirectory();
+        int fetchSize = settings.getStreamFetchSize();
+
+        // the connection goes back to the pool before the callback processes the buffered rows
+        ResultBuffer buffer = withConnection(dataSourceName, (name, dataSource, connection) -> {
+            // some drivers, PostgreSQL among them, only use a cursor outside of auto-commit mode
+            boolean autoCommit = connection.getAutoCommit();
+            if (autoCommit) {
+                connection.setAutoCommit(false);
+            }
+            try (PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                bind(statement, params);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return DefaultResultBuffer.read(name, resultSet, heapSize, directory != null ? Paths.get(directory) : null);
+                }
+            } finally {
+                if (autoCommit) {
+                    connection.setAutoCommit(true);
+                }
+            }
+        });
+
+        try (ResultBuffer b = buffer) {
+            return callback.handle(dataSourceName, b);
         } catch (SQLException e) {
             throw new RuntimeSQLException(dataSourceName, e);
         }
+    }
+
+    @Override
+    public int update(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+        return update(DefaultDataSourceFactory.KEY_DEFAULT, sql, params);
+    }
+
+    @Override
+    public int update(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(params, ERROR_PARAMS_NULL);
+
+        try {
+            return withConnection(dataSourceName, (name, dataSource, connection) -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    bind(statement, params);
+                    return statement.executeUpdate();
+                }
+            });
+        } finally {
+            invalidateQueryResults(dataSourceName, sql);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public BatchWriter batchWriter(@Nonnull String sql) throws RuntimeSQLException {
+        return batchWriter(DefaultDataSourceFactory.KEY_DEFAULT, sql);
+    }
+
+    @Nonnull
+    @Override
+    public BatchWriter batchWriter(@Nonnull String dataSourceName, @Nonnull String sql) throws RuntimeSQLException {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+
+        DataSourceSettings settings = getSettings(dataSourceName);
+        int batchSize = settings.getBatchSize();
+        boolean rewriteInserts = settings.isBatchRewriteInserts();
+        int maxParameters = settings.getBatchMaxParameters();
+        int commitInterval = settings.getBatchCommitInterval();
+
+        DataSource dataSource = getDataSource(dataSourceName);
+        SlowCallbackTracker slowCallbackTracker = getSlowCallbackTracker(dataSourceName);
+        OperationCounters counters = operationCountersOf(dataSource);
+        if (counters != null) {
+            counters.connectionCallbackStarted();
+        }
+        callbackStarted(dataSource);
+
+        // writers take part in the writable connection bound to this thread, committing is then left to its owner
+        ConnectionHolder holder = ConnectionHolder.current(dataSourceName);
+        boolean owned = holder == null || holder.isReadOnly();
+        Connection connection;
+        if (owned) {
+            try {
+                connection = dataSource.getConnection();
+            } catch (SQLException e) {
+                if (counters != null) {
+                    counters.recordError(e);
+                    counters.callbackFinished();
+                }
+                callbackFinished(dataSource);
+                throw new RuntimeSQLException(dataSourceName, e);
+            }
+        } else {
+            connection = holder.getConnection();
+        }
+
+        return DefaultBatchWriter.open(dataSourceName, connection, owned, sql, batchSize, rewriteInserts, maxParameters, commitInterval,
+            () -> invalidateQueryResults(dataSourceName, sql), completion(dataSource, slowCallbackTracker, counters, owned));
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withDataSourceAsync(@Nonnull DataSourceCallback<R> callback) {
+        return withDataSourceAsync(DefaultDataSourceFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withDataSourceAsync(@Nonnull String dataSourceName, @Nonnull DataSourceCallback<R> callback) {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        return getDataSourceExecutor(dataSourceName).submit(() -> withDataSource(dataSourceName, callback));
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withConnectionAsync(@Nonnull ConnectionCallback<R> callback) {
+        return withConnectionAsync(DefaultDataSourceFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withConnectionAsync(@Nonnull String dataSourceName, @Nonnull ConnectionCallback<R> callback) {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        return getDataSourceExecutor(dataSourceName).submit(() -> withConnection(dataSourceName, callback));
+    }
+
+    @Nullable
+    static <R> R doWithConnection(@Nonnull String dataSourceName, @Nonnull DataSource dataSource, @Nonnull ConnectionCallback<R> callback) throws RuntimeSQLException {
+        return doWithConnection(dataSourceName, dataSource, callback, null, false);
+    }
+
+    @Nullable
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    static <R> R doWithConnection(@Nonnull String dataSourceName, @Nonnull DataSource dataSource, @Nonnull ConnectionCallback<R> callback, @Nullable SlowCallbackTracker slowCallbackTracker, boolean threadBound) throws RuntimeSQLException {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        requireNonNull(dataSource, ERROR_DATASOURCE_NULL);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        // writable calls nested in a read-only one never share its connection, routed or not
+        boolean readOnly = callback instanceof ReadOnly;
+        OperationCounters counters = operationCountersOf(dataSource);
+        if (counters != null) {
+            counters.connectionCallbackStarted();
+        }
+        ConnectionHolder holder = threadBound ? ConnectionHolder.acquire(dataSourceName, readOnly) : null;
+        Connection connection = null;
+        if (holder == null) {
+            try {
+                if (readOnly && dataSource instanceof RoutingDataSource) {
+                    connection = ((RoutingDataSource) dataSource).getReadOnlyConnection();
+                } else {
+                    connection = dataSource.getConnection();
+                }
+            } catch (SQLException e) {
+                if (counters != null) {
+                    counters.recordError(e);
+                    counters.callbackFinished();
+                }
+                throw new RuntimeSQLException(dataSourceName, e);
+            }
+            if (threadBound) {
+                holder = ConnectionHolder.bind(dataSourceName, connection, readOnly);
+            }
+        }
+
+        long start = System.nanoTime();
         try {
             LOG.debug("Executing statements on dataSource '{}'", dataSourceName);
-            return callback.handle(dataSourceName, dataSource, connection);
+            return callback.handle(dataSourceName, dataSource, holder != null ? holder.getConnection() : connection);
         } catch (SQLException e) {
+            if (counters != null) {
+                counters.recordError(e);
+            }
             throw new RuntimeSQLException(dataSourceName, e);
         } finally {
+            long elapsed = System.nanoTime() - start;
+            if (slowCallbackTracker != null) {
+                slowCallbackTracker.record(callback, elapsed);
+            }
+            if (counters != null) {
+                // nested calls run on a connection already held by the outermost one
+                if (connection != null) {
+                    counters.recordConnectionHoldTime(elapsed);
+                }
+                counters.callbackFinished();
+            }
+            // nested calls leave the connection open for the outermost one
+            boolean close = holder == null || holder.release();
             try {
-                if (connection != null) connection.close();
+                if (close && connection != null) connection.close();
             } catch (SQLException e) {
                 throw new RuntimeSQLException(dataSourceName, e);
             }
         }
     }
 
+    /**
+     * Tracks a stream or batch writer, which keep their connection past the call that opened them, until it is released.
+     */
+    @Nonnull
+    private Consumer<SQLException> completion(@Nonnull DataSource dataSource, @Nonnull SlowCallbackTracker slowCallbackTracker, @Nullable OperationCounters counters, boolean owned) {
+        long start = System.nanoTime();
+        return new Consumer<SQLException>() {
+            @Override
+            public void accept(SQLException failure) {
+                long elapsed = System.nanoTime() - start;
+                slowCallbackTracker.record(this, elapsed);
+                if (counters != null) {
+                    if (failure != null) {
+                        counters.recordError(failure);
+                    }
+                    // borrowed connections are held by the call that bound them
+                    if (owned) {
+                        counters.recordConnectionHoldTime(elapsed);
+                    }
+                    counters.callbackFinished();
+                }
+                callbackFinished(dataSource);
+            }
+        };
+    }
+
+    @Override
+    public void swapDataSource(@Nonnull Map<String, Object> configuration) throws RuntimeSQLException {
+        swapDataSource(DefaultDataSourceFactory.KEY_DEFAULT, configuration);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the configured {@code DataSourceFactory} is not a {@code DefaultDataSourceFactory},
+     *                               which is the only one able to create a dataSource from a given configuration
+     */
+    @Override
+    public void swapDataSource(@Nonnull String dataSourceName, @Nonnull Map<String, Object> configuration) throws RuntimeSQLException {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_BLANK);
+        requireNonNull(configuration, "Argument 'configuration' must not be null");
+        if (!(dataSourceFactory instanceof DefaultDataSourceFactory)) {
+            throw new IllegalStateException("Swapping dataSources requires " + DefaultDataSourceFactory.class.getName() + " but found " + dataSourceFactory.getClass().getName());
+        }
+        DefaultDataSourceFactory factory = (DefaultDataSourceFactory) dataSourceFactory;
+
+        DataSource previous;
+        DataSourceSettings settings;
+        synchronized (swapLock) {
+            settings = factory.readSettings(dataSourceName, configuration);
+
+            // the new dataSource must be able to hand out connections before anyone sees it
+            long start = System.nanoTime();
+            DataSource replacement = factory.create(settings, true);
+            LOG.info("Created replacement for dataSource '{}' in {}ms", dataSourceName, NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            factory.setSettings(settings);
+            previous = dataSourceStorage.get(dataSourceName);
+            dataSourceStorage.set(dataSourceName, replacement);
+            resetDataSourceState(dataSourceName, true);
+        }
+
+        if (previous != null) {
+            drain(dataSourceName, previous, settings.getDrainTimeout());
+        }
+    }
+
+    private void drain(@Nonnull String dataSourceName, @Nonnull DataSource dataSource, long timeout) {
+        // connections still in use once callbacks are done are waited for when the pool is closed
+        long deadline = System.nanoTime() + MILLISECONDS.toNanos(timeout);
+        while (isBusy(dataSource) && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(DRAIN_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (isBusy(dataSource)) {
+            LOG.warn("Closing replaced dataSource '{}' with callbacks still in progress after {}ms", dataSourceName, timeout);
+        } else {
+            LOG.info("Replaced dataSource '{}' drained, closing it", dataSourceName);
+        }
+
+        dataSourceFactory.destroy(dataSourceName, dataSource);
+    }
+
+    private boolean isBusy(@Nonnull DataSource dataSource) {
+        return inFlightCallbacks.containsKey(dataSource);
+    }
+
+    private void callbackStarted(@Nonnull DataSource dataSource) {
+        inFlightCallbacks.merge(dataSource, 1, Integer::sum);
+    }
+
+    private void callbackFinished(@Nonnull DataSource dataSource) {
+        // entries are dropped once idle so that closed dataSources are not retained
+        inFlightCallbacks.computeIfPresent(dataSource, (key, callbacks) -> callbacks > 1 ? callbacks - 1 : null);
+    }
+
     @Override
     public void closeDataSource() {
         closeDataSource(DefaultDataSourceFactory.KEY_DEFAULT);
@@ -124,20 +608,205 @@ public class DefaultDataSourceHandler implements DataSourceHandler {
 
     @Override
     public void closeDataSource(@Nonnull String dataSourceName) {
+        close(dataSourceName);
+    }
+
+    /**
+     * Closes the given dataSource.
+     *
+     * @return the number of connections that were still in use when its pool was closed
+     */
+    int close(@Nonnull String dataSourceName) {
+        int activeConnections = 0;
         DataSource dataSource = dataSourceStorage.get(dataSourceName);
         if (dataSource != null) {
-            dataSourceFactory.destroy(dataSourceName, dataSource);
+            if (dataSourceFactory instanceof DefaultDataSourceFactory) {
+                activeConnections = ((DefaultDataSourceFactory) dataSourceFactory).close(dataSourceName, dataSource);
+            } else {
+                dataSourceFactory.destroy(dataSourceName, dataSource);
+            }
             dataSourceStorage.remove(dataSourceName);
         }
+
+        resetDataSourceState(dataSourceName, false);
+        return activeConnections;
+    }
+
+    /**
+     * Drops every per-dataSource helper so that it is created again from the current settings.
+     */
+    private void resetDataSourceState(@Nonnull String dataSourceName, boolean drainExecutor) {
+        DataSourceExecutor executor = dataSourceExecutors.remove(dataSourceName);
+        if (executor != null) {
+            if (drainExecutor) {
+                executor.drain();
+            } else {
+                executor.shutdown();
+            }
+        }
+
+        threadBoundConnections.remove(dataSourceName);
+        slowCallbackTrackers.remove(dataSourceName);
+        String objectName = slowCallbackMonitors.remove(dataSourceName);
+        if (objectName != null) {
+            mbeanManager.unregisterMBean(objectName);
+        }
+
+        queryResultCaches.remove(dataSourceName);
+        objectName = queryResultCacheMonitors.remove(dataSourceName);
+        if (objectName != null) {
+            mbeanManager.unregisterMBean(objectName);
+        }
+    }
+
+    private static void bind(@Nonnull PreparedStatement statement, @Nonnull List<?> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            statement.setObject(i + 1, params.get(i));
+        }
+    }
+
+    @Nullable
+    private static OperationCounters operationCountersOf(@Nonnull DataSource dataSource) {
+        return dataSource instanceof JMXAwareDataSource ? ((JMXAwareDataSource) dataSource).getOperationCounters() : null;
+    }
+
+    private static boolean isTransactionActive(@Nonnull String dataSourceName) {
+        ConnectionHolder holder = ConnectionHolder.current(dataSourceName);
+        return holder != null && holder.isTransactionActive();
+    }
+
+    private void invalidateQueryResults(@Nonnull String dataSourceName, @Nonnull String sql) {
+        QueryResultCache cache = queryResultCaches.get(dataSourceName);
+        if (cache == null || !cache.isEnabled()) {
+            return;
+        }
+        cache.invalidate(sql);
+        // concurrent readers may cache the previous state until the transaction commits
+        ConnectionHolder holder = ConnectionHolder.current(dataSourceName);
+        if (holder != null && holder.isTransactionActive()) {
+            holder.afterTransaction(() -> cache.invalidate(sql));
+        }
+    }
+
+    @Nonnull
+    private QueryResultCache getQueryResultCache(@Nonnull String dataSourceName) {
+        QueryResultCache cache = queryResultCaches.get(dataSourceName);
+        return cache != null ? cache : queryResultCaches.computeIfAbsent(dataSourceName, this::createQueryResultCache);
+    }
+
+    @Nonnull
+    private QueryResultCache createQueryResultCache(@Nonnull String dataSourceName) {
+        DataSourceSettings settings = getSettings(dataSourceName);
+        QueryResultCache cache = new QueryResultCache(dataSourceName, settings.getResultCacheMaxRows(), settings.getResultCacheTtl());
+
+        if (cache.isEnabled() && mbeanManager != null && settings.isJmx()) {
+            QueryResultCacheMonitor monitor = new QueryResultCacheMonitor(metadata, cache, dataSourceName);
+            queryResultCacheMonitors.put(dataSourceName, mbeanManager.registerMBean(monitor, true).getCanonicalName());
+        }
+        return cache;
+    }
+
+    private boolean isThreadBound(@Nonnull String dataSourceName) {
+        Boolean threadBound = threadBoundConnections.get(dataSourceName);
+        if (threadBound == null) {
+            threadBound = getSettings(dataSourceName).isThreadBoundConnections();
+            threadBoundConnections.put(dataSourceName, threadBound);
+        }
+        return threadBound;
+    }
+
+    @Nonnull
+    private DataSourceExecutor getDataSourceExecutor(@Nonnull String dataSourceName) {
+        return dataSourceExecutors.computeIfAbsent(dataSourceName,
+            name -> DataSourceExecutor.create(getSettings(name)));
+    }
+
+    @Nonnull
+    private SlowCallbackTracker getSlowCallbackTracker(@Nonnull String dataSourceName) {
+        SlowCallbackTracker tracker = slowCallbackTrackers.get(dataSourceName);
+        return tracker != null ? tracker : slowCallbackTrackers.computeIfAbsent(dataSourceName, this::createSlowCallbackTracker);
+    }
+
+    @Nonnull
+    private SlowCallbackTracker createSlowCallbackTracker(@Nonnull String dataSourceName) {
+        DataSourceSettings settings = getSettings(dataSourceName);
+        SlowCallbackTracker tracker = new SlowCallbackTracker(dataSourceName,
+            settings.getSlowCallbackThreshold(),
+            settings.getSlowCallbackCapacity(),
+            this::publishSlowCallbackEvent);
+
+        if (mbeanManager != null && settings.isJmx()) {
+            SlowCallbackMonitor monitor = new SlowCallbackMonitor(metadata, tracker, dataSourceName);
+            slowCallbackMonitors.put(dataSourceName, mbeanManager.registerMBean(monitor, true).getCanonicalName());
+        }
+        return tracker;
+    }
+
+    @Nonnull
+    private DataSourceSettings getSettings(@Nonnull String dataSourceName) {
+        return DataSourceSettings.of(dataSourceFactory, dataSourceName);
+    }
+
+    private void publishSlowCallbackEvent(@Nonnull DataSourceSlowCallbackEvent event) {
+        LOG.warn("Callback {} held dataSource '{}' for {}ms", event.getCallbackClass().getName(), event.getName(), event.getDuration());
+        if (application != null) {
+            application.getEventRouter().publishEventAsync(event);
+        }
     }
 
     @Nonnull
-    private DataSource getDataSource(@Nonnull String dataSourceName) {
+    DataSource getDataSource(@Nonnull String dataSourceName) {
         DataSource dataSource = dataSourceStorage.get(dataSourceName);
-        if (dataSource == null) {
-            dataSource = dataSourceFactory.create(dataSourceName);
-            dataSourceStorage.set(dataSourceName, dataSource);
+        if (dataSource != null) {
+            return dataSource;
+        }
+
+        // single-flight creation: the first caller builds the dataSource, concurrent callers wait for it
+        FutureTask<DataSource> task = new FutureTask<>(() -> {
+            DataSource ds = dataSourceStorage.get(dataSourceName);
+            if (ds == null) {
+                ds = dataSourceFactory.create(dataSourceName);
+                dataSourceStorage.set(dataSourceName, ds);
+            }
+            return ds;
+        });
+
+        FutureTask<DataSource> pending = pendingDataSources.putIfAbsent(dataSourceName, task);
+        if (pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                pendingDataSources.remove(dataSourceName, task);
+            }
+        }
+
+        return awaitDataSource(dataSourceName, pending);
+    }
+
+    @Nonnull
+    private static DataSource awaitDataSource(@Nonnull String dataSourceName, @Nonnull FutureTask<DataSource> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException("Could not create dataSource '" + dataSourceName + "'", cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
-        return dataSource;
     }
 }
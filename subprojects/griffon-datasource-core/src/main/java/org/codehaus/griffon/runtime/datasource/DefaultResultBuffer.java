@@ -0,0 +1,459 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.datasource.ResultBuffer;
+import griffon.plugins.datasource.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * {@code ResultBuffer} that encodes rows into a heap segment until it reaches its size limit and appends the
+ * remaining rows to a temporary file that is memory mapped once the result set has been read. The offset of every
+ * row is kept on the heap, thus random access costs a binary search over the mapped chunks at most.
+ * <p>
+ * Each value is written as a one byte tag followed by its payload in big endian order.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class DefaultResultBuffer implements ResultBuffer {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultResultBuffer.class);
+
+    static final long DEFAULT_HEAP_SIZE = 8L * 1024 * 1024;
+
+    // rows never span chunks, each chunk is mapped on its own
+    private static final int CHUNK_SIZE = 1 << 30;
+    private static final int INITIAL_HEAP_SEGMENT = 64 * 1024;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_INT = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_DOUBLE = 3;
+    private static final byte TAG_FLOAT = 4;
+    private static final byte TAG_BOOLEAN = 5;
+    private static final byte TAG_STRING = 6;
+    private static final byte TAG_BYTES = 7;
+    private static final byte TAG_DECIMAL = 8;
+    private static final byte TAG_TIMESTAMP = 9;
+    private static final byte TAG_DATE = 10;
+    private static final byte TAG_TIME = 11;
+    private static final byte TAG_SHORT = 12;
+    private static final byte TAG_BYTE = 13;
+    private static final byte TAG_SERIALIZED = 14;
+
+    private final String dataSourceName;
+    private final Map<String, Integer> columns;
+    private final List<String> columnNames;
+
+    private byte[] heap;
+    private int heapLength;
+    private int heapRows;
+    private long[] offsets = new long[64];
+    private int size;
+
+    private Path file;
+    private MappedByteBuffer[] chunks;
+    private long[] chunkStarts;
+    private long spilledBytes;
+    private volatile boolean closed;
+
+    private DefaultResultBuffer(@Nonnull String dataSourceName, @Nonnull Map<String, Integer> columns, @Nonnull List<String> columnNames) {
+        this.dataSourceName = dataSourceName;
+        this.columns = columns;
+        this.columnNames = columnNames;
+    }
+
+    /**
+     * Reads all remaining rows of the given result set. The result set is not closed.
+     *
+     * @param heapSize  number of bytes kept on the heap before spilling to disk
+     * @param directory where temporary files are created, {@code null} for the default temporary directory
+     */
+    @Nonnull
+    static ResultBuffer read(@Nonnull String dataSourceName, @Nonnull ResultSet resultSet, long heapSize, @Nullable Path directory) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        List<String> columnNames = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            columnNames.add(metaData.getColumnLabel(i));
+        }
+
+        DefaultResultBuffer buffer = new DefaultResultBuffer(dataSourceName, Rows.columns(metaData), Collections.unmodifiableList(columnNames));
+        try {
+            buffer.fill(resultSet, columnCount, Math.max(0L, Math.min(heapSize, Integer.MAX_VALUE - 8)), directory);
+        } catch (SQLException | RuntimeException | Error e) {
+            buffer.close();
+            throw e;
+        }
+        return buffer;
+    }
+
+    private void fill(@Nonnull ResultSet resultSet, int columnCount, long heapSize, @Nullable Path directory) throws SQLException {
+        RowEncoder encoder = new RowEncoder();
+        heap = new byte[(int) Math.min(heapSize, INITIAL_HEAP_SEGMENT)];
+
+        OutputStream spill = null;
+        List<Long> starts = new ArrayList<>();
+        long position = 0L;
+        try {
+            while (resultSet.next()) {
+                encoder.reset();
+                for (int i = 1; i <= columnCount; i++) {
+                    encoder.write(resultSet, i);
+                }
+                int length = encoder.size();
+
+                if (spill == null && heapLength + (long) length <= heapSize) {
+                    if (heapLength + length > heap.length) {
+                        heap = Arrays.copyOf(heap, (int) Math.min(heapSize, Math.max(heapLength + length, (long) heap.length << 1)));
+                    }
+                    System.arraycopy(encoder.buffer(), 0, heap, heapLength, length);
+                    addOffset(heapLength);
+                    heapLength += length;
+                    heapRows++;
+                    continue;
+                }
+
+                if (spill == null) {
+                    String prefix = "griffon-datasource-" + dataSourceName + "-";
+                    file = directory != null ? Files.createTempFile(directory, prefix, ".rows") : Files.createTempFile(prefix, ".rows");
+                    spill = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+                    starts.add(0L);
+                    LOG.debug("Spilling results of dataSource '{}' to {}", dataSourceName, file);
+                }
+                if (length > CHUNK_SIZE) {
+                    throw new SQLException("Row " + size + " of dataSource '" + dataSourceName + "' is too large to be buffered (" + length + " bytes)");
+                }
+                if (position + length - starts.get(starts.size() - 1) > CHUNK_SIZE) {
+                    starts.add(position);
+                }
+                spill.write(encoder.buffer(), 0, length);
+                addOffset(position);
+                position += length;
+            }
+
+            if (spill != null) {
+                spill.close();
+                spill = null;
+                map(starts, position);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not spill results of dataSource '" + dataSourceName + "' to " + file, e);
+        } finally {
+            if (spill != null) {
+                try {
+                    spill.close();
+                } catch (IOException e) {
+                    LOG.warn("Could not close {}", file, e);
+                }
+            }
+        }
+    }
+
+    private void addOffset(long offset) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size + (size >> 1));
+        }
+        offsets[size++] = offset;
+    }
+
+    private void map(@Nonnull List<Long> starts, long length) throws IOException {
+        spilledBytes = length;
+        chunks = new MappedByteBuffer[starts.size()];
+        chunkStarts = new long[starts.size()];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < chunks.length; i++) {
+                long start = starts.get(i);
+                long end = i + 1 < chunks.length ? starts.get(i + 1) : length;
+                chunkStarts[i] = start;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Nonnull
+    @Override
+    public Row get(int index) {
+        if (closed) {
+            throw new IllegalStateException("ResultBuffer of dataSource '" + dataSourceName + "' has been closed");
+        }
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Row " + index + " is out of bounds [0, " + size + ")");
+        }
+
+        ByteBuffer source;
+        if (index < heapRows) {
+            source = ByteBuffer.wrap(heap);
+            source.position((int) offsets[index]);
+        } else {
+            long offset = offsets[index];
+            int chunk = Arrays.binarySearch(chunkStarts, offset);
+            if (chunk < 0) {
+                chunk = -chunk - 2;
+            }
+            source = chunks[chunk].duplicate();
+            source.position((int) (offset - chunkStarts[chunk]));
+        }
+
+        Object[] values = new Object[columnNames.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = decode(source);
+        }
+        return new Row(columns, values);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Row> iterator() {
+        return new Iterator<Row>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Row next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public long getHeapBytes() {
+        return heapLength;
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        heap = null;
+        // mappings are released once garbage collected, the file can be deleted before that on most platforms
+        chunks = null;
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.warn("Could not delete {}, it will be deleted on exit", file, e);
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResultBuffer{dataSource=" + dataSourceName + ", rows=" + size + ", heapBytes=" + heapLength + ", spilledBytes=" + spilledBytes + '}';
+    }
+
+    @Nullable
+    private Object decode(@Nonnull ByteBuffer source) {
+        byte tag = source.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_INT:
+                return source.getInt();
+            case TAG_LONG:
+                return source.getLong();
+            case TAG_DOUBLE:
+                return source.getDouble();
+            case TAG_FLOAT:
+                return source.getFloat();
+            case TAG_BOOLEAN:
+                return source.get() != 0;
+            case TAG_STRING:
+                return new String(bytes(source), StandardCharsets.UTF_8);
+            case TAG_BYTES:
+                return bytes(source);
+            case TAG_DECIMAL:
+                return new BigDecimal(new String(bytes(source), StandardCharsets.US_ASCII));
+            case TAG_TIMESTAMP:
+                Timestamp timestamp = new Timestamp(source.getLong());
+                timestamp.setNanos(source.getInt());
+                return timestamp;
+            case TAG_DATE:
+                return new java.sql.Date(source.getLong());
+            case TAG_TIME:
+                return new Time(source.getLong());
+            case TAG_SHORT:
+                return source.getShort();
+            case TAG_BYTE:
+                return source.get();
+            case TAG_SERIALIZED:
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes(source)))) {
+                    return in.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new IllegalStateException("Could not read buffered value of dataSource '" + dataSourceName + "'", e);
+                }
+            default:
+                throw new IllegalStateException("Unknown tag " + tag);
+        }
+    }
+
+    @Nonnull
+    private static byte[] bytes(@Nonnull ByteBuffer source) {
+        byte[] bytes = new byte[source.getInt()];
+        source.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Encodes one row at a time into a reusable buffer.
+     */
+    private static final class RowEncoder extends ByteArrayOutputStream {
+        private final DataOutputStream out = new DataOutputStream(this);
+
+        private RowEncoder() {
+            super(256);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+
+        private void write(@Nonnull ResultSet resultSet, int index) throws SQLException {
+            try {
+                encode(resultSet.getObject(index), resultSet, index);
+            } catch (IOException e) {
+                // only thrown by ObjectOutputStream, writing to memory does not fail otherwise
+                throw new SQLException("Could not buffer column " + index, e);
+            }
+        }
+
+        private void encode(@Nullable Object value, @Nonnull ResultSet resultSet, int index) throws IOException, SQLException {
+            if (value == null) {
+                out.writeByte(TAG_NULL);
+            } else if (value instanceof Integer) {
+                out.writeByte(TAG_INT);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(TAG_LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                out.writeByte(TAG_FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(TAG_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof String) {
+                writeBytes(TAG_STRING, ((String) value).getBytes(StandardCharsets.UTF_8));
+            } else if (value instanceof byte[]) {
+                writeBytes(TAG_BYTES, (byte[]) value);
+            } else if (value instanceof BigDecimal) {
+                writeBytes(TAG_DECIMAL, value.toString().getBytes(StandardCharsets.US_ASCII));
+            } else if (value instanceof Timestamp) {
+                out.writeByte(TAG_TIMESTAMP);
+                out.writeLong(((Timestamp) value).getTime());
+                out.writeInt(((Timestamp) value).getNanos());
+            } else if (value instanceof java.sql.Date) {
+                out.writeByte(TAG_DATE);
+                out.writeLong(((java.sql.Date) value).getTime());
+            } else if (value instanceof Time) {
+                out.writeByte(TAG_TIME);
+                out.writeLong(((Time) value).getTime());
+            } else if (value instanceof Short) {
+                out.writeByte(TAG_SHORT);
+                out.writeShort((Short) value);
+            } else if (value instanceof Byte) {
+                out.writeByte(TAG_BYTE);
+                out.writeByte((Byte) value);
+            } else if (value instanceof Clob) {
+                Clob clob = (Clob) value;
+                writeBytes(TAG_STRING, clob.getSubString(1L, (int) clob.length()).getBytes(StandardCharsets.UTF_8));
+            } else if (value instanceof Blob) {
+                Blob blob = (Blob) value;
+                writeBytes(TAG_BYTES, blob.getBytes(1L, (int) blob.length()));
+            } else if (value instanceof Serializable) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                    objects.writeObject(value);
+                }
+                writeBytes(TAG_SERIALIZED, bytes.toByteArray());
+            } else {
+                throw new SQLException("Column " + resultSet.getMetaData().getColumnLabel(index) + " of type " + value.getClass().getName() + " can not be buffered");
+            }
+        }
+
+        private void writeBytes(byte tag, @Nonnull byte[] bytes) throws IOException {
+            out.writeByte(tag);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package org.codehaus.griffon.runtime.datasource;
 
 import griffon.annotations.core.Nonnull;
+import org.codehaus.griffon.runtime.datasource.metrics.OperationCounters;
 
 import javax.sql.DataSource;
 import java.util.Collections;
@@ -33,6 +34,7 @@ import static griffon.util.GriffonNameUtils.requireNonBlank;
 public class JMXAwareDataSource extends DataSourceDecorator {
     private static final String ERROR_OBJECT_NAME_BLANK = "Argument 'objectName' must not be blank";
     private final Set<String> objectNames = new LinkedHashSet<>();
+    private final OperationCounters operationCounters = new OperationCounters();
 
     public JMXAwareDataSource(@Nonnull DataSource delegate) {
         super(delegate);
@@ -51,6 +53,11 @@ public class JMXAwareDataSource extends DataSourceDecorator {
         return Collections.unmodifiableSet(objectNames);
     }
 
+    @Nonnull
+    public OperationCounters getOperationCounters() {
+        return operationCounters;
+    }
+
     public void clearObjectNames(){
         objectNames.clear();
     }
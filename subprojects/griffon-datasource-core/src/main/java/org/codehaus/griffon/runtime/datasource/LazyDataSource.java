@@ -0,0 +1,138 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Defers the creation of a dataSource until it is used for the first time.
+ * <p>
+ * {@code isWrapperFor} and {@code unwrap(LazyDataSource.class)} never trigger the creation, thus the dataSource
+ * may be inspected, stored and destroyed without opening a single connection. Every other call creates it.
+ * A failed creation is reported to its caller and attempted again by the next one.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class LazyDataSource extends DataSourceDecorator {
+    private static final Logger LOG = LoggerFactory.getLogger(LazyDataSource.class);
+
+    private final String name;
+    private final Supplier<DataSource> factory;
+    private final Object lock = new Object();
+    private volatile DataSource delegate;
+    private volatile boolean closed;
+    private Runnable initializationListener;
+
+    public LazyDataSource(@Nonnull String name, @Nonnull Supplier<DataSource> factory) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.factory = requireNonNull(factory, "Argument 'factory' must not be null");
+    }
+
+    /**
+     * Sets the action to run right after the dataSource has been created, while other callers still wait for it.
+     */
+    void setInitializationListener(@Nullable Runnable initializationListener) {
+        synchronized (lock) {
+            this.initializationListener = initializationListener;
+        }
+    }
+
+    public boolean isInitialized() {
+        return delegate != null;
+    }
+
+    @Nonnull
+    public DataSource initialize() {
+        DataSource dataSource = delegate;
+        if (dataSource != null) {
+            return dataSource;
+        }
+
+        synchronized (lock) {
+            if (delegate != null) {
+                return delegate;
+            }
+            if (closed) {
+                throw new IllegalStateException("DataSource '" + name + "' has been closed");
+            }
+
+            long start = System.nanoTime();
+            delegate = requireNonNull(factory.get(), "DataSource '" + name + "' could not be created");
+            LOG.info("Created dataSource '{}' on first use in {}ms", name, NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (initializationListener != null) {
+                initializationListener.run();
+            }
+            return delegate;
+        }
+    }
+
+    /**
+     * Prevents the dataSource from being created from now on.
+     *
+     * @return the dataSource if it had already been created, {@code null} otherwise
+     */
+    @Nullable
+    DataSource close() {
+        synchronized (lock) {
+            closed = true;
+            return delegate;
+        }
+    }
+
+    @Override
+    protected DataSource getDelegate() {
+        return initialize();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkNotClosed();
+        return super.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        checkNotClosed();
+        return super.getConnection(username, password);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        DataSource dataSource = delegate;
+        return iface.isInstance(this) || (dataSource != null && dataSource.isWrapperFor(iface));
+    }
+
+    private void checkNotClosed() throws SQLException {
+        if (closed && delegate == null) {
+            throw new SQLException("DataSource '" + name + "' has been closed");
+        }
+    }
+}
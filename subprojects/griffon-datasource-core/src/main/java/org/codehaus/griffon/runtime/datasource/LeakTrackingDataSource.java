@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import org.codehaus.griffon.runtime.datasource.metrics.ConnectionLeakTracker;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hands a sample of the borrowed connections to a {@code ConnectionLeakTracker}.
+ * <p>
+ * Connections that are not sampled are returned as they are, costing a single random number per borrow.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class LeakTrackingDataSource extends DataSourceDecorator {
+    private static final Class<?>[] CONNECTION_TYPES = {Connection.class};
+
+    private final ConnectionLeakTracker tracker;
+
+    public LeakTrackingDataSource(@Nonnull DataSource delegate, @Nonnull ConnectionLeakTracker tracker) {
+        super(delegate);
+        this.tracker = requireNonNull(tracker, "Argument 'tracker' must not be null");
+    }
+
+    @Nonnull
+    public ConnectionLeakTracker getTracker() {
+        return tracker;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return track(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return track(super.getConnection(username, password));
+    }
+
+    @Nonnull
+    private Connection track(@Nonnull Connection connection) {
+        if (!tracker.sample()) {
+            return connection;
+        }
+        ConnectionHandler handler = new ConnectionHandler(connection, tracker.borrowed(connection));
+        return (Connection) Proxy.newProxyInstance(LeakTrackingDataSource.class.getClassLoader(), CONNECTION_TYPES, handler);
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final ConnectionLeakTracker.Borrow borrow;
+
+        private ConnectionHandler(@Nonnull Connection target, @Nonnull ConnectionLeakTracker.Borrow borrow) {
+            this.target = target;
+            this.borrow = borrow;
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    try {
+                        target.close();
+                    } finally {
+                        tracker.returned(borrow);
+                    }
+                    return null;
+                case "equals":
+                    return p == args[0];
+                case "hashCode":
+                    return System.identityHashCode(p);
+                case "toString":
+                    return "LeakTracking[" + target + "]";
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
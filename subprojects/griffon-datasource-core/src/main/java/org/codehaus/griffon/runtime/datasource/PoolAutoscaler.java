@@ -0,0 +1,270 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.datasource.events.DataSourcePoolScaledEvent;
+import org.codehaus.griffon.runtime.datasource.metrics.ConnectionPoolMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Resizes a connection pool between {@code autoscale.minPoolSize} and {@code autoscale.maxPoolSize} based on
+ * periodic samples of its state.
+ * <p>
+ * A sample signals pressure when threads are waiting for a connection, when connections timed out, or when the
+ * mean acquire time since the previous sample reaches {@code autoscale.acquireTimeThreshold}. The pool grows by
+ * {@code autoscale.step} (or by the number of waiting threads, if larger) after {@code autoscale.growAfter}
+ * consecutive samples under pressure, and shrinks by {@code autoscale.step} after {@code autoscale.shrinkAfter}
+ * consecutive samples in which fewer connections than the smaller size were in use. Shrinking requires a much
+ * longer streak than growing by default, and no change is made within {@code autoscale.cooldown} milliseconds
+ * of the previous one, so that the size settles instead of oscillating.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class PoolAutoscaler {
+    private static final Logger LOG = LoggerFactory.getLogger(PoolAutoscaler.class);
+
+    private final String name;
+    private final HikariPoolMXBean pool;
+    private final HikariConfigMXBean config;
+    private final ConnectionPoolMetrics metrics;
+    private final Consumer<DataSourcePoolScaledEvent> listener;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final int step;
+    private final long interval;
+    private final long cooldown;
+    private final int growAfter;
+    private final int shrinkAfter;
+    private final long acquireTimeThreshold;
+
+    private final AtomicLong scaleUps = new AtomicLong();
+    private final AtomicLong scaleDowns = new AtomicLong();
+    private volatile boolean enabled = true;
+    private volatile String lastDecision = "";
+    private volatile long lastDecisionTime;
+
+    // only touched by the sampling thread
+    private int growStreak;
+    private int shrinkStreak;
+    private long lastChange;
+    private long lastAcquireCount;
+    private long lastAcquireSum;
+    private long lastTimeouts;
+
+    private ScheduledFuture<?> task;
+
+    public PoolAutoscaler(@Nonnull DataSourceSettings settings,
+                          @Nonnull HikariPoolMXBean pool,
+                          @Nonnull HikariConfigMXBean config,
+                          @Nullable ConnectionPoolMetrics metrics,
+                          @Nonnull Consumer<DataSourcePoolScaledEvent> listener) {
+        requireNonNull(settings, "Argument 'settings' must not be null");
+        this.pool = requireNonNull(pool, "Argument 'pool' must not be null");
+        this.config = requireNonNull(config, "Argument 'config' must not be null");
+        this.listener = requireNonNull(listener, "Argument 'listener' must not be null");
+        this.metrics = metrics;
+        this.name = settings.getName();
+        this.minPoolSize = settings.getAutoscaleMinPoolSize();
+        this.maxPoolSize = settings.getAutoscaleMaxPoolSize();
+        this.step = settings.getAutoscaleStep();
+        this.interval = settings.getAutoscaleInterval();
+        this.cooldown = MILLISECONDS.toNanos(settings.getAutoscaleCooldown());
+        this.growAfter = settings.getAutoscaleGrowAfter();
+        this.shrinkAfter = settings.getAutoscaleShrinkAfter();
+        this.acquireTimeThreshold = MILLISECONDS.toMicros(settings.getAutoscaleAcquireTimeThreshold());
+        this.lastChange = System.nanoTime() - cooldown;
+        if (metrics != null) {
+            lastAcquireCount = metrics.getAcquireTime().getCount();
+            lastAcquireSum = metrics.getAcquireTime().getSum();
+            lastTimeouts = metrics.getTimeouts();
+        }
+    }
+
+    synchronized void start(@Nonnull ScheduledExecutorService scheduler) {
+        if (task == null) {
+            task = scheduler.scheduleWithFixedDelay(this::sampleSafely, interval, interval, MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Pauses or resumes scaling decisions. The pool keeps its current size while paused.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public int getPoolSize() {
+        return config.getMaximumPoolSize();
+    }
+
+    public long getScaleUps() {
+        return scaleUps.get();
+    }
+
+    public long getScaleDowns() {
+        return scaleDowns.get();
+    }
+
+    /**
+     * Describes the last change made to the pool size, or an empty String if none was made.
+     */
+    @Nonnull
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    /**
+     * Time of the last change made to the pool size, in milliseconds since the epoch.
+     */
+    public long getLastDecisionTime() {
+        return lastDecisionTime;
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not sample the {} connection pool", name, e);
+        }
+    }
+
+    void sample() {
+        int size = config.getMaximumPoolSize();
+        int waiting = pool.getThreadsAwaitingConnection();
+        int active = pool.getActiveConnections();
+        long timeouts = timeoutsSinceLastSample();
+        long acquireTime = meanAcquireTimeSinceLastSample();
+
+        if (!enabled) {
+            growStreak = 0;
+            shrinkStreak = 0;
+            return;
+        }
+
+        String pressure = null;
+        if (waiting > 0) {
+            pressure = waiting + " thread(s) waiting for a connection";
+        } else if (timeouts > 0) {
+            pressure = timeouts + " connection timeout(s)";
+        } else if (acquireTimeThreshold > 0 && acquireTime >= acquireTimeThreshold) {
+            pressure = "mean acquire time of " + MICROSECONDS.toMillis(acquireTime) + "ms";
+        }
+
+        if (pressure != null) {
+            shrinkStreak = 0;
+            if (++growStreak >= growAfter && size < maxPoolSize && coolDownElapsed()) {
+                resize(size, Math.min(maxPoolSize, size + Math.max(step, waiting)), pressure);
+            }
+            return;
+        }
+
+        growStreak = 0;
+        int smaller = Math.max(minPoolSize, size - step);
+        if (smaller < size && active < smaller) {
+            if (++shrinkStreak >= shrinkAfter && coolDownElapsed()) {
+                resize(size, smaller, active + " of " + size + " connection(s) in use");
+            }
+        } else {
+            shrinkStreak = 0;
+        }
+    }
+
+    private boolean coolDownElapsed() {
+        return System.nanoTime() - lastChange >= cooldown;
+    }
+
+    private void resize(int oldSize, int newSize, @Nonnull String reason) {
+        if (config.getMinimumIdle() > newSize) {
+            config.setMinimumIdle(newSize);
+        }
+        config.setMaximumPoolSize(newSize);
+
+        growStreak = 0;
+        shrinkStreak = 0;
+        lastChange = System.nanoTime();
+        (newSize > oldSize ? scaleUps : scaleDowns).incrementAndGet();
+        lastDecision = (newSize > oldSize ? "Grew" : "Shrank") + " from " + oldSize + " to " + newSize + ": " + reason;
+        lastDecisionTime = System.currentTimeMillis();
+
+        LOG.info("Autoscaler of the {} connection pool: {}", name, lastDecision);
+        listener.accept(DataSourcePoolScaledEvent.of(name, oldSize, newSize, reason));
+    }
+
+    private long timeoutsSinceLastSample() {
+        if (metrics == null) {
+            return 0L;
+        }
+        long timeouts = metrics.getTimeouts();
+        long delta = timeouts - lastTimeouts;
+        lastTimeouts = timeouts;
+        // metrics may have been reset in between
+        return Math.max(0L, delta);
+    }
+
+    private long meanAcquireTimeSinceLastSample() {
+        if (metrics == null) {
+            return 0L;
+        }
+        long count = metrics.getAcquireTime().getCount();
+        long sum = metrics.getAcquireTime().getSum();
+        long deltaCount = count - lastAcquireCount;
+        long deltaSum = sum - lastAcquireSum;
+        lastAcquireCount = count;
+        lastAcquireSum = sum;
+        return deltaCount > 0 && deltaSum >= 0 ? deltaSum / deltaCount : 0L;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Reads and writes the pool properties of a dataSource that were changed at runtime, so that they take precedence
+ * over the configured {@code pool} entries on the next start. The file is a plain properties file and is replaced
+ * atomically where the file system allows it.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class PoolOverrides {
+    private PoolOverrides() {
+        // prevent instantiation
+    }
+
+    @Nonnull
+    static Map<String, Object> read(@Nonnull Path file) {
+        Map<String, Object> overrides = new LinkedHashMap<>();
+        if (!Files.isRegularFile(file)) {
+            return overrides;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read pool overrides from " + file, e);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            overrides.put(key, properties.getProperty(key).trim());
+        }
+        return overrides;
+    }
+
+    static synchronized void write(@Nonnull Path file, @Nonnull String dataSourceName, @Nonnull String property, @Nonnull Object value) {
+        Properties properties = new Properties();
+        properties.putAll(read(file));
+        properties.setProperty(property, String.valueOf(value));
+
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    properties.store(out, "Pool properties of dataSource '" + dataSourceName + "' changed at runtime");
+                }
+                try {
+                    Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, file, REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write pool overrides to " + file, e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.datasource.Row;
+import griffon.plugins.datasource.exceptions.RuntimeSQLException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads rows from a forward-only cursor one at a time. The statement and result set are released when the stream
+ * is closed, when the last row has been read, or when reading fails. The connection is released as well when the
+ * stream owns it; a connection borrowed from an enclosing call is left as found.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class ResultSetSpliterator extends Spliterators.AbstractSpliterator<Row> {
+    private final String dataSourceName;
+    private final Connection connection;
+    private final boolean owned;
+    private final boolean autoCommit;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final Map<String, Integer> columns;
+    private final int columnCount;
+    private final Consumer<SQLException> completion;
+    private boolean closed;
+
+    private ResultSetSpliterator(@Nonnull String dataSourceName, @Nonnull Connection connection, boolean owned, boolean autoCommit, @Nonnull PreparedStatement statement, @Nonnull ResultSet resultSet, @Nonnull Consumer<SQLException> completion) throws SQLException {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        this.dataSourceName = dataSourceName;
+        this.connection = connection;
+        this.owned = owned;
+        this.autoCommit = autoCommit;
+        this.completion = completion;
+        this.statement = statement;
+        this.resultSet = resultSet;
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        this.columnCount = metaData.getColumnCount();
+        this.columns = Rows.columns(metaData);
+    }
+
+    /**
+     * Executes the query and returns a stream reading its rows.
+     *
+     * @param owned      whether the stream owns the connection, closing it once done
+     * @param completion invoked once the stream has released its resources, with the first failure if there was one
+     */
+    @Nonnull
+    static Stream<Row> stream(@Nonnull String dataSourceName, @Nonnull Connection connection, boolean owned, @Nonnull String sql, @Nonnull List<?> params, int fetchSize, @Nonnull Consumer<SQLException> completion) {
+        PreparedStatement statement = null;
+        boolean autoCommit = false;
+        try {
+            // some drivers, PostgreSQL among them, only use a cursor outside of auto-commit mode;
+            // the auto-commit mode of a borrowed connection is left to its owner
+            if (owned && connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+                autoCommit = true;
+            }
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            for (int i = 0; i < params.size(); i++) {
+                statement.setObject(i + 1, params.get(i));
+            }
+            ResultSet resultSet = statement.executeQuery();
+            ResultSetSpliterator spliterator = new ResultSetSpliterator(dataSourceName, connection, owned, autoCommit, statement, resultSet, completion);
+            return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+        } catch (SQLException e) {
+            RuntimeSQLException exception = new RuntimeSQLException(dataSourceName, e);
+            closeStatement(dataSourceName, statement, exception);
+            if (owned) {
+                restoreAndClose(dataSourceName, connection, autoCommit, exception);
+            }
+            completion.accept(e);
+            throw exception;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Row> action) {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (!resultSet.next()) {
+                close();
+                return false;
+            }
+            action.accept(Rows.read(resultSet, columns, columnCount));
+            return true;
+        } catch (SQLException e) {
+            RuntimeSQLException exception = new RuntimeSQLException(dataSourceName, e);
+            close(exception);
+            throw exception;
+        }
+    }
+
+    void close() {
+        RuntimeSQLException exception = close(null);
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private RuntimeSQLException close(RuntimeSQLException failure) {
+        if (closed) {
+            return null;
+        }
+        closed = true;
+
+        RuntimeSQLException exception = failure;
+        try {
+            resultSet.close();
+        } catch (SQLException e) {
+            exception = suppress(dataSourceName, exception, e);
+        }
+        exception = closeStatement(dataSourceName, statement, exception);
+        if (owned) {
+            exception = restoreAndClose(dataSourceName, connection, autoCommit, exception);
+        }
+        completion.accept(cause(exception));
+        return exception;
+    }
+
+    @Nullable
+    private static SQLException cause(@Nullable RuntimeSQLException exception) {
+        return exception != null && exception.getCause() instanceof SQLException ? (SQLException) exception.getCause() : null;
+    }
+
+    private static RuntimeSQLException closeStatement(@Nonnull String dataSourceName, PreparedStatement statement, RuntimeSQLException exception) {
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                exception = suppress(dataSourceName, exception, e);
+            }
+        }
+        return exception;
+    }
+
+    private static RuntimeSQLException restoreAndClose(@Nonnull String dataSourceName, @Nonnull Connection connection, boolean autoCommit, RuntimeSQLException exception) {
+        try {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            exception = suppress(dataSourceName, exception, e);
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            exception = suppress(dataSourceName, exception, e);
+        }
+        return exception;
+    }
+
+    private static RuntimeSQLException suppress(@Nonnull String dataSourceName, RuntimeSQLException exception, @Nonnull SQLException e) {
+        if (exception == null) {
+            return new RuntimeSQLException(dataSourceName, e);
+        }
+        exception.addSuppressed(e);
+        return exception;
+    }
+}
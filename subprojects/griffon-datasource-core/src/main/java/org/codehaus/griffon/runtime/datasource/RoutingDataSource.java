@@ -0,0 +1,257 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import griffon.annotations.core.Nonnull;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Splits reads and writes across other configured dataSources. Connections are obtained from the primary unless
+ * they are explicitly requested as read-only, in which case the replica with the fewest active connections is used.
+ * Replicas that fail to hand out a connection are ejected for {@code ejectTime} milliseconds; reads fall back to
+ * the primary when no replica is available. Likewise a replica that can not be resolved, for example because it is
+ * not configured, is not looked up again until {@code ejectTime} has elapsed.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class RoutingDataSource implements DataSource {
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RoutingDataSource.class);
+
+    public static final long DEFAULT_EJECT_TIME = 30_000L;
+
+    private final String name;
+    private final String primary;
+    private final Replica[] replicas;
+    private final long ejectTime;
+    private final Function<String, DataSource> resolver;
+    private final AtomicInteger next = new AtomicInteger();
+    private final DataSource readOnlyDataSource = new DataSourceDecorator(this) {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return getReadOnlyConnection();
+        }
+    };
+
+    public RoutingDataSource(@Nonnull String name, @Nonnull String primary, @Nonnull List<String> replicas, long ejectTime, @Nonnull Function<String, DataSource> resolver) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.primary = requireNonBlank(primary, "Argument 'primary' must not be blank");
+        requireNonNull(replicas, "Argument 'replicas' must not be null");
+        this.replicas = new Replica[replicas.size()];
+        for (int i = 0; i < this.replicas.length; i++) {
+            this.replicas[i] = new Replica(requireNonBlank(replicas.get(i), "Replica names must not be blank"));
+        }
+        this.ejectTime = MILLISECONDS.toNanos(Math.max(0L, ejectTime));
+        this.resolver = requireNonNull(resolver, "Argument 'resolver' must not be null");
+    }
+
+    @Nonnull
+    public String getPrimaryName() {
+        return primary;
+    }
+
+    @Nonnull
+    public DataSource getPrimary() {
+        return resolver.apply(primary);
+    }
+
+    /**
+     * Returns a view of this dataSource whose connections are always read-only.
+     */
+    @Nonnull
+    public DataSource getReadOnlyDataSource() {
+        return readOnlyDataSource;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getPrimary().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getPrimary().getConnection(username, password);
+    }
+
+    /**
+     * Obtains a connection from the least active replica that is not ejected.
+     */
+    @Nonnull
+    public Connection getReadOnlyConnection() throws SQLException {
+        boolean[] tried = new boolean[replicas.length];
+        for (int attempt = 0; attempt < replicas.length; attempt++) {
+            Replica replica = selectReplica(tried);
+            if (replica == null) {
+                break;
+            }
+            try {
+                Connection connection = replica.resolve().getConnection();
+                connection.setReadOnly(true);
+                return connection;
+            } catch (SQLException | RuntimeException e) {
+                LOG.warn("Ejecting replica '{}' from dataSource '{}' for {}ms", replica.name, name, NANOSECONDS.toMillis(ejectTime), e);
+                replica.eject();
+            }
+        }
+
+        LOG.debug("No replica available for dataSource '{}'. Using primary '{}'", name, primary);
+        return getConnection();
+    }
+
+    private Replica selectReplica(@Nonnull boolean[] tried) {
+        long now = System.nanoTime();
+        int offset = next.getAndIncrement() & Integer.MAX_VALUE;
+        Replica selected = null;
+        int selectedIndex = -1;
+        int selectedActive = Integer.MAX_VALUE;
+        // start at a rotating offset so that ties are spread evenly
+        for (int i = 0; i < replicas.length; i++) {
+            int index = (offset + i) % replicas.length;
+            Replica replica = replicas[index];
+            if (tried[index] || !replica.isAvailable(now)) {
+                continue;
+            }
+            int active = replica.getActiveConnections();
+            if (active < selectedActive) {
+                selected = replica;
+                selectedIndex = index;
+                selectedActive = active;
+            }
+        }
+        if (selected != null) {
+            tried[selectedIndex] = true;
+        }
+        return selected;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return getPrimary().getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        getPrimary().setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        getPrimary().setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return getPrimary().getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return getPrimary().getParentLogger();
+    }
+
+    /**
+     * Only answers for this dataSource. It owns no pool, thus closing or filling it must not reach the pool of the
+     * primary, which is still in use on its own.
+     */
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Routing dataSource '" + name + "' does not wrap " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    private final class Replica {
+        private final String name;
+        private volatile long ejectedAt;
+        private volatile boolean ejected;
+        private volatile long failedAt;
+        private volatile RuntimeException failure;
+
+        private Replica(@Nonnull String name) {
+            this.name = name;
+        }
+
+        @Nonnull
+        private DataSource resolve() {
+            long now = System.nanoTime();
+            RuntimeException cached = failure;
+            if (cached != null && now - failedAt < ejectTime) {
+                throw cached;
+            }
+            try {
+                DataSource dataSource = resolver.apply(name);
+                failure = null;
+                return dataSource;
+            } catch (RuntimeException e) {
+                failedAt = now;
+                failure = e;
+                throw e;
+            }
+        }
+
+        private boolean isAvailable(long now) {
+            if (ejected && now - ejectedAt >= ejectTime) {
+                // give it another chance, it will be ejected again if it keeps failing
+                ejected = false;
+            }
+            return !ejected;
+        }
+
+        private void eject() {
+            ejectedAt = System.nanoTime();
+            ejected = true;
+        }
+
+        private int getActiveConnections() {
+            try {
+                DataSource dataSource = resolve();
+                if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                    HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+                    return pool != null ? pool.getActiveConnections() : 0;
+                }
+            } catch (SQLException | RuntimeException e) {
+                eject();
+                return Integer.MAX_VALUE;
+            }
+            return 0;
+        }
+    }
+}
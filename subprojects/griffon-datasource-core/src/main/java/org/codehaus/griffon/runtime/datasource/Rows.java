@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.datasource.Row;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+
+/**
+ * Converts JDBC results into {@code Row}s.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class Rows {
+    private Rows() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns column indexes keyed by column label. The first column wins when labels are duplicated.
+     */
+    @Nonnull
+    static Map<String, Integer> columns(@Nonnull ResultSetMetaData metaData) throws SQLException {
+        Map<String, Integer> columns = new TreeMap<>(CASE_INSENSITIVE_ORDER);
+        int columnCount = metaData.getColumnCount();
+        for (int i = 1; i <= columnCount; i++) {
+            columns.putIfAbsent(metaData.getColumnLabel(i), i - 1);
+        }
+        return Collections.unmodifiableMap(columns);
+    }
+
+    /**
+     * Reads the current row of the given result set.
+     */
+    @Nonnull
+    static Row read(@Nonnull ResultSet resultSet, @Nonnull Map<String, Integer> columns, int columnCount) throws SQLException {
+        Object[] values = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            values[i] = resultSet.getObject(i + 1);
+        }
+        return new Row(columns, values);
+    }
+
+    /**
+     * Reads all remaining rows of the given result set.
+     */
+    @Nonnull
+    static List<Row> readAll(@Nonnull ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        Map<String, Integer> columns = columns(metaData);
+        int columnCount = metaData.getColumnCount();
+        List<Row> rows = new ArrayList<>();
+        while (resultSet.next()) {
+            rows.add(read(resultSet, columns, columnCount));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Caches {@code PreparedStatement}s per physical connection, surviving the return of pooled connections.
+ * <p>
+ * Statements are keyed by SQL, result set type, result set concurrency and generated keys flag. Each physical
+ * connection keeps at most {@code cacheSize} statements, evicting (and closing) the least recently used one
+ * when full. Closing a cached statement returns it to the cache instead of closing it.
+ * <p>
+ * Cached statements run on the physical connection, out of sight of the pool. A connection that fails with a
+ * connection-class error (SQLState {@code 08xxx}) is thus handed to the {@code evictor} when closed, instead of
+ * being returned to the pool.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class StatementCachingDataSource extends DataSourceDecorator {
+    public static final int DEFAULT_MAX_SQL_LENGTH = 2048;
+
+    private static final Class<?>[] CONNECTION_TYPES = {Connection.class};
+    private static final Class<?>[] STATEMENT_TYPES = {PreparedStatement.class};
+    private static final Class<?>[] RESULT_SET_TYPES = {ResultSet.class};
+
+    private final int cacheSize;
+    private final int maxSqlLength;
+    private final Consumer<Connection> evictor;
+    // cached statements reference their connection, thus caches must be dropped explicitly once it is closed
+    private final Map<Connection, StatementCache> caches = new IdentityHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StatementCachingDataSource(@Nonnull DataSource delegate, int cacheSize, int maxSqlLength) {
+        this(delegate, cacheSize, maxSqlLength, null);
+    }
+
+    public StatementCachingDataSource(@Nonnull DataSource delegate, int cacheSize, int maxSqlLength, @Nullable Consumer<Connection> evictor) {
+        super(delegate);
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("Argument 'cacheSize' must be greater than 0");
+        }
+        this.cacheSize = cacheSize;
+        this.maxSqlLength = maxSqlLength;
+        this.evictor = evictor;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getCachedStatements() {
+        List<StatementCache> snapshot;
+        synchronized (caches) {
+            purge();
+            snapshot = new ArrayList<>(caches.values());
+        }
+        int count = 0;
+        for (StatementCache cache : snapshot) {
+            count += cache.size();
+        }
+        return count;
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    @Nonnull
+    private Connection wrap(@Nonnull Connection connection) throws SQLException {
+        // pooled connections are proxies whose statements are closed when returned to the pool,
+        // thus statements must be prepared on the physical connection to survive
+        Connection physical = connection.isWrapperFor(Connection.class) ? connection.unwrap(Connection.class) : connection;
+        StatementCache cache;
+        synchronized (caches) {
+            cache = caches.get(physical);
+            if (cache == null) {
+                // a new physical connection usually replaces one the pool has retired
+                purge();
+                cache = new StatementCache(physical);
+                caches.put(physical, cache);
+            }
+        }
+        ConnectionHandler handler = new ConnectionHandler(connection, cache);
+        Connection proxy = (Connection) Proxy.newProxyInstance(StatementCachingDataSource.class.getClassLoader(), CONNECTION_TYPES, handler);
+        handler.proxy = proxy;
+        return proxy;
+    }
+
+    /**
+     * Drops the caches of physical connections closed by the pool, closing their statements.
+     */
+    private void purge() {
+        for (Iterator<StatementCache> it = caches.values().iterator(); it.hasNext(); ) {
+            StatementCache cache = it.next();
+            if (cache.isClosed()) {
+                it.remove();
+                cache.clear();
+            }
+        }
+    }
+
+    private static Object invoke(@Nonnull Object target, @Nonnull Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static boolean isConnectionBroken(@Nonnull SQLException exception) {
+        for (SQLException e = exception; e != null; e = e.getNextException()) {
+            String state = e.getSQLState();
+            if (e instanceof SQLRecoverableException || e instanceof SQLNonTransientConnectionException ||
+                (state != null && state.startsWith("08"))) {
+                return true;
+            }
+            if (e.getNextException() == e) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static void closeQuietly(@Nonnull Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // the physical connection may be gone already
+        }
+    }
+
+    private static final class StatementKey {
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int autoGeneratedKeys;
+        private final int hashCode;
+
+        private StatementKey(@Nonnull String sql, int resultSetType, int resultSetConcurrency, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            this.hashCode = Objects.hash(sql, resultSetType, resultSetConcurrency, autoGeneratedKeys);
+        }
+
+        @Nonnull
+        private PreparedStatement prepare(@Nonnull Connection connection) throws SQLException {
+            if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS) {
+                return connection.prepareStatement(sql, autoGeneratedKeys);
+            }
+            return connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof StatementKey)) return false;
+            StatementKey that = (StatementKey) o;
+            return resultSetType == that.resultSetType &&
+                resultSetConcurrency == that.resultSetConcurrency &&
+                autoGeneratedKeys == that.autoGeneratedKeys &&
+                sql.equals(that.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(@Nonnull PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    private final class StatementCache {
+        private final Connection physical;
+        private final Map<StatementKey, CachedStatement> entries = new LinkedHashMap<StatementKey, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StatementKey, CachedStatement> eldest) {
+                if (size() > cacheSize) {
+                    evict(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        private StatementCache(@Nonnull Connection physical) {
+            this.physical = physical;
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        private boolean isClosed() {
+            try {
+                return physical.isClosed();
+            } catch (SQLException e) {
+                return true;
+            }
+        }
+
+        private synchronized void clear() {
+            for (CachedStatement cached : entries.values()) {
+                closeQuietly(cached.statement);
+            }
+            entries.clear();
+        }
+
+        /**
+         * Returns a cached statement marked as in use, or {@code null} if the statement is already in use.
+         */
+        private synchronized CachedStatement borrow(@Nonnull StatementKey key) throws SQLException {
+            CachedStatement cached = entries.get(key);
+            if (cached != null) {
+                if (cached.inUse) {
+                    misses.increment();
+                    return null;
+                } else if (!cached.statement.isClosed()) {
+                    hits.increment();
+                    cached.inUse = true;
+                    return cached;
+                }
+                entries.remove(key);
+            }
+
+            misses.increment();
+            cached = new CachedStatement(key.prepare(physical));
+            cached.inUse = true;
+            entries.put(key, cached);
+            return cached;
+        }
+
+        private synchronized void release(@Nonnull StatementKey key, @Nonnull CachedStatement cached) {
+            cached.inUse = false;
+            if (cached.evicted) {
+                closeQuietly(cached.statement);
+                return;
+            }
+            try {
+                cached.statement.clearParameters();
+                cached.statement.clearBatch();
+                cached.statement.clearWarnings();
+            } catch (SQLException e) {
+                entries.remove(key, cached);
+                closeQuietly(cached.statement);
+            }
+        }
+
+        private void evict(@Nonnull CachedStatement cached) {
+            evictions.increment();
+            cached.evicted = true;
+            if (!cached.inUse) {
+                closeQuietly(cached.statement);
+            }
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final StatementCache cache;
+        private final List<StatementHandler> checkedOut = new ArrayList<>();
+        private Connection proxy;
+        private boolean dirty;
+        private boolean broken;
+        private boolean closed;
+
+        private ConnectionHandler(@Nonnull Connection target, @Nonnull StatementCache cache) {
+            this.target = target;
+            this.cache = cache;
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    StatementKey key = keyFor(method, args);
+                    if (key != null && !closed) {
+                        return prepare(key, method, args);
+                    }
+                    break;
+                case "commit":
+                case "rollback":
+                    if (args == null) {
+                        dirty = false;
+                    }
+                    break;
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed || target.isClosed();
+                case "equals":
+                    return p == args[0];
+                case "hashCode":
+                    return System.identityHashCode(p);
+                case "toString":
+                    return "StatementCaching[" + target + "]";
+                default:
+                    break;
+            }
+            return StatementCachingDataSource.invoke(target, method, args);
+        }
+
+        private StatementKey keyFor(@Nonnull Method method, @Nonnull Object[] args) {
+            String sql = (String) args[0];
+            if (sql == null || sql.length() > maxSqlLength) {
+                return null;
+            }
+
+            Class<?>[] types = method.getParameterTypes();
+            if (types.length == 1) {
+                return new StatementKey(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, Statement.NO_GENERATED_KEYS);
+            } else if (types.length == 2 && types[1] == int.class) {
+                return new StatementKey(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, (Integer) args[1]);
+            } else if (types.length == 3) {
+                return new StatementKey(sql, (Integer) args[1], (Integer) args[2], Statement.NO_GENERATED_KEYS);
+            }
+            return null;
+        }
+
+        private Object prepare(@Nonnull StatementKey key, @Nonnull Method method, @Nonnull Object[] args) throws Throwable {
+            CachedStatement cached;
+            try {
+                cached = cache.borrow(key);
+            } catch (SQLException e) {
+                throw check(e);
+            }
+            if (cached == null) {
+                // the same statement is in use by this connection already
+                return StatementCachingDataSource.invoke(target, method, args);
+            }
+
+            StatementHandler handler = new StatementHandler(this, key, cached);
+            checkedOut.add(handler);
+            return Proxy.newProxyInstance(StatementCachingDataSource.class.getClassLoader(), STATEMENT_TYPES, handler);
+        }
+
+        @Nonnull
+        private SQLException check(@Nonnull SQLException e) {
+            if (isConnectionBroken(e)) {
+                broken = true;
+            }
+            return e;
+        }
+
+        /**
+         * Drops the statements of a broken physical connection and keeps the pool from handing it out again.
+         */
+        private void evict() {
+            synchronized (caches) {
+                caches.remove(cache.physical, cache);
+            }
+            cache.clear();
+            if (evictor != null) {
+                evictor.accept(target);
+            }
+        }
+
+        private void close() throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                for (StatementHandler handler : new ArrayList<>(checkedOut)) {
+                    handler.close();
+                }
+                // statements prepared on the physical connection are invisible to the pool, so
+                // uncommitted work must be discarded here
+                if (dirty && !target.getAutoCommit()) {
+                    target.rollback();
+                }
+            } finally {
+                if (broken) {
+                    evict();
+                }
+                target.close();
+            }
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final ConnectionHandler connection;
+        private final StatementKey key;
+        private final CachedStatement cached;
+        private ResultSet resultSet;
+        private boolean closed;
+
+        private StatementHandler(@Nonnull ConnectionHandler connection, @Nonnull StatementKey key, @Nonnull CachedStatement cached) {
+            this.connection = connection;
+            this.key = key;
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return connection.proxy;
+                case "equals":
+                    return p == args[0];
+                case "hashCode":
+                    return System.identityHashCode(p);
+                case "toString":
+                    return "StatementCaching[" + cached.statement + "]";
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+
+            if (name.startsWith("execute") || "addBatch".equals(name)) {
+                connection.dirty = true;
+            }
+            Object result;
+            try {
+                result = StatementCachingDataSource.invoke(cached.statement, method, args);
+            } catch (SQLException e) {
+                throw connection.check(e);
+            }
+            if (result instanceof ResultSet) {
+                resultSet = (ResultSet) result;
+                return Proxy.newProxyInstance(StatementCachingDataSource.class.getClassLoader(), RESULT_SET_TYPES,
+                    new ResultSetHandler(connection, (Statement) p, resultSet));
+            }
+            return result;
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (resultSet != null) {
+                try {
+                    resultSet.close();
+                } catch (SQLException ignored) {
+                    // statement will be cleared and reused regardless
+                }
+                resultSet = null;
+            }
+            connection.checkedOut.remove(this);
+            connection.cache.release(key, cached);
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ConnectionHandler connection;
+        private final Statement statement;
+        private final ResultSet target;
+
+        private ResultSetHandler(@Nonnull ConnectionHandler connection, @Nonnull Statement statement, @Nonnull ResultSet target) {
+            this.connection = connection;
+            this.statement = statement;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getStatement":
+                    return statement;
+                case "equals":
+                    return p == args[0];
+                case "hashCode":
+                    return System.identityHashCode(p);
+                case "toString":
+                    return "StatementCaching[" + target + "]";
+                default:
+                    break;
+            }
+            try {
+                return StatementCachingDataSource.invoke(target, method, args);
+            } catch (SQLException e) {
+                throw connection.check(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.datasource.ConnectionCallback;
+import griffon.plugins.datasource.DataSourceHandler;
+import griffon.plugins.datasource.ReadOnly;
+import org.codehaus.griffon.runtime.datasource.metrics.SlowCallbackTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs a callback inside a transaction. The outermost transaction on a thread bound connection commits or rolls
+ * back; nested transactions are scoped with savepoints. Nested transactions run with the settings of the outermost
+ * one: a read-only nested transaction may run on a writable connection, whereas asking for a different isolation
+ * level fails. A writable transaction nested in a read-only one can not share its connection and runs on its own.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class TransactionCallback<R> implements ConnectionCallback<R> {
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionCallback.class);
+
+    private final ConnectionCallback<R> callback;
+    private final int isolation;
+    private final boolean readOnly;
+    private final SlowCallbackTracker slowCallbackTracker;
+
+    TransactionCallback(@Nonnull ConnectionCallback<R> callback, int isolation, boolean readOnly, @Nonnull SlowCallbackTracker slowCallbackTracker) {
+        this.callback = requireNonNull(callback, "Argument 'callback' must not be null");
+        this.isolation = isolation;
+        this.readOnly = readOnly;
+        this.slowCallbackTracker = requireNonNull(slowCallbackTracker, "Argument 'slowCallbackTracker' must not be null");
+    }
+
+    @Nonnull
+    static <R> TransactionCallback<R> of(@Nonnull ConnectionCallback<R> callback, int isolation, boolean readOnly, @Nonnull SlowCallbackTracker slowCallbackTracker) {
+        // read-only transactions are routed to replicas
+        return readOnly ? new ReadOnlyTransactionCallback<>(callback, isolation, slowCallbackTracker) : new TransactionCallback<>(callback, isolation, false, slowCallbackTracker);
+    }
+
+    @Override
+    public R handle(@Nonnull String dataSourceName, @Nonnull DataSource dataSource, @Nonnull Connection connection) throws SQLException {
+        // a writable transaction nested in a read-only one gets a connection of its own, which is not bound
+        ConnectionHolder holder = ConnectionHolder.current(dataSourceName);
+        if (holder != null && holder.getConnection() != connection) {
+            holder = null;
+        }
+        long start = System.nanoTime();
+        try {
+            if (holder != null && holder.isTransactionActive()) {
+                return nested(dataSourceName, dataSource, connection, holder);
+            }
+            return outermost(dataSourceName, dataSource, connection, holder);
+        } finally {
+            slowCallbackTracker.record(callback, System.nanoTime() - start);
+        }
+    }
+
+    private R outermost(@Nonnull String dataSourceName, @Nonnull DataSource dataSource, @Nonnull Connection connection, ConnectionHolder holder) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        boolean wasReadOnly = connection.isReadOnly();
+        int previousIsolation = connection.getTransactionIsolation();
+
+        if (isolation != DataSourceHandler.ISOLATION_DEFAULT && isolation != previousIsolation) {
+            connection.setTransactionIsolation(isolation);
+        }
+        if (readOnly && !wasReadOnly) {
+            connection.setReadOnly(true);
+        }
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+
+        if (holder != null) {
+            holder.beginTransaction();
+        }
+        try {
+            R result = callback.handle(dataSourceName, dataSource, connection);
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException | Error e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            throw e;
+        } finally {
+            if (holder != null) {
+                holder.endTransaction();
+            }
+            restore(connection, autoCommit, wasReadOnly, previousIsolation);
+        }
+    }
+
+    private R nested(@Nonnull String dataSourceName, @Nonnull DataSource dataSource, @Nonnull Connection connection, @Nonnull ConnectionHolder holder) throws SQLException {
+        if (isolation != DataSourceHandler.ISOLATION_DEFAULT && isolation != connection.getTransactionIsolation()) {
+            throw new IllegalStateException("Nested transaction on dataSource '" + dataSourceName + "' can not change the isolation level of the enclosing transaction");
+        }
+        Savepoint savepoint = connection.setSavepoint();
+        holder.beginTransaction();
+        try {
+            R result = callback.handle(dataSourceName, dataSource, connection);
+            releaseSavepoint(connection, savepoint);
+            return result;
+        } catch (SQLException | RuntimeException | Error e) {
+            try {
+                connection.rollback(savepoint);
+            } catch (SQLException rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            throw e;
+        } finally {
+            holder.endTransaction();
+        }
+    }
+
+    private static void releaseSavepoint(@Nonnull Connection connection, @Nonnull Savepoint savepoint) throws SQLException {
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLFeatureNotSupportedException e) {
+            // savepoints are released on commit
+        }
+    }
+
+    private static void restore(@Nonnull Connection connection, boolean autoCommit, boolean readOnly, int isolation) {
+        try {
+            if (connection.getAutoCommit() != autoCommit) {
+                connection.setAutoCommit(autoCommit);
+            }
+            if (connection.isReadOnly() != readOnly) {
+                connection.setReadOnly(readOnly);
+            }
+            if (connection.getTransactionIsolation() != isolation) {
+                connection.setTransactionIsolation(isolation);
+            }
+        } catch (SQLException e) {
+            LOG.warn("Could not restore connection settings", e);
+        }
+    }
+
+    private static class ReadOnlyTransactionCallback<R> extends TransactionCallback<R> implements ReadOnly {
+        private ReadOnlyTransactionCallback(@Nonnull ConnectionCallback<R> callback, int isolation, @Nonnull SlowCallbackTracker slowCallbackTracker) {
+            super(callback, isolation, true, slowCallbackTracker);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.cache;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.datasource.Row;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Caches query results keyed by SQL and bound parameters.
+ * <p>
+ * The cache is bounded by the total number of cached rows and evicts least recently used results first.
+ * Entries may also expire after a time to live. Writes invalidate every result read from the tables they
+ * touch; results whose tables could not be determined are invalidated by any write.
+ * <p>
+ * Lookups and writes share a generation counter. A result is only stored if no invalidation happened while
+ * it was being queried, otherwise it might predate the write.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class QueryResultCache {
+    private final String dataSourceName;
+    private final long maxRows;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private long rows;
+
+    /**
+     * @param dataSourceName the name of the dataSource
+     * @param maxRows        maximum number of cached rows, {@code 0} disables the cache
+     * @param ttl            time to live in milliseconds, {@code 0} if entries do not expire
+     */
+    public QueryResultCache(@Nonnull String dataSourceName, long maxRows, long ttl) {
+        this.dataSourceName = requireNonBlank(dataSourceName, "Argument 'dataSourceName' must not be blank");
+        this.maxRows = Math.max(0L, maxRows);
+        this.ttlNanos = ttl > 0 ? MILLISECONDS.toNanos(ttl) : 0L;
+    }
+
+    @Nonnull
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    public boolean isEnabled() {
+        return maxRows > 0;
+    }
+
+    public long getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * Returns the time to live in milliseconds, {@code 0} if entries do not expire.
+     */
+    public long getTtl() {
+        return NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    /**
+     * Returns the current generation, to be passed to {@link #put} once the query completes.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    @Nullable
+    public List<Row> get(@Nonnull String sql, @Nonnull List<?> params) {
+        Key key = new Key(sql, params.toArray());
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                remove(key, entry);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.rows;
+        }
+    }
+
+    /**
+     * Stores the result of a query unless the cache was invalidated since {@code generation} was obtained.
+     *
+     * @return the cached, unmodifiable rows
+     */
+    @Nonnull
+    public List<Row> put(@Nonnull String sql, @Nonnull List<?> params, @Nonnull List<Row> result, long generation) {
+        requireNonNull(result, "Argument 'result' must not be null");
+        List<Row> rows = Collections.unmodifiableList(result);
+        long weight = Math.max(1L, rows.size());
+        if (!isEnabled() || weight > maxRows) {
+            return rows;
+        }
+
+        Key key = new Key(sql, params.toArray());
+        Set<String> tables = SqlTables.readTables(sql);
+        long expiresAt = ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0L;
+        synchronized (entries) {
+            if (this.generation.get() != generation) {
+                return rows;
+            }
+            Entry previous = entries.put(key, new Entry(rows, weight, tables, expiresAt));
+            if (previous != null) {
+                this.rows -= previous.weight;
+            }
+            this.rows += weight;
+            evict();
+        }
+        return rows;
+    }
+
+    /**
+     * Invalidates every result read from the tables touched by the given write statement.
+     */
+    public void invalidate(@Nonnull String sql) {
+        Set<String> tables = SqlTables.writeTables(sql);
+        if (tables == null) {
+            clear();
+        } else {
+            invalidateTables(tables);
+        }
+    }
+
+    public void invalidateTables(@Nonnull Set<String> tables) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.tables.isEmpty() || !Collections.disjoint(entry.tables, tables)) {
+                    it.remove();
+                    rows -= entry.weight;
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            invalidations.add(entries.size());
+            entries.clear();
+            rows = 0;
+        }
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getRows() {
+        synchronized (entries) {
+            return rows;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    private void evict() {
+        // expired entries go first, then the least recently used ones
+        if (ttlNanos > 0 && rows > maxRows) {
+            long now = System.nanoTime();
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.isExpired(now)) {
+                    it.remove();
+                    rows -= entry.weight;
+                    expirations.increment();
+                }
+            }
+        }
+        for (Iterator<Entry> it = entries.values().iterator(); rows > maxRows && it.hasNext(); ) {
+            Entry entry = it.next();
+            it.remove();
+            rows -= entry.weight;
+            evictions.increment();
+        }
+    }
+
+    private void remove(@Nonnull Key key, @Nonnull Entry entry) {
+        entries.remove(key);
+        rows -= entry.weight;
+    }
+
+    private static final class Key {
+        private final String sql;
+        private final Object[] params;
+        private final int hash;
+
+        private Key(@Nonnull String sql, @Nonnull Object[] params) {
+            this.sql = sql;
+            this.params = params;
+            this.hash = 31 * sql.hashCode() + Arrays.deepHashCode(params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && sql.equals(other.sql) && Arrays.deepEquals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final List<Row> rows;
+        private final long weight;
+        private final Set<String> tables;
+        private final long expiresAt;
+
+        private Entry(@Nonnull List<Row> rows, long weight, @Nonnull Set<String> tables, long expiresAt) {
+            this.rows = rows;
+            this.weight = weight;
+            this.tables = tables;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt != 0L && now - expiresAt >= 0;
+        }
+    }
+}
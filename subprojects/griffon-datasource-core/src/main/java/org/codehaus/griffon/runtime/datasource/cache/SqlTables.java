@@ -0,0 +1,231 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.cache;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Extracts the tables referenced by a SQL statement. This is a lexical scan, not a parser: it is meant to be
+ * conservative for writes (unknown statements touch every table) and good enough for the plain queries whose
+ * results are worth caching.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class SqlTables {
+    private static final Set<String> CLAUSE_KEYWORDS = new HashSet<>(Arrays.asList(
+        "where", "join", "inner", "left", "right", "full", "outer", "cross", "natural", "on", "using",
+        "group", "order", "having", "limit", "offset", "union", "except", "intersect", "minus", "fetch",
+        "for", "window", "set", "values", "select", "returning", "when", "as"));
+
+    private SqlTables() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the tables a query reads from, lower cased and without schema qualifiers.
+     */
+    @Nonnull
+    public static Set<String> readTables(@Nonnull String sql) {
+        List<String> tokens = tokenize(sql);
+        Set<String> tables = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (!"from".equalsIgnoreCase(token) && !"join".equalsIgnoreCase(token)) {
+                continue;
+            }
+            // table list: name [[AS] alias] {, name [[AS] alias]}
+            int j = i + 1;
+            while (j < tokens.size() && isName(tokens.get(j))) {
+                if (j + 1 < tokens.size() && "(".equals(tokens.get(j + 1))) {
+                    // table function
+                    break;
+                }
+                tables.add(normalize(tokens.get(j)));
+                j++;
+                if (j < tokens.size() && "as".equalsIgnoreCase(tokens.get(j))) {
+                    j++;
+                }
+                if (j < tokens.size() && isName(tokens.get(j)) && !isKeyword(tokens.get(j))) {
+                    j++;
+                }
+                if (j < tokens.size() && ",".equals(tokens.get(j))) {
+                    j++;
+                } else {
+                    break;
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Returns the table a write statement modifies.
+     *
+     * @return the affected tables or {@code null} if the statement was not recognized, in which case it
+     * should be assumed to affect every table
+     */
+    @Nullable
+    public static Set<String> writeTables(@Nonnull String sql) {
+        List<String> tokens = tokenize(sql);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+
+        int i = 1;
+        switch (tokens.get(0).toLowerCase(Locale.ENGLISH)) {
+            case "insert":
+            case "replace":
+            case "delete":
+                i = skip(tokens, i, "into", "from");
+                break;
+            case "merge":
+                i = skip(tokens, i, "into");
+                break;
+            case "truncate":
+                i = skip(tokens, i, "table");
+                break;
+            case "update":
+                break;
+            default:
+                return null;
+        }
+        if (i < tokens.size() && isName(tokens.get(i)) && !isKeyword(tokens.get(i))) {
+            return Collections.singleton(normalize(tokens.get(i)));
+        }
+        return null;
+    }
+
+    private static int skip(@Nonnull List<String> tokens, int index, @Nonnull String... keywords) {
+        if (index < tokens.size()) {
+            for (String keyword : keywords) {
+                if (keyword.equalsIgnoreCase(tokens.get(index))) {
+                    return index + 1;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static boolean isName(@Nonnull String token) {
+        char c = token.charAt(0);
+        return Character.isLetter(c) || c == '_' || c == '"' || c == '`' || c == '[';
+    }
+
+    private static boolean isKeyword(@Nonnull String token) {
+        return CLAUSE_KEYWORDS.contains(token.toLowerCase(Locale.ENGLISH));
+    }
+
+    @Nonnull
+    private static String normalize(@Nonnull String name) {
+        // last segment of a qualified name, unquoted
+        int dot = name.length();
+        boolean quoted = false;
+        for (int i = name.length() - 1; i >= 0; i--) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '`' || c == '[' || c == ']') {
+                quoted = !quoted;
+            } else if (c == '.' && !quoted) {
+                dot = i;
+                break;
+            }
+        }
+        String segment = dot < name.length() ? name.substring(dot + 1) : name;
+        StringBuilder b = new StringBuilder(segment.length());
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c != '"' && c != '`' && c != '[' && c != ']') {
+                b.append(c);
+            }
+        }
+        return b.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Splits a statement into names (possibly qualified and quoted), literals and single character symbols,
+     * dropping whitespace and comments.
+     */
+    @Nonnull
+    private static List<String> tokenize(@Nonnull String sql) {
+        List<String> tokens = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                while (i < length && sql.charAt(i) != '\n') i++;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                tokens.add("'");
+            } else if (Character.isLetter(c) || c == '_' || c == '"' || c == '`' || c == '[') {
+                int start = i;
+                while (i < length) {
+                    char d = sql.charAt(i);
+                    if (d == '"' || d == '`') {
+                        i = skipQuoted(sql, i, d);
+                    } else if (d == '[') {
+                        i = skipQuoted(sql, i, ']');
+                    } else if (Character.isLetterOrDigit(d) || d == '_' || d == '$' || d == '.') {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                tokens.add(sql.substring(start, i));
+            } else if (Character.isDigit(c)) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+                tokens.add("0");
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int skipQuoted(@Nonnull String sql, int start, char close) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == close) {
+                // doubled quotes escape themselves
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == close && close != ']') {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+}
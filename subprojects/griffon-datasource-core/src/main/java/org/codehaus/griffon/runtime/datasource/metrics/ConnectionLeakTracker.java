@@ -0,0 +1,389 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.metrics;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.datasource.events.DataSourceConnectionLeakEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Keeps track of a sample of borrowed connections and reports those held for longer than a threshold.
+ * <p>
+ * Capturing the borrowing stack is what makes leak detection expensive, thus only one in {@code sampleRate}
+ * borrows is tracked, or every borrow while the pool is under pressure. Leaks are aggregated by call site, the
+ * first frame of the borrowing stack outside of this plugin, its connection pool, the JDK and the Groovy runtime.
+ * Only the {@code capacity} most frequent call sites are retained.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConnectionLeakTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionLeakTracker.class);
+    public static final int DEFAULT_SAMPLE_RATE = 100;
+    public static final int DEFAULT_CAPACITY = 10;
+
+    private static final long MIN_SWEEP_INTERVAL = 50L;
+    private static final int MAX_STACK_DEPTH = 20;
+    private static final String TRACKING_DATASOURCE = "org.codehaus.griffon.runtime.datasource.LeakTrackingDataSource";
+    private static final String[] INTERNAL_PACKAGES = {
+        "org.codehaus.griffon.runtime.datasource.", "com.zaxxer.hikari.",
+        "java.", "javax.", "jdk.", "sun.", "com.sun.", "groovy.", "org.codehaus.groovy."
+    };
+
+    private final String dataSourceName;
+    private final int capacity;
+    private final BooleanSupplier pressure;
+    private final Consumer<DataSourceConnectionLeakEvent> listener;
+    private final Set<Borrow> borrows = ConcurrentHashMap.newKeySet();
+    private final Map<String, LeakSite> leakSites = new HashMap<>();
+    private final LongAdder sampledBorrows = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private volatile long thresholdNanos;
+    private volatile int sampleRate;
+    private ScheduledFuture<?> sweeper;
+
+    /**
+     * @param pressure tells whether the pool is under pressure, in which case every borrow is tracked. May be {@code null}.
+     */
+    public ConnectionLeakTracker(@Nonnull String dataSourceName, long thresholdMillis, int sampleRate, int capacity,
+                                 @Nullable BooleanSupplier pressure, @Nonnull Consumer<DataSourceConnectionLeakEvent> listener) {
+        this.dataSourceName = requireNonBlank(dataSourceName, "Argument 'dataSourceName' must not be blank");
+        this.capacity = Math.max(1, capacity);
+        this.pressure = pressure;
+        this.listener = requireNonNull(listener, "Argument 'listener' must not be null");
+        setThreshold(thresholdMillis);
+        setSampleRate(sampleRate);
+    }
+
+    /**
+     * Returns the threshold in milliseconds, {@code 0} if tracking is disabled.
+     */
+    public long getThreshold() {
+        return thresholdNanos == Long.MAX_VALUE ? 0L : NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * Sets the threshold in milliseconds. A value lower than {@code 1} disables tracking.
+     */
+    public void setThreshold(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis < 1 ? Long.MAX_VALUE : MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Tracks one in {@code sampleRate} borrows on average. A value lower than {@code 2} tracks every borrow.
+     */
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    public long getSampledBorrows() {
+        return sampledBorrows.sum();
+    }
+
+    public long getLeaks() {
+        return leaks.sum();
+    }
+
+    public int getTrackedConnections() {
+        return borrows.size();
+    }
+
+    /**
+     * Decides whether the connection about to be borrowed should be tracked.
+     */
+    public boolean sample() {
+        if (thresholdNanos == Long.MAX_VALUE) {
+            return false;
+        }
+        int rate = sampleRate;
+        return rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0 || (pressure != null && pressure.getAsBoolean());
+    }
+
+    /**
+     * Starts tracking a borrowed connection, capturing the stack of the current thread.
+     */
+    @Nonnull
+    public Borrow borrowed(@Nonnull Connection connection) {
+        requireNonNull(connection, "Argument 'connection' must not be null");
+        sampledBorrows.increment();
+        Borrow borrow = new Borrow(connection);
+        borrows.add(borrow);
+        return borrow;
+    }
+
+    public void returned(@Nonnull Borrow borrow) {
+        borrows.remove(borrow);
+    }
+
+    /**
+     * Reports tracked connections held for longer than the threshold. Each connection is reported once.
+     */
+    public void sweep() {
+        long threshold = thresholdNanos;
+        long now = System.nanoTime();
+        for (Iterator<Borrow> it = borrows.iterator(); it.hasNext(); ) {
+            Borrow borrow = it.next();
+            if (isClosed(borrow.connection)) {
+                // closed behind our back, e.g. aborted by the pool
+                it.remove();
+            } else if (!borrow.reported && now - borrow.start >= threshold) {
+                borrow.reported = true;
+                report(borrow, NANOSECONDS.toMillis(now - borrow.start));
+            }
+        }
+    }
+
+    public synchronized void start(@Nonnull ScheduledExecutorService scheduler) {
+        requireNonNull(scheduler, "Argument 'scheduler' must not be null");
+        if (sweeper == null) {
+            long threshold = getThreshold();
+            long interval = threshold > 0 ? Math.max(MIN_SWEEP_INTERVAL, threshold / 2) : 1000L;
+            sweeper = scheduler.scheduleWithFixedDelay(this::sweepSafely, interval, interval, MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.cancel(false);
+            sweeper = null;
+        }
+        borrows.clear();
+    }
+
+    /**
+     * Returns the retained call sites, most frequent first.
+     */
+    @Nonnull
+    public List<LeakSite> getLeakSites() {
+        List<LeakSite> snapshot = new ArrayList<>();
+        synchronized (leakSites) {
+            for (LeakSite leakSite : leakSites.values()) {
+                snapshot.add(leakSite.copy());
+            }
+        }
+        snapshot.sort(Comparator.comparingLong(LeakSite::getCount).reversed());
+        return snapshot;
+    }
+
+    public void reset() {
+        synchronized (leakSites) {
+            leakSites.clear();
+        }
+        sampledBorrows.reset();
+        leaks.reset();
+    }
+
+    private void sweepSafely() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not look for leaked connections of dataSource '{}'", dataSourceName, e);
+        }
+    }
+
+    private void report(@Nonnull Borrow borrow, long heldTime) {
+        StackTraceElement[] stackTrace = trim(borrow.stack.getStackTrace());
+        String callSite = callSiteOf(stackTrace);
+        leaks.increment();
+        synchronized (leakSites) {
+            LeakSite leakSite = leakSites.get(callSite);
+            if (leakSite == null) {
+                makeRoom();
+                leakSite = new LeakSite(callSite, stackTraceOf(stackTrace));
+                leakSites.put(callSite, leakSite);
+            }
+            leakSite.record(heldTime);
+        }
+
+        listener.accept(DataSourceConnectionLeakEvent.of(dataSourceName, callSite, stackTrace, heldTime, getThreshold()));
+    }
+
+    private void makeRoom() {
+        if (leakSites.size() < capacity) {
+            return;
+        }
+
+        // discard the least frequent call site, the oldest one on ties
+        LeakSite rarest = null;
+        for (LeakSite leakSite : leakSites.values()) {
+            if (rarest == null || leakSite.count < rarest.count || (leakSite.count == rarest.count && leakSite.lastSeen < rarest.lastSeen)) {
+                rarest = leakSite;
+            }
+        }
+        leakSites.remove(rarest.callSite);
+    }
+
+    private static boolean isClosed(@Nonnull Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Removes the frames of the tracking machinery, leaving the call to {@code getConnection()} on top.
+     */
+    @Nonnull
+    private static StackTraceElement[] trim(@Nonnull StackTraceElement[] stackTrace) {
+        int start = 0;
+        while (start < stackTrace.length && stackTrace[start].getClassName().startsWith(ConnectionLeakTracker.class.getName())) {
+            start++;
+        }
+        // LeakTrackingDataSource.track and getConnection
+        while (start < stackTrace.length && stackTrace[start].getClassName().equals(TRACKING_DATASOURCE) && !"getConnection".equals(stackTrace[start].getMethodName())) {
+            start++;
+        }
+        return Arrays.copyOfRange(stackTrace, start, stackTrace.length);
+    }
+
+    @Nonnull
+    private static String callSiteOf(@Nonnull StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            if (!isInternal(element.getClassName())) {
+                return format(element);
+            }
+        }
+        return stackTrace.length > 0 ? format(stackTrace[stackTrace.length - 1]) : "unknown";
+    }
+
+    private static boolean isInternal(@Nonnull String className) {
+        for (String prefix : INTERNAL_PACKAGES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private static String format(@Nonnull StackTraceElement element) {
+        String location = element.getFileName() != null && element.getLineNumber() >= 0
+            ? element.getFileName() + ":" + element.getLineNumber() : "Unknown Source";
+        return element.getClassName() + "." + element.getMethodName() + "(" + location + ")";
+    }
+
+    @Nonnull
+    private static String stackTraceOf(@Nonnull StackTraceElement[] stackTrace) {
+        StringBuilder b = new StringBuilder();
+        int depth = Math.min(stackTrace.length, MAX_STACK_DEPTH);
+        for (int i = 0; i < depth; i++) {
+            b.append("\tat ").append(format(stackTrace[i])).append('\n');
+        }
+        if (stackTrace.length > depth) {
+            b.append("\t... ").append(stackTrace.length - depth).append(" more\n");
+        }
+        return b.toString();
+    }
+
+    /**
+     * A tracked connection.
+     */
+    public static final class Borrow {
+        private final Connection connection;
+        private final long start = System.nanoTime();
+        // stack frames are only resolved when the connection is reported
+        private final Throwable stack = new Throwable();
+        private volatile boolean reported;
+
+        private Borrow(@Nonnull Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    public static final class LeakSite {
+        private final String callSite;
+        private final String stackTrace;
+        private long count;
+        private long maxHeldTime;
+        private long lastSeen;
+
+        private LeakSite(@Nonnull String callSite, @Nonnull String stackTrace) {
+            this.callSite = callSite;
+            this.stackTrace = stackTrace;
+        }
+
+        private void record(long heldTime) {
+            count++;
+            maxHeldTime = Math.max(maxHeldTime, heldTime);
+            lastSeen = System.currentTimeMillis();
+        }
+
+        private LeakSite copy() {
+            LeakSite copy = new LeakSite(callSite, stackTrace);
+            copy.count = count;
+            copy.maxHeldTime = maxHeldTime;
+            copy.lastSeen = lastSeen;
+            return copy;
+        }
+
+        @Nonnull
+        public String getCallSite() {
+            return callSite;
+        }
+
+        /**
+         * Stack of the first reported borrow from this call site.
+         */
+        @Nonnull
+        public String getStackTrace() {
+            return stackTrace;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxHeldTime() {
+            return maxHeldTime;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import griffon.annotations.core.Nonnull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Collects connection acquire, usage and creation times of a Hikari pool. All times are recorded in microseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+    private final LatencyHistogram acquireTime = new LatencyHistogram();
+    private final LatencyHistogram usageTime = new LatencyHistogram();
+    private final LatencyHistogram creationTime = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return new Tracker();
+    }
+
+    @Nonnull
+    public LatencyHistogram getAcquireTime() {
+        return acquireTime;
+    }
+
+    @Nonnull
+    public LatencyHistogram getUsageTime() {
+        return usageTime;
+    }
+
+    @Nonnull
+    public LatencyHistogram getCreationTime() {
+        return creationTime;
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public void reset() {
+        acquireTime.reset();
+        usageTime.reset();
+        creationTime.reset();
+        timeouts.reset();
+    }
+
+    private final class Tracker implements IMetricsTracker {
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            creationTime.record(MILLISECONDS.toMicros(connectionCreatedMillis));
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquireTime.record(NANOSECONDS.toMicros(elapsedAcquiredNanos));
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usageTime.record(MILLISECONDS.toMicros(elapsedBorrowedMillis));
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+    }
+}
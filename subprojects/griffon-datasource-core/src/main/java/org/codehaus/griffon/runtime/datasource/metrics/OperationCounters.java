@@ -0,0 +1,120 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.metrics;
+
+import griffon.annotations.core.Nonnull;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the callbacks executed against a dataSource. Counters are striped {@code LongAdder}s, thus recording
+ * does not contend between threads; reads sum the stripes and are only eventually consistent.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class OperationCounters {
+    private static final String UNKNOWN_SQL_STATE = "unknown";
+
+    private final LongAdder dataSourceCallbacks = new LongAdder();
+    private final LongAdder connectionCallbacks = new LongAdder();
+    private final LongAdder inFlightCallbacks = new LongAdder();
+    private final LongAdder connectionHoldTime = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> errorsBySqlStateClass = new ConcurrentHashMap<>();
+
+    public void dataSourceCallbackStarted() {
+        dataSourceCallbacks.increment();
+        inFlightCallbacks.increment();
+    }
+
+    public void connectionCallbackStarted() {
+        connectionCallbacks.increment();
+        inFlightCallbacks.increment();
+    }
+
+    public void callbackFinished() {
+        inFlightCallbacks.decrement();
+    }
+
+    public void recordConnectionHoldTime(long nanos) {
+        connectionHoldTime.add(nanos);
+    }
+
+    /**
+     * Records a failure by the class of its SQLState, i.e. its first two characters.
+     */
+    public void recordError(@Nonnull SQLException e) {
+        errors.increment();
+        String sqlState = e.getSQLState();
+        String sqlStateClass = sqlState != null && sqlState.length() >= 2 ? sqlState.substring(0, 2) : UNKNOWN_SQL_STATE;
+        LongAdder counter = errorsBySqlStateClass.get(sqlStateClass);
+        if (counter == null) {
+            counter = errorsBySqlStateClass.computeIfAbsent(sqlStateClass, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    public long getDataSourceCallbacks() {
+        return dataSourceCallbacks.sum();
+    }
+
+    public long getConnectionCallbacks() {
+        return connectionCallbacks.sum();
+    }
+
+    public long getInFlightCallbacks() {
+        return inFlightCallbacks.sum();
+    }
+
+    /**
+     * Cumulative time connections were held by callbacks, in nanoseconds.
+     */
+    public long getConnectionHoldTime() {
+        return connectionHoldTime.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Nonnull
+    public Map<String, Long> getErrorsBySqlStateClass() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : errorsBySqlStateClass.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Resets every counter but the number of callbacks in flight.
+     */
+    public void reset() {
+        dataSourceCallbacks.reset();
+        connectionCallbacks.reset();
+        connectionHoldTime.reset();
+        errors.reset();
+        errorsBySqlStateClass.clear();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.metrics;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.datasource.events.DataSourceSlowCallbackEvent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Keeps track of callbacks that hold on to a dataSource for longer than a threshold.
+ * <p>
+ * Call sites are identified by the callback's class, which is unique per lambda expression or closure.
+ * Only the slowest {@code capacity} call sites are retained. Callbacks faster than the threshold cost a
+ * single comparison.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SlowCallbackTracker {
+    public static final int DEFAULT_CAPACITY = 10;
+
+    private final String dataSourceName;
+    private final int capacity;
+    private final Consumer<DataSourceSlowCallbackEvent> listener;
+    private final Map<String, CallSite> callSites = new HashMap<>();
+    private final LongAdder slowCallbacks = new LongAdder();
+    private volatile long thresholdNanos;
+
+    public SlowCallbackTracker(@Nonnull String dataSourceName, long thresholdMillis, int capacity, @Nonnull Consumer<DataSourceSlowCallbackEvent> listener) {
+        this.dataSourceName = requireNonBlank(dataSourceName, "Argument 'dataSourceName' must not be blank");
+        this.capacity = Math.max(1, capacity);
+        this.listener = requireNonNull(listener, "Argument 'listener' must not be null");
+        setThreshold(thresholdMillis);
+    }
+
+    /**
+     * Returns the threshold in milliseconds, {@code 0} if tracking is disabled.
+     */
+    public long getThreshold() {
+        return thresholdNanos == Long.MAX_VALUE ? 0L : NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * Sets the threshold in milliseconds. A value lower than {@code 1} disables tracking.
+     */
+    public void setThreshold(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis < 1 ? Long.MAX_VALUE : MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    public long getSlowCallbacks() {
+        return slowCallbacks.sum();
+    }
+
+    /**
+     * Records the time spent by a callback.
+     *
+     * @param callback the callback that was executed
+     * @param elapsed  time spent by the callback, in nanoseconds
+     */
+    public void record(@Nonnull Object callback, long elapsed) {
+        if (elapsed < thresholdNanos) {
+            return;
+        }
+
+        slowCallbacks.increment();
+        long duration = NANOSECONDS.toMillis(elapsed);
+        Class<?> callbackClass = callback.getClass();
+        synchronized (callSites) {
+            CallSite callSite = callSites.get(callbackClass.getName());
+            if (callSite == null && admit(duration)) {
+                callSite = new CallSite(callbackClass.getName());
+                callSites.put(callSite.callbackClass, callSite);
+            }
+            if (callSite != null) {
+                callSite.record(duration);
+            }
+        }
+
+        listener.accept(DataSourceSlowCallbackEvent.of(dataSourceName, callbackClass, duration, getThreshold()));
+    }
+
+    private boolean admit(long duration) {
+        if (callSites.size() < capacity) {
+            return true;
+        }
+
+        // make room by discarding the call site with the lowest max time, if this one is slower
+        CallSite fastest = null;
+        for (CallSite callSite : callSites.values()) {
+            if (fastest == null || callSite.maxTime < fastest.maxTime) {
+                fastest = callSite;
+            }
+        }
+        if (fastest.maxTime >= duration) {
+            return false;
+        }
+        callSites.remove(fastest.callbackClass);
+        return true;
+    }
+
+    /**
+     * Returns the retained call sites, slowest first.
+     */
+    @Nonnull
+    public List<CallSite> getSlowest() {
+        List<CallSite> snapshot = new ArrayList<>();
+        synchronized (callSites) {
+            for (CallSite callSite : callSites.values()) {
+                snapshot.add(callSite.copy());
+            }
+        }
+        snapshot.sort(Comparator.comparingLong(CallSite::getMaxTime).reversed());
+        return snapshot;
+    }
+
+    public void reset() {
+        synchronized (callSites) {
+            callSites.clear();
+        }
+        slowCallbacks.reset();
+    }
+
+    public static final class CallSite {
+        private final String callbackClass;
+        private long count;
+        private long maxTime;
+        private long totalTime;
+        private long lastSeen;
+
+        private CallSite(@Nonnull String callbackClass) {
+            this.callbackClass = callbackClass;
+        }
+
+        private void record(long duration) {
+            count++;
+            totalTime += duration;
+            maxTime = Math.max(maxTime, duration);
+            lastSeen = System.currentTimeMillis();
+        }
+
+        private CallSite copy() {
+            CallSite copy = new CallSite(callbackClass);
+            copy.count = count;
+            copy.maxTime = maxTime;
+            copy.totalTime = totalTime;
+            copy.lastSeen = lastSeen;
+            return copy;
+        }
+
+        @Nonnull
+        public String getCallbackClass() {
+            return callbackClass;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+    }
+}
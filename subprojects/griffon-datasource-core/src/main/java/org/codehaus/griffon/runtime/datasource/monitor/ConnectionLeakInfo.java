@@ -0,0 +1,63 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Aggregated leaks (times in milliseconds) of a call site that borrows connections.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConnectionLeakInfo {
+    private final String callSite;
+    private final String stackTrace;
+    private final long count;
+    private final long maxHeldTime;
+    private final long lastSeen;
+
+    @ConstructorProperties({"callSite", "stackTrace", "count", "maxHeldTime", "lastSeen"})
+    public ConnectionLeakInfo(String callSite, String stackTrace, long count, long maxHeldTime, long lastSeen) {
+        this.callSite = callSite;
+        this.stackTrace = stackTrace;
+        this.count = count;
+        this.maxHeldTime = maxHeldTime;
+        this.lastSeen = lastSeen;
+    }
+
+    public String getCallSite() {
+        return callSite;
+    }
+
+    public String getStackTrace() {
+        return stackTrace;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxHeldTime() {
+        return maxHeldTime;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.datasource.metrics.ConnectionLeakTracker;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConnectionLeakMonitor extends AbstractMBeanRegistration implements ConnectionLeakMonitorMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionLeakMonitor.class);
+    private final String name;
+    private ConnectionLeakTracker delegate;
+
+    public ConnectionLeakMonitor(@Nonnull Metadata metadata, @Nonnull ConnectionLeakTracker delegate, @Nonnull String name) {
+        super(metadata);
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.name = name;
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.datasource:type=ConnectionLeaks,application=" + metadata.getApplicationName() + ",name=" + this.name);
+    }
+
+    @Override
+    public void postDeregister() {
+        delegate = null;
+        super.postDeregister();
+    }
+
+    @Override
+    public long getThreshold() {
+        return delegate.getThreshold();
+    }
+
+    @Override
+    public void setThreshold(long threshold) {
+        LOG.trace("Setting connection leak threshold of {} to {}ms", name, threshold);
+        delegate.setThreshold(threshold);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return delegate.getSampleRate();
+    }
+
+    @Override
+    public void setSampleRate(int sampleRate) {
+        LOG.trace("Setting connection leak sample rate of {} to {}", name, sampleRate);
+        delegate.setSampleRate(sampleRate);
+    }
+
+    @Override
+    public long getSampledBorrows() {
+        return delegate.getSampledBorrows();
+    }
+
+    @Override
+    public int getTrackedConnections() {
+        return delegate.getTrackedConnections();
+    }
+
+    @Override
+    public long getLeaks() {
+        return delegate.getLeaks();
+    }
+
+    @Override
+    public ConnectionLeakInfo[] getLeakSites() {
+        List<ConnectionLeakTracker.LeakSite> leakSites = delegate.getLeakSites();
+        ConnectionLeakInfo[] infos = new ConnectionLeakInfo[leakSites.size()];
+        for (int i = 0; i < infos.length; i++) {
+            ConnectionLeakTracker.LeakSite leakSite = leakSites.get(i);
+            infos[i] = new ConnectionLeakInfo(leakSite.getCallSite(), leakSite.getStackTrace(), leakSite.getCount(), leakSite.getMaxHeldTime(), leakSite.getLastSeen());
+        }
+        return infos;
+    }
+
+    @Override
+    public void reset() {
+        LOG.trace("Resetting connection leaks of {}", name);
+        delegate.reset();
+    }
+}
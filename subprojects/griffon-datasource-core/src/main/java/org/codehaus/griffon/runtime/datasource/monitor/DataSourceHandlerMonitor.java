@@ -0,0 +1,79 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import griffon.plugins.datasource.DataSourceFactory;
+import griffon.plugins.datasource.DataSourceHandler;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static griffon.util.GriffonNameUtils.isNotBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DataSourceHandlerMonitor extends AbstractMBeanRegistration implements DataSourceHandlerMonitorMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(DataSourceHandlerMonitor.class);
+    private DataSourceHandler dataSourceHandler;
+    private DataSourceFactory dataSourceFactory;
+
+    public DataSourceHandlerMonitor(@Nonnull Metadata metadata, @Nonnull DataSourceHandler dataSourceHandler, @Nonnull DataSourceFactory dataSourceFactory) {
+        super(metadata);
+        this.dataSourceHandler = requireNonNull(dataSourceHandler, "Argument 'dataSourceHandler' must not be null");
+        this.dataSourceFactory = requireNonNull(dataSourceFactory, "Argument 'dataSourceFactory' must not be null");
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.datasource:type=DataSourceHandler,application=" + metadata.getApplicationName());
+    }
+
+    @Override
+    public void postDeregister() {
+        dataSourceHandler = null;
+        dataSourceFactory = null;
+        super.postDeregister();
+    }
+
+    @Override
+    public void swapDataSource(String dataSourceName, String url, String username, String password) {
+        Map<String, Object> configuration = new LinkedHashMap<>(dataSourceFactory.getConfigurationFor(dataSourceName));
+        if (isNotBlank(url)) {
+            configuration.put("url", url);
+        }
+        if (isNotBlank(username)) {
+            configuration.put("username", username);
+        }
+        if (isNotBlank(password)) {
+            configuration.put("password", password);
+        }
+
+        LOG.trace("Swapping dataSource {}", dataSourceName);
+        dataSourceHandler.swapDataSource(dataSourceName, configuration);
+    }
+}
@@ -17,9 +17,11 @@
  */
 package org.codehaus.griffon.runtime.datasource.monitor;
 
+import com.zaxxer.hikari.HikariConfigMXBean;
 import com.zaxxer.hikari.HikariPoolMXBean;
 import griffon.annotations.core.Nonnull;
 import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.datasource.metrics.ConnectionPoolMetrics;
 import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,17 +32,36 @@ import javax.management.ObjectName;
 import static java.util.Objects.requireNonNull;
 
 /**
+ * Exposes the state of a connection pool. Pool sizes and timeouts may be changed while the application is running;
+ * new values are checked against the limits HikariCP enforces at startup before being applied, and every change
+ * is reported to the {@link ReconfigurationListener}.
+ *
  * @author Andres Almiray
  * @since 2.0.0
  */
 public class HikariPoolMonitor extends AbstractMBeanRegistration implements HikariPoolMonitorMXBean {
     private static final Logger LOG = LoggerFactory.getLogger(HikariPoolMonitor.class);
+    private static final long MIN_CONNECTION_TIMEOUT = 250L;
+    private static final long MIN_IDLE_TIMEOUT = 10_000L;
+    private static final long MIN_MAX_LIFETIME = 30_000L;
+    private static final long MIN_LEAK_DETECTION_THRESHOLD = 2_000L;
+
     private final String name;
     private HikariPoolMXBean delegate;
+    private HikariConfigMXBean config;
+    private ConnectionPoolMetrics metrics;
+    private ReconfigurationListener listener;
+
+    public HikariPoolMonitor(@Nonnull Metadata metadata, @Nonnull HikariPoolMXBean delegate, @Nonnull HikariConfigMXBean config, @Nonnull String name) {
+        this(metadata, delegate, config, new ConnectionPoolMetrics(), name, (dataSourceName, property, oldValue, newValue) -> {});
+    }
 
-    public HikariPoolMonitor(@Nonnull Metadata metadata, @Nonnull HikariPoolMXBean delegate, @Nonnull String name) {
+    public HikariPoolMonitor(@Nonnull Metadata metadata, @Nonnull HikariPoolMXBean delegate, @Nonnull HikariConfigMXBean config, @Nonnull ConnectionPoolMetrics metrics, @Nonnull String name, @Nonnull ReconfigurationListener listener) {
         super(metadata);
         this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.config = requireNonNull(config, "Argument 'config' must not be null");
+        this.metrics = requireNonNull(metrics, "Argument 'metrics' must not be null");
+        this.listener = requireNonNull(listener, "Argument 'listener' must not be null");
         this.name = name;
     }
 
@@ -52,6 +73,9 @@ public class HikariPoolMonitor extends AbstractMBeanRegistration implements Hika
     @Override
     public void postDeregister() {
         delegate = null;
+        config = null;
+        metrics = null;
+        listener = null;
         super.postDeregister();
     }
 
@@ -75,6 +99,116 @@ public class HikariPoolMonitor extends AbstractMBeanRegistration implements Hika
         return delegate.getThreadsAwaitingConnection();
     }
 
+    @Override
+    public LatencySnapshot getConnectionAcquireTime() {
+        return LatencySnapshot.of(metrics.getAcquireTime());
+    }
+
+    @Override
+    public LatencySnapshot getConnectionUsageTime() {
+        return LatencySnapshot.of(metrics.getUsageTime());
+    }
+
+    @Override
+    public LatencySnapshot getConnectionCreationTime() {
+        return LatencySnapshot.of(metrics.getCreationTime());
+    }
+
+    @Override
+    public long getConnectionTimeouts() {
+        return metrics.getTimeouts();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return config.getMaximumPoolSize();
+    }
+
+    @Override
+    public synchronized void setMaximumPoolSize(int maximumPoolSize) {
+        check(maximumPoolSize >= 1, "maximumPoolSize", maximumPoolSize, "must be at least 1");
+        check(maximumPoolSize >= config.getMinimumIdle(), "maximumPoolSize", maximumPoolSize, "must not be lower than minimumIdle (" + config.getMinimumIdle() + ")");
+        long oldValue = config.getMaximumPoolSize();
+        config.setMaximumPoolSize(maximumPoolSize);
+        reconfigured("maximumPoolSize", oldValue, maximumPoolSize);
+    }
+
+    @Override
+    public int getMinimumIdle() {
+        return config.getMinimumIdle();
+    }
+
+    @Override
+    public synchronized void setMinimumIdle(int minimumIdle) {
+        check(minimumIdle >= 0, "minimumIdle", minimumIdle, "must not be negative");
+        check(minimumIdle <= config.getMaximumPoolSize(), "minimumIdle", minimumIdle, "must not be greater than maximumPoolSize (" + config.getMaximumPoolSize() + ")");
+        long oldValue = config.getMinimumIdle();
+        config.setMinimumIdle(minimumIdle);
+        reconfigured("minimumIdle", oldValue, minimumIdle);
+    }
+
+    @Override
+    public long getConnectionTimeout() {
+        return config.getConnectionTimeout();
+    }
+
+    @Override
+    public synchronized void setConnectionTimeout(long connectionTimeout) {
+        check(connectionTimeout >= MIN_CONNECTION_TIMEOUT, "connectionTimeout", connectionTimeout, "must be at least " + MIN_CONNECTION_TIMEOUT + "ms");
+        long oldValue = config.getConnectionTimeout();
+        config.setConnectionTimeout(connectionTimeout);
+        reconfigured("connectionTimeout", oldValue, connectionTimeout);
+    }
+
+    @Override
+    public long getIdleTimeout() {
+        return config.getIdleTimeout();
+    }
+
+    @Override
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        check(idleTimeout == 0 || idleTimeout >= MIN_IDLE_TIMEOUT, "idleTimeout", idleTimeout, "must be 0 or at least " + MIN_IDLE_TIMEOUT + "ms");
+        long oldValue = config.getIdleTimeout();
+        config.setIdleTimeout(idleTimeout);
+        reconfigured("idleTimeout", oldValue, idleTimeout);
+    }
+
+    @Override
+    public long getMaxLifetime() {
+        return config.getMaxLifetime();
+    }
+
+    @Override
+    public synchronized void setMaxLifetime(long maxLifetime) {
+        check(maxLifetime == 0 || maxLifetime >= MIN_MAX_LIFETIME, "maxLifetime", maxLifetime, "must be 0 or at least " + MIN_MAX_LIFETIME + "ms");
+        long leakDetectionThreshold = config.getLeakDetectionThreshold();
+        check(maxLifetime == 0 || leakDetectionThreshold < maxLifetime, "maxLifetime", maxLifetime, "must be greater than leakDetectionThreshold (" + leakDetectionThreshold + "ms)");
+        long oldValue = config.getMaxLifetime();
+        config.setMaxLifetime(maxLifetime);
+        reconfigured("maxLifetime", oldValue, maxLifetime);
+    }
+
+    @Override
+    public long getLeakDetectionThreshold() {
+        return config.getLeakDetectionThreshold();
+    }
+
+    @Override
+    public synchronized void setLeakDetectionThreshold(long leakDetectionThreshold) {
+        check(leakDetectionThreshold == 0 || leakDetectionThreshold >= MIN_LEAK_DETECTION_THRESHOLD, "leakDetectionThreshold", leakDetectionThreshold, "must be 0 or at least " + MIN_LEAK_DETECTION_THRESHOLD + "ms");
+        long maxLifetime = config.getMaxLifetime();
+        check(maxLifetime == 0 || leakDetectionThreshold < maxLifetime, "leakDetectionThreshold", leakDetectionThreshold, "must be lower than maxLifetime (" + maxLifetime + "ms)");
+        long oldValue = config.getLeakDetectionThreshold();
+        config.setLeakDetectionThreshold(leakDetectionThreshold);
+        reconfigured("leakDetectionThreshold", oldValue, leakDetectionThreshold);
+    }
+
+    @Override
+    public void resetMetrics() {
+        LOG.trace("Resetting metrics of the {} connection pool", name);
+        metrics.reset();
+    }
+
     @Override
     public void softEvictConnections() {
         LOG.trace("Evicting connections in the {} connection pool", name);
@@ -92,4 +226,26 @@ public class HikariPoolMonitor extends AbstractMBeanRegistration implements Hika
         LOG.trace("Resuming the {} connection pool", name);
         delegate.resumePool();
     }
+
+    private void check(boolean condition, @Nonnull String property, long value, @Nonnull String message) {
+        if (!condition) {
+            throw new IllegalArgumentException("Cannot set " + property + " of the " + name + " connection pool to " + value + ": value " + message);
+        }
+    }
+
+    private void reconfigured(@Nonnull String property, long oldValue, long newValue) {
+        if (oldValue == newValue) {
+            return;
+        }
+        LOG.info("Changed {} of the {} connection pool from {} to {}", property, name, oldValue, newValue);
+        listener.reconfigured(name, property, oldValue, newValue);
+    }
+
+    /**
+     * Notified after a pool property has been changed through this monitor.
+     */
+    @FunctionalInterface
+    public interface ReconfigurationListener {
+        void reconfigured(@Nonnull String dataSourceName, @Nonnull String property, long oldValue, long newValue);
+    }
 }
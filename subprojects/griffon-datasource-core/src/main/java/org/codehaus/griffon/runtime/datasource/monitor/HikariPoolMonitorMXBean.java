@@ -30,6 +30,61 @@ public interface HikariPoolMonitorMXBean {
 
     int getThreadsAwaitingConnection();
 
+    /**
+     * Time spent waiting for a connection, in microseconds.
+     */
+    LatencySnapshot getConnectionAcquireTime();
+
+    /**
+     * Time a connection was held before being returned to the pool, in microseconds.
+     */
+    LatencySnapshot getConnectionUsageTime();
+
+    /**
+     * Time spent creating physical connections, in microseconds.
+     */
+    LatencySnapshot getConnectionCreationTime();
+
+    long getConnectionTimeouts();
+
+    int getMaximumPoolSize();
+
+    void setMaximumPoolSize(int maximumPoolSize);
+
+    int getMinimumIdle();
+
+    void setMinimumIdle(int minimumIdle);
+
+    /**
+     * Maximum time to wait for a connection, in milliseconds.
+     */
+    long getConnectionTimeout();
+
+    void setConnectionTimeout(long connectionTimeout);
+
+    /**
+     * Time an idle connection may sit in the pool before being retired, in milliseconds. {@code 0} means never.
+     */
+    long getIdleTimeout();
+
+    void setIdleTimeout(long idleTimeout);
+
+    /**
+     * Maximum lifetime of a connection, in milliseconds. {@code 0} means unlimited.
+     */
+    long getMaxLifetime();
+
+    void setMaxLifetime(long maxLifetime);
+
+    /**
+     * Time a connection may be out of the pool before a possible leak is logged, in milliseconds. {@code 0} disables it.
+     */
+    long getLeakDetectionThreshold();
+
+    void setLeakDetectionThreshold(long leakDetectionThreshold);
+
+    void resetMetrics();
+
     void softEvictConnections();
 
     void suspendPool();
@@ -0,0 +1,83 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import griffon.annotations.core.Nonnull;
+import org.codehaus.griffon.runtime.datasource.metrics.LatencyHistogram;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Percentiles of a latency distribution, expressed in microseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class LatencySnapshot {
+    private final long count;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    @ConstructorProperties({"count", "p50", "p90", "p99", "p999", "max"})
+    public LatencySnapshot(long count, long p50, long p90, long p99, long p999, long max) {
+        this.count = count;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    @Nonnull
+    public static LatencySnapshot of(@Nonnull LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        return new LatencySnapshot(snapshot.getCount(),
+            snapshot.getValueAt(0.5d),
+            snapshot.getValueAt(0.9d),
+            snapshot.getValueAt(0.99d),
+            snapshot.getValueAt(0.999d),
+            snapshot.getMax());
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.datasource.metrics.OperationCounters;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class OperationMonitor extends AbstractMBeanRegistration implements OperationMonitorMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(OperationMonitor.class);
+    private final String name;
+    private OperationCounters delegate;
+
+    public OperationMonitor(@Nonnull Metadata metadata, @Nonnull OperationCounters delegate, @Nonnull String name) {
+        super(metadata);
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.name = name;
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.datasource:type=Operations,application=" + metadata.getApplicationName() + ",name=" + this.name);
+    }
+
+    @Override
+    public void postDeregister() {
+        delegate = null;
+        super.postDeregister();
+    }
+
+    @Override
+    public long getDataSourceCallbacks() {
+        return delegate.getDataSourceCallbacks();
+    }
+
+    @Override
+    public long getConnectionCallbacks() {
+        return delegate.getConnectionCallbacks();
+    }
+
+    @Override
+    public long getInFlightCallbacks() {
+        return delegate.getInFlightCallbacks();
+    }
+
+    @Override
+    public long getConnectionHoldTime() {
+        return NANOSECONDS.toMillis(delegate.getConnectionHoldTime());
+    }
+
+    @Override
+    public long getErrors() {
+        return delegate.getErrors();
+    }
+
+    @Override
+    public Map<String, Long> getErrorsBySqlStateClass() {
+        return delegate.getErrorsBySqlStateClass();
+    }
+
+    @Override
+    public void reset() {
+        LOG.trace("Resetting operation counters of {}", name);
+        delegate.reset();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import java.util.Map;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface OperationMonitorMXBean {
+    long getDataSourceCallbacks();
+
+    long getConnectionCallbacks();
+
+    long getInFlightCallbacks();
+
+    /**
+     * Cumulative time connections were held by callbacks, in milliseconds.
+     */
+    long getConnectionHoldTime();
+
+    long getErrors();
+
+    /**
+     * Failed callbacks keyed by SQLState class.
+     */
+    Map<String, Long> getErrorsBySqlStateClass();
+
+    void reset();
+}
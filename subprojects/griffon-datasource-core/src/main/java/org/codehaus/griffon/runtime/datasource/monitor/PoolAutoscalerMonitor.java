@@ -0,0 +1,103 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.datasource.PoolAutoscaler;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class PoolAutoscalerMonitor extends AbstractMBeanRegistration implements PoolAutoscalerMonitorMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(PoolAutoscalerMonitor.class);
+    private final String name;
+    private PoolAutoscaler delegate;
+
+    public PoolAutoscalerMonitor(@Nonnull Metadata metadata, @Nonnull PoolAutoscaler delegate, @Nonnull String name) {
+        super(metadata);
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.name = name;
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.datasource:type=PoolAutoscaler,application=" + metadata.getApplicationName() + ",name=" + this.name);
+    }
+
+    @Override
+    public void postDeregister() {
+        delegate = null;
+        super.postDeregister();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return delegate.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        LOG.trace("{} the autoscaler of the {} connection pool", enabled ? "Resuming" : "Pausing", name);
+        delegate.setEnabled(enabled);
+    }
+
+    @Override
+    public int getMinPoolSize() {
+        return delegate.getMinPoolSize();
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return delegate.getMaxPoolSize();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return delegate.getPoolSize();
+    }
+
+    @Override
+    public long getScaleUps() {
+        return delegate.getScaleUps();
+    }
+
+    @Override
+    public long getScaleDowns() {
+        return delegate.getScaleDowns();
+    }
+
+    @Override
+    public String getLastDecision() {
+        return delegate.getLastDecision();
+    }
+
+    @Override
+    public long getLastDecisionTime() {
+        return delegate.getLastDecisionTime();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface PoolAutoscalerMonitorMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    int getMinPoolSize();
+
+    int getMaxPoolSize();
+
+    int getPoolSize();
+
+    long getScaleUps();
+
+    long getScaleDowns();
+
+    String getLastDecision();
+
+    /**
+     * Time of the last scaling decision, in milliseconds since the epoch.
+     */
+    long getLastDecisionTime();
+}
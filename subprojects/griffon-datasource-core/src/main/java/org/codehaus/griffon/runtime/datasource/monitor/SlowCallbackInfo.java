@@ -0,0 +1,63 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Aggregated timings (in milliseconds) of a slow callback call site.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SlowCallbackInfo {
+    private final String callbackClass;
+    private final long count;
+    private final long maxTime;
+    private final long totalTime;
+    private final long lastSeen;
+
+    @ConstructorProperties({"callbackClass", "count", "maxTime", "totalTime", "lastSeen"})
+    public SlowCallbackInfo(String callbackClass, long count, long maxTime, long totalTime, long lastSeen) {
+        this.callbackClass = callbackClass;
+        this.count = count;
+        this.maxTime = maxTime;
+        this.totalTime = totalTime;
+        this.lastSeen = lastSeen;
+    }
+
+    public String getCallbackClass() {
+        return callbackClass;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+}
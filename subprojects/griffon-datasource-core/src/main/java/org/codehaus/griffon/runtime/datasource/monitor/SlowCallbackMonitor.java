@@ -0,0 +1,91 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.datasource.metrics.SlowCallbackTracker;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SlowCallbackMonitor extends AbstractMBeanRegistration implements SlowCallbackMonitorMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(SlowCallbackMonitor.class);
+    private final String name;
+    private SlowCallbackTracker delegate;
+
+    public SlowCallbackMonitor(@Nonnull Metadata metadata, @Nonnull SlowCallbackTracker delegate, @Nonnull String name) {
+        super(metadata);
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.name = name;
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.datasource:type=SlowCallbacks,application=" + metadata.getApplicationName() + ",name=" + this.name);
+    }
+
+    @Override
+    public void postDeregister() {
+        delegate = null;
+        super.postDeregister();
+    }
+
+    @Override
+    public long getThreshold() {
+        return delegate.getThreshold();
+    }
+
+    @Override
+    public void setThreshold(long threshold) {
+        LOG.trace("Setting slow callback threshold of {} to {}ms", name, threshold);
+        delegate.setThreshold(threshold);
+    }
+
+    @Override
+    public long getSlowCallbacks() {
+        return delegate.getSlowCallbacks();
+    }
+
+    @Override
+    public SlowCallbackInfo[] getSlowestCallbacks() {
+        List<SlowCallbackTracker.CallSite> callSites = delegate.getSlowest();
+        SlowCallbackInfo[] infos = new SlowCallbackInfo[callSites.size()];
+        for (int i = 0; i < infos.length; i++) {
+            SlowCallbackTracker.CallSite callSite = callSites.get(i);
+            infos[i] = new SlowCallbackInfo(callSite.getCallbackClass(), callSite.getCount(), callSite.getMaxTime(), callSite.getTotalTime(), callSite.getLastSeen());
+        }
+        return infos;
+    }
+
+    @Override
+    public void reset() {
+        LOG.trace("Resetting slow callbacks of {}", name);
+        delegate.reset();
+    }
+}
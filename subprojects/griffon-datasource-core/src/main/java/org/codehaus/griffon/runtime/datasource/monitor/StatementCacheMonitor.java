@@ -0,0 +1,95 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.datasource.StatementCachingDataSource;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class StatementCacheMonitor extends AbstractMBeanRegistration implements StatementCacheMonitorMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(StatementCacheMonitor.class);
+    private final String name;
+    private StatementCachingDataSource delegate;
+
+    public StatementCacheMonitor(@Nonnull Metadata metadata, @Nonnull StatementCachingDataSource delegate, @Nonnull String name) {
+        super(metadata);
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.name = name;
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.datasource:type=StatementCache,application=" + metadata.getApplicationName() + ",name=" + this.name);
+    }
+
+    @Override
+    public void postDeregister() {
+        delegate = null;
+        super.postDeregister();
+    }
+
+    @Override
+    public int getCacheSize() {
+        return delegate.getCacheSize();
+    }
+
+    @Override
+    public int getCachedStatements() {
+        return delegate.getCachedStatements();
+    }
+
+    @Override
+    public long getHits() {
+        return delegate.getHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return delegate.getMisses();
+    }
+
+    @Override
+    public long getEvictions() {
+        return delegate.getEvictions();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = delegate.getHits();
+        long total = hits + delegate.getMisses();
+        return total == 0 ? 0d : (double) hits / total;
+    }
+
+    @Override
+    public void resetStatistics() {
+        LOG.trace("Resetting statistics of the {} statement cache", name);
+        delegate.resetStatistics();
+    }
+}
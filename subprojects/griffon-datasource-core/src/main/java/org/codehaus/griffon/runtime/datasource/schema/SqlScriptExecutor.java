@@ -0,0 +1,179 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.schema;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Executes the statements of a {@code SqlScriptReader}, grouping them into JDBC batches when the
+ * driver supports batch updates. Statements that produce results are always executed on their own.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SqlScriptExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(SqlScriptExecutor.class);
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final String dataSourceName;
+    private final int batchSize;
+    private final boolean continueOnError;
+
+    private int executed;
+    private int failed;
+    private int batches;
+    private long slowestTime = -1;
+    private SqlStatement slowestStatement;
+
+    public SqlScriptExecutor(@Nonnull String dataSourceName, int batchSize, boolean continueOnError) {
+        this.dataSourceName = requireNonBlank(dataSourceName, "Argument 'dataSourceName' must not be blank");
+        this.batchSize = Math.max(1, batchSize);
+        this.continueOnError = continueOnError;
+    }
+
+    /**
+     * Executes all statements available in the given reader.
+     *
+     * @param connection the connection used to execute statements
+     * @param reader     the script to be executed
+     * @param source     the script's location, used for reporting
+     * @return the number of successfully executed statements
+     */
+    public int execute(@Nonnull Connection connection, @Nonnull SqlScriptReader reader, @Nonnull String source) throws SQLException, IOException {
+        requireNonNull(connection, "Argument 'connection' must not be null");
+        requireNonNull(reader, "Argument 'reader' must not be null");
+
+        boolean batching = batchSize > 1 && connection.getMetaData().supportsBatchUpdates();
+        List<SqlStatement> batch = new ArrayList<>(batchSize);
+        long start = System.nanoTime();
+
+        try (Statement statement = connection.createStatement()) {
+            SqlStatement sql;
+            while ((sql = reader.next()) != null) {
+                if (batching && !sql.isQuery()) {
+                    statement.addBatch(sql.getSql());
+                    batch.add(sql);
+                    if (batch.size() >= batchSize) {
+                        flush(statement, batch, source);
+                    }
+                } else {
+                    flush(statement, batch, source);
+                    executeStatement(statement, sql, source);
+                }
+            }
+            flush(statement, batch, source);
+        }
+
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+
+        long elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("Executed {} statement(s) in {} batch(es) from {} on '{}' in {}ms ({} failed)",
+            executed, batches, source, dataSourceName, elapsed, failed);
+        if (slowestStatement != null) {
+            LOG.debug("Slowest statement at line {} of {} took {}ms", slowestStatement.getLineNumber(), source, NANOSECONDS.toMillis(slowestTime));
+        }
+        return executed;
+    }
+
+    private void flush(@Nonnull Statement statement, @Nonnull List<SqlStatement> batch, @Nonnull String source) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        batches++;
+        long start = System.nanoTime();
+        try {
+            statement.executeBatch();
+            long elapsed = System.nanoTime() - start;
+            executed += batch.size();
+            // per statement times are averaged as drivers do not report them individually
+            long average = elapsed / batch.size();
+            for (SqlStatement sql : batch) {
+                record(sql, average, source);
+            }
+        } catch (BatchUpdateException e) {
+            statement.clearBatch();
+            int[] updateCounts = e.getUpdateCounts();
+            if (updateCounts == null || updateCounts.length < batch.size()) {
+                // the driver stopped at the first failure; resume from there one statement at a time
+                int resumeAt = updateCounts == null ? 0 : updateCounts.length;
+                executed += resumeAt;
+                for (int i = resumeAt; i < batch.size(); i++) {
+                    executeStatement(statement, batch.get(i), source);
+                }
+            } else {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                        handleFailure(batch.get(i), source, e);
+                    } else {
+                        executed++;
+                    }
+                }
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void executeStatement(@Nonnull Statement statement, @Nonnull SqlStatement sql, @Nonnull String source) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            statement.execute(sql.getSql());
+            executed++;
+            record(sql, System.nanoTime() - start, source);
+        } catch (SQLException e) {
+            handleFailure(sql, source, e);
+        }
+    }
+
+    private void record(@Nonnull SqlStatement sql, long time, @Nonnull String source) {
+        if (time > slowestTime) {
+            slowestTime = time;
+            slowestStatement = sql;
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Executed statement at line {} of {} in {}us", sql.getLineNumber(), source, NANOSECONDS.toMicros(time));
+        }
+    }
+
+    private void handleFailure(@Nonnull SqlStatement sql, @Nonnull String source, @Nonnull SQLException cause) throws SQLException {
+        failed++;
+        SQLException e = new SQLException("Statement at line " + sql.getLineNumber() + " of " + source + " failed: " + sql.getSql(),
+            cause.getSQLState(), cause.getErrorCode(), cause);
+        if (!continueOnError) {
+            throw e;
+        }
+        LOG.warn("DataSource[{}]: {}", dataSourceName, e.getMessage(), e);
+    }
+}
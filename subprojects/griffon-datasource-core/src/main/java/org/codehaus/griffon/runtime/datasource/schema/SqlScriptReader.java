@@ -0,0 +1,303 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.schema;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads statements from a SQL script one at a time, without loading the whole script in memory.
+ * <p>
+ * Delimiters found inside quoted literals, quoted identifiers, dollar quoted blocks and comments
+ * do not terminate a statement. Comments preceding a statement are discarded. The delimiter may be
+ * changed mid script with a {@code DELIMITER <token>} line.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SqlScriptReader implements Closeable {
+    public static final String DEFAULT_DELIMITER = ";";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String DELIMITER_DIRECTIVE = "DELIMITER";
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int line = 1;
+    private String delimiter;
+
+    public SqlScriptReader(@Nonnull ReadableByteChannel channel, @Nonnull Charset charset, @Nonnull String delimiter) {
+        requireNonNull(channel, "Argument 'channel' must not be null");
+        requireNonNull(charset, "Argument 'charset' must not be null");
+        this.delimiter = requireNonBlank(delimiter, "Argument 'delimiter' must not be blank").trim();
+        this.reader = Channels.newReader(channel, charset.newDecoder(), BUFFER_SIZE);
+    }
+
+    @Nonnull
+    public static SqlScriptReader of(@Nonnull URL url, @Nonnull Charset charset, @Nonnull String delimiter) throws IOException {
+        requireNonNull(url, "Argument 'url' must not be null");
+        ReadableByteChannel channel;
+        if ("file".equals(url.getProtocol())) {
+            try {
+                channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ);
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        } else {
+            channel = Channels.newChannel(url.openStream());
+        }
+        return new SqlScriptReader(channel, charset, delimiter);
+    }
+
+    @Nonnull
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * Reads the next statement, without its delimiter.
+     *
+     * @return the next statement or {@code null} if the end of the script has been reached.
+     */
+    @Nullable
+    public SqlStatement next() throws IOException {
+        StringBuilder sql = new StringBuilder();
+        int startLine = line;
+
+        for (int c = peek(0); c >= 0; c = peek(0)) {
+            if (sql.length() == 0) {
+                if (Character.isWhitespace(c)) {
+                    read();
+                    continue;
+                } else if (c == '-' && peek(1) == '-') {
+                    skipLineComment();
+                    continue;
+                } else if (c == '/' && peek(1) == '*') {
+                    copyBlockComment(null);
+                    continue;
+                } else if (isDelimiterDirective()) {
+                    readDelimiterDirective();
+                    continue;
+                }
+                startLine = line;
+            }
+
+            if (lookingAt(delimiter)) {
+                position += delimiter.length();
+                String text = sql.toString().trim();
+                if (!text.isEmpty()) {
+                    return new SqlStatement(text, startLine);
+                }
+                sql.setLength(0);
+                continue;
+            }
+
+            if (c == '\'' || c == '"' || c == '`') {
+                copyQuoted(sql, (char) c);
+            } else if (c == '-' && peek(1) == '-') {
+                copyLineComment(sql);
+            } else if (c == '/' && peek(1) == '*') {
+                copyBlockComment(sql);
+            } else if (c == '$' && copyDollarQuoted(sql)) {
+                // already copied
+            } else {
+                sql.append((char) read());
+            }
+        }
+
+        String text = sql.toString().trim();
+        return text.isEmpty() ? null : new SqlStatement(text, startLine);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        } else if (count > buffer.length) {
+            return false;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < count) {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private int peek(int offset) throws IOException {
+        return fill(offset + 1) ? buffer[position + offset] : -1;
+    }
+
+    private int read() throws IOException {
+        int c = peek(0);
+        if (c >= 0) {
+            position++;
+            if (c == '\n') {
+                line++;
+            }
+        }
+        return c;
+    }
+
+    private boolean lookingAt(@Nonnull String token) throws IOException {
+        if (!fill(token.length())) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (buffer[position + i] != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isDelimiterDirective() throws IOException {
+        int length = DELIMITER_DIRECTIVE.length();
+        if (!fill(length + 1)) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.toUpperCase(buffer[position + i]) != DELIMITER_DIRECTIVE.charAt(i)) {
+                return false;
+            }
+        }
+        char next = buffer[position + length];
+        return next == ' ' || next == '\t';
+    }
+
+    private void readDelimiterDirective() throws IOException {
+        position += DELIMITER_DIRECTIVE.length();
+        StringBuilder token = new StringBuilder();
+        for (int c = peek(0); c >= 0 && c != '\n' && c != '\r'; c = peek(0)) {
+            token.append((char) read());
+        }
+        String value = token.toString().trim();
+        if (!value.isEmpty()) {
+            delimiter = value;
+        }
+    }
+
+    private void skipLineComment() throws IOException {
+        for (int c = peek(0); c >= 0 && c != '\n'; c = peek(0)) {
+            read();
+        }
+    }
+
+    private void copyLineComment(@Nonnull StringBuilder sql) throws IOException {
+        for (int c = peek(0); c >= 0 && c != '\n'; c = peek(0)) {
+            sql.append((char) read());
+        }
+    }
+
+    private void copyBlockComment(@Nullable StringBuilder sql) throws IOException {
+        append(sql, read());
+        append(sql, read());
+        for (int c = read(); c >= 0; c = read()) {
+            append(sql, c);
+            if (c == '*' && peek(0) == '/') {
+                append(sql, read());
+                return;
+            }
+        }
+    }
+
+    private void copyQuoted(@Nonnull StringBuilder sql, char quote) throws IOException {
+        sql.append((char) read());
+        for (int c = read(); c >= 0; c = read()) {
+            sql.append((char) c);
+            if (c == quote) {
+                // a doubled quote is an escaped quote
+                if (peek(0) == quote) {
+                    sql.append((char) read());
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean copyDollarQuoted(@Nonnull StringBuilder sql) throws IOException {
+        // $tag$ ... $tag$ where tag is empty or an identifier not starting with a digit
+        int offset = 1;
+        int c = peek(offset);
+        if (c != '$') {
+            if (c < 0 || !Character.isJavaIdentifierStart(c) || c == '$') {
+                return false;
+            }
+            while ((c = peek(offset)) >= 0 && c != '$') {
+                if (!Character.isJavaIdentifierPart(c)) {
+                    return false;
+                }
+                offset++;
+            }
+            if (c < 0) {
+                return false;
+            }
+        }
+
+        StringBuilder tag = new StringBuilder();
+        for (int i = 0; i <= offset; i++) {
+            tag.append((char) read());
+        }
+        sql.append(tag);
+
+        String closingTag = tag.toString();
+        while (peek(0) >= 0) {
+            if (lookingAt(closingTag)) {
+                position += closingTag.length();
+                sql.append(closingTag);
+                return true;
+            }
+            sql.append((char) read());
+        }
+        return true;
+    }
+
+    private static void append(@Nullable StringBuilder sql, int c) {
+        if (sql != null && c >= 0) {
+            sql.append((char) c);
+        }
+    }
+}
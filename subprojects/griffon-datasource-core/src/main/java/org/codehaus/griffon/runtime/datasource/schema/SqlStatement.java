@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.schema;
+
+import griffon.annotations.core.Nonnull;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * A single statement read from a SQL script.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class SqlStatement {
+    private final String sql;
+    private final int lineNumber;
+
+    public SqlStatement(@Nonnull String sql, int lineNumber) {
+        this.sql = requireNonBlank(sql, "Argument 'sql' must not be blank");
+        this.lineNumber = lineNumber;
+    }
+
+    @Nonnull
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Line (1 based) in which this statement starts.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Whether this statement produces results and thus cannot take part in a JDBC batch.
+     */
+    public boolean isQuery() {
+        int end = 0;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+        switch (sql.substring(0, end).toUpperCase()) {
+            case "SELECT":
+            case "WITH":
+            case "VALUES":
+            case "SHOW":
+            case "EXPLAIN":
+            case "DESCRIBE":
+            case "CALL":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "line " + lineNumber + ": " + sql;
+    }
+}
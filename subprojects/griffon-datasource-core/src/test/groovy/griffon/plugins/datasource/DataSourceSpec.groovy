@@ -17,23 +17,61 @@
  */
 package griffon.plugins.datasource
 
+import com.zaxxer.hikari.HikariDataSource
+import com.zaxxer.hikari.HikariPoolMXBean
 import griffon.core.CallableWithArgs
 import griffon.core.GriffonApplication
 import griffon.plugins.datasource.events.DataSourceConnectEndEvent
 import griffon.plugins.datasource.events.DataSourceConnectStartEvent
+import griffon.plugins.datasource.events.DataSourceConnectionLeakEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectEndEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectStartEvent
+import griffon.plugins.datasource.events.DataSourcePoolClosedEvent
+import griffon.plugins.datasource.events.DataSourcePoolReconfiguredEvent
+import griffon.plugins.datasource.events.DataSourcePoolScaledEvent
+import griffon.plugins.datasource.events.DataSourceSlowCallbackEvent
+import griffon.plugins.datasource.events.DataSourceWarmupEvent
 import griffon.plugins.datasource.exceptions.RuntimeSQLException
 import griffon.test.core.GriffonUnitRule
 import groovy.sql.Sql
+import org.codehaus.griffon.runtime.datasource.DataSourceSettings
+import org.codehaus.griffon.runtime.datasource.DataSourceWarmup
+import org.codehaus.griffon.runtime.datasource.JMXAwareDataSource
+import org.codehaus.griffon.runtime.datasource.StatementCachingDataSource
+import org.codehaus.griffon.runtime.datasource.metrics.ConnectionPoolMetrics
+import org.codehaus.griffon.runtime.datasource.metrics.OperationCounters
 import org.junit.Rule
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
 
 import javax.application.event.EventHandler
 import javax.inject.Inject
+import javax.management.Attribute
+import javax.management.MBeanServer
+import javax.management.ObjectName
 import javax.sql.DataSource
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
 import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Statement
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.stream.Collectors
+import java.util.stream.Stream
 
 @Unroll
 class DataSourceSpec extends Specification {
@@ -50,8 +88,11 @@ class DataSourceSpec extends Specification {
     @Inject
     private GriffonApplication application
 
+    @Inject
+    private DataSourceFactory dataSourceFactory
+
     private class TestEventHandler {
-        List<String> events = []
+        List<String> events = [].asSynchronized()
 
         @EventHandler
         void handleDataSourceConnectStartEvent(DataSourceConnectStartEvent event) {
@@ -204,4 +245,974 @@ class DataSourceSpec extends Specification {
         then:
         thrown(RuntimeSQLException)
     }
+
+    void 'Concurrent first access to #name dataSource creates a single pool'() {
+        given:
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+        int threads = 32
+        int iterations = 100
+        CyclicBarrier barrier = new CyclicBarrier(threads)
+        ExecutorService executor = Executors.newFixedThreadPool(threads)
+        AtomicInteger executions = new AtomicInteger()
+        Set<DataSource> dataSources = Collections.newSetFromMap(new IdentityHashMap<DataSource, Boolean>()).asSynchronized()
+
+        when:
+        List<Future> futures = (1..threads).collect {
+            executor.submit({
+                barrier.await()
+                iterations.times {
+                    dataSourceHandler.withConnection(name) { String dataSourceName, DataSource dataSource, Connection connection ->
+                        dataSources << dataSource
+                        connection.createStatement().withCloseable { it.execute('SELECT 1') }
+                        executions.incrementAndGet()
+                    }
+                }
+            } as Callable)
+        }
+        futures*.get(60, TimeUnit.SECONDS)
+        executor.shutdown()
+
+        then:
+        executions.get() == threads * iterations
+        dataSources.size() == 1
+        testEventHandler.events.count { it == 'DataSourceConnectStartEvent' } == 1
+        testEventHandler.events.count { it == 'DataSourceConnectEndEvent' } == 1
+
+        where:
+        name       | _
+        'default'  | _
+        'internal' | _
+    }
+
+    void 'Prepared statements are reused across connection checkouts'() {
+        when:
+        StatementCachingDataSource cache = null
+        10.times { int i ->
+            dataSourceHandler.withConnection('cached') { String dataSourceName, DataSource dataSource, Connection connection ->
+                cache = dataSource.unwrap(StatementCachingDataSource)
+                connection.prepareStatement('SELECT ?').withCloseable { statement ->
+                    statement.setInt(1, i)
+                    statement.executeQuery().withCloseable { rs -> rs.next() }
+                }
+            }
+        }
+
+        then:
+        cache.cacheSize == 4
+        cache.misses == 1
+        cache.hits == 9
+        cache.cachedStatements == 1
+    }
+
+    void 'Statements cached for a connection retired by the pool are released'() {
+        given:
+        Closure<StatementCachingDataSource> select = {
+            dataSourceHandler.withConnection('cached') { String dataSourceName, DataSource dataSource, Connection connection ->
+                connection.prepareStatement('SELECT 1').withCloseable { statement ->
+                    statement.executeQuery().withCloseable { rs -> rs.next() }
+                }
+                dataSource.unwrap(StatementCachingDataSource)
+            }
+        }
+        StatementCachingDataSource cache = select()
+        select()
+
+        when:
+        dataSourceHandler.withDataSource('cached') { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(HikariDataSource).hikariPoolMXBean.softEvictConnections()
+        }
+        select()
+
+        then:
+        cache.misses == 2
+        cache.hits == 1
+        new PollingConditions(timeout: 5).eventually {
+            assert cache.cachedStatements == 1
+        }
+    }
+
+    void 'Connections broken while running a cached statement are evicted from the pool'() {
+        given:
+        dataSourceHandler.withConnection('cached') { String dataSourceName, DataSource dataSource, Connection connection ->
+            connection.createStatement().withCloseable { statement ->
+                statement.execute('CREATE ALIAS IF NOT EXISTS LINK_FAILURE FOR "griffon.plugins.datasource.DataSourceSpec.linkFailure"')
+            }
+        }
+
+        when:
+        Connection broken = null
+        dataSourceHandler.withConnection('cached') { String dataSourceName, DataSource dataSource, Connection connection ->
+            broken = connection.unwrap(Connection)
+            connection.prepareStatement('SELECT LINK_FAILURE()').withCloseable { statement ->
+                statement.executeQuery()
+            }
+        }
+
+        then:
+        RuntimeSQLException e = thrown(RuntimeSQLException)
+        e.cause.SQLState == '08S01'
+
+        when:
+        Connection replacement = dataSourceHandler.withConnection('cached') { String dataSourceName, DataSource dataSource, Connection connection ->
+            connection.unwrap(Connection)
+        }
+
+        then:
+        !replacement.is(broken)
+    }
+
+    static int linkFailure() throws SQLException {
+        throw new SQLException('Communication link failure', '08S01')
+    }
+
+    void 'Connection acquire and usage times are recorded'() {
+        when:
+        ConnectionPoolMetrics metrics = null
+        5.times {
+            dataSourceHandler.withConnection { String dataSourceName, DataSource dataSource, Connection connection ->
+                metrics = (ConnectionPoolMetrics) dataSource.unwrap(HikariDataSource).metricsTrackerFactory
+            }
+        }
+
+        then:
+        metrics.acquireTime.snapshot().count >= 5
+        metrics.usageTime.snapshot().count >= 4
+        metrics.timeouts == 0
+    }
+
+    void 'Slow callbacks are reported'() {
+        given:
+        LinkedBlockingQueue<DataSourceSlowCallbackEvent> events = new LinkedBlockingQueue<>()
+        application.eventRouter.subscribe(new Object() {
+            @EventHandler
+            void handleDataSourceSlowCallbackEvent(DataSourceSlowCallbackEvent event) {
+                events.offer(event)
+            }
+        })
+
+        when:
+        dataSourceHandler.withConnection('slow') { String dataSourceName, DataSource dataSource, Connection connection ->
+            true
+        }
+        dataSourceHandler.withConnection('slow') { String dataSourceName, DataSource dataSource, Connection connection ->
+            Thread.sleep(100)
+        }
+        DataSourceSlowCallbackEvent event = events.poll(5, TimeUnit.SECONDS)
+
+        then:
+        event.name == 'slow'
+        event.duration >= 100
+        event.threshold == 50
+        events.poll(100, TimeUnit.MILLISECONDS) == null
+    }
+
+    void 'Execute callbacks asynchronously on #name dataSource'() {
+        when:
+        String threadName = dataSourceHandler.withConnectionAsync(name) { String dataSourceName, DataSource dataSource, Connection connection ->
+            Thread.currentThread().name
+        }.get(5, TimeUnit.SECONDS)
+
+        then:
+        threadName.startsWith("datasource-${name}-")
+
+        where:
+        name << ['default', 'people', 'virtual']
+    }
+
+    void 'Asynchronous callbacks propagate RuntimeSQLException'() {
+        when:
+        dataSourceHandler.withDataSourceAsync { String dataSourceName, DataSource dataSource ->
+            throw new SQLException('boom')
+        }.get(5, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof RuntimeSQLException
+    }
+
+    void 'Routing dataSource sends writes to the primary and reads to replicas'() {
+        when:
+        String write = dataSourceHandler.withConnection('routed') { String dataSourceName, DataSource dataSource, Connection connection ->
+            connection.metaData.URL
+        }
+        List<String> reads = (1..4).collect {
+            dataSourceHandler.withConnection('routed', ReadOnly.connectionCallback { String dataSourceName, DataSource dataSource, Connection connection ->
+                connection.metaData.URL
+            })
+        }
+
+        then:
+        write.endsWith('-internal')
+        reads.every { it.endsWith('-replica1') || it.endsWith('-replica2') }
+    }
+
+    void 'Routing dataSource resolves replicas without running callbacks on them'() {
+        given:
+        List<OperationCounters> counters = ['internal', 'replica1', 'replica2'].collect { String name ->
+            dataSourceHandler.withDataSource(name) { String dataSourceName, DataSource dataSource ->
+                dataSource.unwrap(JMXAwareDataSource).operationCounters
+            }
+        }
+        List<Long> callbacks = counters*.dataSourceCallbacks
+
+        when:
+        10.times {
+            dataSourceHandler.withConnection('routed', ReadOnly.connectionCallback { String dataSourceName, DataSource dataSource, Connection connection ->
+                connection.metaData.URL
+            })
+        }
+
+        then:
+        counters*.dataSourceCallbacks == callbacks
+    }
+
+    void 'Closing a routing dataSource leaves the pool of its primary open'() {
+        given:
+        HikariDataSource primary = dataSourceHandler.withDataSource('internal') { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(HikariDataSource)
+        }
+        dataSourceHandler.withConnection('routed') { String dataSourceName, DataSource dataSource, Connection connection -> true }
+
+        when:
+        dataSourceHandler.closeDataSource('routed')
+        dataSourceHandler.update('internal', 'CREATE TABLE IF NOT EXISTS unrouted(id INT)', [])
+        int written = dataSourceHandler.update('internal', 'INSERT INTO unrouted (id) VALUES (?)', [1])
+
+        then:
+        !primary.closed
+        written == 1
+    }
+
+    void 'Nested withConnection calls exhaust a single connection pool'() {
+        when:
+        dataSourceHandler.withConnection('single') { String dataSourceName, DataSource dataSource, Connection outer ->
+            dataSourceHandler.withConnection('single') { String n, DataSource d, Connection inner -> true }
+        }
+
+        then:
+        thrown(RuntimeSQLException)
+    }
+
+    void 'Nested withConnection calls reuse the thread bound connection'() {
+        when:
+        boolean same = dataSourceHandler.withConnection('bound') { String dataSourceName, DataSource dataSource, Connection outer ->
+            boolean result = dataSourceHandler.withConnection('bound') { String n, DataSource d, Connection inner ->
+                inner.close()
+                inner.unwrap(Connection) == outer.unwrap(Connection)
+            }
+            result && !outer.closed
+        }
+        int active = dataSourceHandler.withDataSource('bound') { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(HikariDataSource).hikariPoolMXBean.activeConnections
+        }
+
+        then:
+        same
+        active == 0
+    }
+
+    void 'Nested transactions roll back to a savepoint'() {
+        given:
+        dataSourceHandler.withConnection('bound') { String dataSourceName, DataSource dataSource, Connection connection ->
+            new Sql(connection).execute('CREATE TABLE IF NOT EXISTS tx(id INT)')
+        }
+
+        when:
+        dataSourceHandler.withTransaction('bound') { String dataSourceName, DataSource dataSource, Connection connection ->
+            new Sql(connection).execute('INSERT INTO tx VALUES(1)')
+            try {
+                dataSourceHandler.withTransaction('bound') { String n, DataSource d, Connection c ->
+                    new Sql(c).execute('INSERT INTO tx VALUES(2)')
+                    throw new IllegalStateException()
+                }
+            } catch (IllegalStateException ignored) {
+                // expected
+            }
+        }
+        dataSourceHandler.withTransaction('bound') { String dataSourceName, DataSource dataSource, Connection connection ->
+            new Sql(connection).execute('INSERT INTO tx VALUES(3)')
+            throw new SQLException('boom')
+        }
+
+        then:
+        thrown(RuntimeSQLException)
+        dataSourceHandler.withConnection('bound') { String dataSourceName, DataSource dataSource, Connection connection ->
+            new Sql(connection).rows('SELECT id FROM tx').id
+        } == [1]
+    }
+
+    void 'Nested transactions keep the isolation level of the enclosing one'() {
+        when:
+        dataSourceHandler.withTransaction('bound') { String dataSourceName, DataSource dataSource, Connection connection ->
+            dataSourceHandler.withTransaction('bound', Connection.TRANSACTION_SERIALIZABLE, false) { String n, DataSource d, Connection c -> true }
+        }
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    void 'Writable transactions nested in read-only ones run on a connection of their own'() {
+        given:
+        dataSourceHandler.update('internal', 'CREATE TABLE IF NOT EXISTS audit(id INT)', [])
+
+        when:
+        String url = dataSourceHandler.withTransaction('routed', DataSourceHandler.ISOLATION_DEFAULT, true) { String dataSourceName, DataSource dataSource, Connection connection ->
+            dataSourceHandler.withTransaction('routed') { String n, DataSource d, Connection c ->
+                assert !c.autoCommit
+                new Sql(c).execute('INSERT INTO audit (id) VALUES (1)')
+                c.metaData.URL
+            }
+        }
+
+        then:
+        url.endsWith('-internal')
+        dataSourceHandler.query('internal', 'SELECT id FROM audit', [])*.get('id') == [1]
+    }
+
+    void 'Writable transactions nested in read-only ones on a plain dataSource run on a connection of their own'() {
+        given:
+        dataSourceHandler.update('internal', 'CREATE TABLE IF NOT EXISTS journal(id INT)', [])
+
+        when:
+        boolean shared = dataSourceHandler.withTransaction('internal', DataSourceHandler.ISOLATION_DEFAULT, true) { String dataSourceName, DataSource dataSource, Connection connection ->
+            dataSourceHandler.withTransaction('internal') { String n, DataSource d, Connection c ->
+                new Sql(c).execute('INSERT INTO journal (id) VALUES (1)')
+                c.unwrap(Connection).is(connection.unwrap(Connection))
+            }
+        }
+
+        then:
+        !shared
+        dataSourceHandler.query('internal', 'SELECT id FROM journal', [])*.get('id') == [1]
+    }
+
+    void 'Stream millions of rows in constant memory'() {
+        given:
+        long rows = 3_000_000
+        long baseline = 0
+        long peak = 0
+
+        when:
+        long count = 0
+        dataSourceHandler.stream('streaming', "SELECT X, 'row ' || X AS LABEL FROM SYSTEM_RANGE(1, ?)", [rows]).withCloseable { Stream<Row> stream ->
+            stream.forEach { Row row ->
+                count++
+                if (count == 100_000) {
+                    baseline = usedMemory()
+                } else if (count % 1_000_000 == 0) {
+                    peak = Math.max(peak, usedMemory())
+                }
+            }
+        }
+
+        then:
+        count == rows
+        peak - baseline < 32 * 1024 * 1024
+        activeConnections('streaming') == 0
+    }
+
+    void 'Closing a partially consumed stream releases its connection'() {
+        when:
+        List<Long> ids = dataSourceHandler.stream('streaming', 'SELECT X AS ID FROM SYSTEM_RANGE(1, 1000)', []).withCloseable { Stream<Row> stream ->
+            stream.limit(3).map { Row row -> row.get('id') }.collect(Collectors.toList())
+        }
+
+        then:
+        ids == [1L, 2L, 3L]
+        activeConnections('streaming') == 0
+    }
+
+    void 'Streams take part in the transaction bound to the current thread'() {
+        given:
+        dataSourceHandler.update('single', 'CREATE TABLE IF NOT EXISTS streamed(id INT)', [])
+
+        when:
+        List<Integer> ids = dataSourceHandler.withTransaction('single') { String dataSourceName, DataSource dataSource, Connection connection ->
+            new Sql(connection).execute('INSERT INTO streamed (id) VALUES (1)')
+            List<Integer> result = dataSourceHandler.stream('single', 'SELECT id FROM streamed', []).withCloseable { Stream<Row> stream ->
+                stream.map { Row row -> row.get('id') }.collect(Collectors.toList())
+            }
+            assert !connection.autoCommit
+            connection.rollback()
+            result
+        }
+
+        then:
+        ids == [1]
+        dataSourceHandler.query('single', 'SELECT id FROM streamed', []).empty
+        activeConnections('single') == 0
+    }
+
+    void 'Batch writer inserts rows on #name dataSource'() {
+        given:
+        dataSourceHandler.withConnection(name) { String dataSourceName, DataSource dataSource, Connection connection ->
+            new Sql(connection).execute('CREATE TABLE IF NOT EXISTS batched(id INT, name VARCHAR(32))')
+        }
+
+        when:
+        BatchWriter writer = dataSourceHandler.batchWriter(name, 'INSERT INTO batched (id, name) VALUES (?, ?)')
+        writer.withCloseable {
+            1050.times { int i -> writer.add(i, "name${i}".toString()) }
+        }
+
+        then:
+        writer.rowCount == 1050
+        writer.flushCount == flushes
+        dataSourceHandler.withConnection(name) { String dataSourceName, DataSource dataSource, Connection connection ->
+            new Sql(connection).firstRow('SELECT COUNT(*) AS total, SUM(id) AS ids FROM batched')
+        }.with { [it.total, it.ids] } == [1050L, (0..<1050).sum() as Long]
+        activeConnections(name) == 0
+
+        where:
+        name      | flushes
+        'default' | 3
+        'batched' | 11
+        'capped'  | 33
+    }
+
+    void 'Batch writer only rewrites statements that end with their row'() {
+        given:
+        dataSourceHandler.update('batched', 'CREATE TABLE IF NOT EXISTS trailing(id INT, name VARCHAR(32))', [])
+
+        when:
+        BatchWriter writer = dataSourceHandler.batchWriter('batched', 'INSERT INTO trailing (id, name) VALUES (?, ?) -- (trailing comment)')
+        writer.withCloseable {
+            250.times { int i -> writer.add(i, "name${i}".toString()) }
+        }
+
+        then:
+        writer.rowCount == 250
+        dataSourceHandler.query('batched', 'SELECT COUNT(*) AS total FROM trailing', [])[0].get('total') == 250L
+        activeConnections('batched') == 0
+    }
+
+    void 'Batch writer takes part in the transaction bound to the current thread'() {
+        given:
+        dataSourceHandler.update('single', 'CREATE TABLE IF NOT EXISTS written(id INT)', [])
+
+        when:
+        long written = dataSourceHandler.withTransaction('single') { String dataSourceName, DataSource dataSource, Connection connection ->
+            dataSourceHandler.batchWriter('single', 'INSERT INTO written (id) VALUES (?)').withCloseable { BatchWriter writer ->
+                10.times { int i -> writer.add(i) }
+            }
+            long total = new Sql(connection).firstRow('SELECT COUNT(*) AS total FROM written').total
+            assert !connection.autoCommit
+            connection.rollback()
+            total
+        }
+
+        then:
+        written == 10L
+        dataSourceHandler.query('single', 'SELECT id FROM written', []).empty
+        activeConnections('single') == 0
+    }
+
+    void 'Query results are cached until a write touches their tables'() {
+        given:
+        dataSourceHandler.update('results', 'CREATE TABLE IF NOT EXISTS products(id INT, name VARCHAR(32))', [])
+        dataSourceHandler.update('results', 'CREATE TABLE IF NOT EXISTS orders(id INT, product_id INT)', [])
+        dataSourceHandler.update('results', 'INSERT INTO products (id, name) VALUES (?, ?)', [1, 'apple'])
+
+        when:
+        List<Row> first = dataSourceHandler.query('results', 'SELECT * FROM products WHERE id > ?', [0])
+        List<Row> second = dataSourceHandler.query('results', 'SELECT * FROM products WHERE id > ?', [0])
+        List<Row> other = dataSourceHandler.query('results', 'SELECT * FROM products WHERE id > ?', [1])
+
+        then:
+        first.is(second)
+        !first.is(other)
+        first*.get('name') == ['apple']
+
+        when:
+        dataSourceHandler.update('results', 'INSERT INTO orders (id, product_id) VALUES (?, ?)', [1, 1])
+
+        then:
+        dataSourceHandler.query('results', 'SELECT * FROM products WHERE id > ?', [0]).is(first)
+
+        when:
+        dataSourceHandler.update('results', 'INSERT INTO products (id, name) VALUES (?, ?)', [2, 'banana'])
+        List<Row> third = dataSourceHandler.query('results', 'SELECT * FROM products WHERE id > ?', [0])
+
+        then:
+        third*.get('name') == ['apple', 'banana']
+
+        when:
+        dataSourceHandler.batchWriter('results', 'INSERT INTO products (id, name) VALUES (?, ?)').withCloseable {
+            it.add(3, 'cherry')
+        }
+
+        then:
+        dataSourceHandler.query('results', 'SELECT * FROM products WHERE id > ?', [0])*.get('name') == ['apple', 'banana', 'cherry']
+    }
+
+    void 'Query results are not cached inside a transaction'() {
+        given:
+        dataSourceHandler.update('results', 'CREATE TABLE IF NOT EXISTS accounts(id INT, balance INT)', [])
+        dataSourceHandler.update('results', 'INSERT INTO accounts (id, balance) VALUES (?, ?)', [1, 100])
+
+        when:
+        dataSourceHandler.withTransaction('results') { String dataSourceName, DataSource dataSource, Connection connection ->
+            dataSourceHandler.update('results', 'UPDATE accounts SET balance = ? WHERE id = ?', [50, 1])
+            assert dataSourceHandler.query('results', 'SELECT balance FROM accounts', [])*.get(0) == [50]
+            throw new IllegalStateException('rollback')
+        }
+
+        then:
+        thrown(IllegalStateException)
+        dataSourceHandler.query('results', 'SELECT balance FROM accounts', [])*.get(0) == [100]
+    }
+
+    void 'Read a columnar result'() {
+        given:
+        dataSourceHandler.update('CREATE TABLE IF NOT EXISTS sales(id INT, customer BIGINT, region VARCHAR(16), amount DOUBLE, day DATE)', [])
+        200.times { int i ->
+            dataSourceHandler.update('INSERT INTO sales VALUES (?, ?, ?, ?, ?)', [i, i * 10L, i % 3 ? ['north', 'south'][i % 2] : null, i % 5 ? i / 2d : null, null])
+        }
+
+        when:
+        ColumnarResult result = dataSourceHandler.withConnection { String dataSourceName, DataSource dataSource, Connection connection ->
+            connection.createStatement().withCloseable { Statement statement ->
+                statement.executeQuery('SELECT * FROM sales ORDER BY id').withCloseable { ResultSet resultSet -> ColumnarResult.read(resultSet, 16) }
+            }
+        }
+
+        then:
+        result.rowCount == 200
+        result.columnNames == ['ID', 'CUSTOMER', 'REGION', 'AMOUNT', 'DAY']
+        result.getIntColumn('id').toArray() == (0..<200) as int[]
+        result.getLongColumn('customer').getLong(199) == 1990L
+        result.getStringColumn('region').dictionary == ['south', 'north']
+        result.getStringColumn('region').getString(0) == null
+        result.getStringColumn('region').getCode(2) == 1
+        result.getDoubleColumn('amount').isNull(195)
+        !result.getDoubleColumn('amount').isNull(199)
+        result.getDoubleColumn('amount').getDouble(199) == 99.5d
+        result.getColumn('day') instanceof ColumnarResult.ObjectColumn
+        result.getColumn('day').get(0) == null
+
+        when:
+        result.getIntColumn('region')
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    void 'Result buffer spills to disk on #name dataSource'() {
+        when:
+        ResultBuffer buffer = null
+        List<Long> sums = dataSourceHandler.withResultBuffer(name, 'SELECT X AS id, CONCAT(\'name\', X) AS name FROM SYSTEM_RANGE(1, 10000)', []) { String dataSourceName, ResultBuffer b ->
+            buffer = b
+            assert activeConnections(name) == 0
+            assert b.size() == 10000
+            assert b.get(9999).get('name') == 'name10000'
+            assert b.get(0).get('id') == 1L
+            assert b.spilledBytes > 0 == spilled
+            (1..2).collect { b.sum { Row row -> row.get('id') } as Long }
+        }
+
+        then:
+        sums == [50005000L, 50005000L]
+
+        when:
+        buffer.get(0)
+
+        then:
+        thrown(IllegalStateException)
+
+        where:
+        name      | spilled
+        'default' | false
+        'spilled' | true
+    }
+
+    void 'Operation counters track callbacks on #name dataSource'() {
+        given:
+        OperationCounters counters = dataSourceHandler.withDataSource(name) { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(JMXAwareDataSource).operationCounters
+        }
+        counters.reset()
+
+        when:
+        3.times {
+            dataSourceHandler.withConnection(name) { String dataSourceName, DataSource dataSource, Connection connection ->
+                Thread.sleep(10)
+                assert counters.inFlightCallbacks == 1
+            }
+        }
+        dataSourceHandler.withConnection(name) { String dataSourceName, DataSource dataSource, Connection connection ->
+            connection.createStatement().execute('SELECT * FROM missing_table')
+        }
+
+        then:
+        thrown(RuntimeSQLException)
+        counters.connectionCallbacks == 4
+        counters.dataSourceCallbacks == 0
+        counters.inFlightCallbacks == 0
+        counters.connectionHoldTime >= TimeUnit.MILLISECONDS.toNanos(30)
+        counters.errors == 1
+        counters.errorsBySqlStateClass == ['42': 1L]
+
+        where:
+        name << ['default', 'unpooled']
+    }
+
+    void 'Invalid settings (#config) are rejected when read'() {
+        when:
+        DataSourceSettings.of('people', config)
+
+        then:
+        IllegalArgumentException e = thrown()
+        e.message.startsWith(message)
+
+        where:
+        config                                      | message
+        [pool: [maxPoolSize: 4]]                    | 'Configuration for people.pool.maxPoolSize is not a known pool property'
+        [pool: [maximumPoolSize: 'ten']]            | 'Configuration for people.pool.maximumPoolSize must be a number'
+        [pool: [readOnly: 'yes']]                   | 'Configuration for people.pool.readOnly must be a boolean'
+        [async: [rejectionPolicy: 'drop']]          | 'Configuration for people.async.rejectionPolicy must be one of abort, caller-runs'
+        [stream: 500]                               | 'Configuration for people.stream must be a map'
+    }
+
+    void 'Settings convert configuration values to their expected types'() {
+        given:
+        DataSourceSettings settings = DataSourceSettings.of('people', [pool: [maximumPoolSize: '4'], async: [rejectionPolicy: 'caller-runs']])
+
+        expect:
+        settings.pool == [maximumPoolSize: 4]
+        settings.maximumPoolSize == 4
+        settings.asyncThreads == 4
+        settings.asyncRejectionPolicy == 'CALLER_RUNS'
+        settings.streamFetchSize == DataSourceSettings.DEFAULT_FETCH_SIZE
+    }
+
+    void 'Pool properties changed over JMX are applied and saved'() {
+        given:
+        Path overrides = Paths.get('build/tmp/tuned-pool.properties')
+        Files.deleteIfExists(overrides)
+        LinkedBlockingQueue<DataSourcePoolReconfiguredEvent> events = new LinkedBlockingQueue<>()
+        application.eventRouter.subscribe(new Object() {
+            @EventHandler
+            void handleDataSourcePoolReconfiguredEvent(DataSourcePoolReconfiguredEvent event) {
+                events.offer(event)
+            }
+        })
+        HikariDataSource hikariDataSource = dataSourceHandler.withDataSource('tuned') { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(HikariDataSource)
+        }
+        MBeanServer server = ManagementFactory.platformMBeanServer
+        ObjectName objectName = server.queryNames(new ObjectName('griffon.plugins.datasource:type=ConnectionPool,name=tuned,*'), null).first()
+
+        when:
+        server.setAttribute(objectName, new Attribute('MaximumPoolSize', 12))
+        DataSourcePoolReconfiguredEvent event = events.poll(5, TimeUnit.SECONDS)
+
+        then:
+        hikariDataSource.maximumPoolSize == 12
+        server.getAttribute(objectName, 'MaximumPoolSize') == 12
+        event.name == 'tuned'
+        event.property == 'maximumPoolSize'
+        event.oldValue == 4
+        event.newValue == 12
+        overrides.toFile().withReader { reader -> new Properties().with { load(reader); it } }.maximumPoolSize == '12'
+
+        when:
+        server.setAttribute(objectName, new Attribute('MinimumIdle', 20))
+
+        then:
+        thrown(Exception)
+        hikariDataSource.minimumIdle == 1
+        events.poll(100, TimeUnit.MILLISECONDS) == null
+
+        cleanup:
+        Files.deleteIfExists(overrides)
+    }
+
+    void 'Autoscaler grows the pool under load and shrinks it when idle'() {
+        given:
+        LinkedBlockingQueue<DataSourcePoolScaledEvent> events = new LinkedBlockingQueue<>()
+        application.eventRouter.subscribe(new Object() {
+            @EventHandler
+            void handleDataSourcePoolScaledEvent(DataSourcePoolScaledEvent event) {
+                events.offer(event)
+            }
+        })
+        HikariDataSource hikariDataSource = dataSourceHandler.withDataSource('autoscaled') { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(HikariDataSource)
+        }
+        MBeanServer server = ManagementFactory.platformMBeanServer
+        ObjectName objectName = server.queryNames(new ObjectName('griffon.plugins.datasource:type=PoolAutoscaler,name=autoscaled,*'), null).first()
+        ExecutorService executor = Executors.newFixedThreadPool(5)
+
+        when:
+        long end = System.currentTimeMillis() + 1000
+        List<Future> futures = (1..5).collect {
+            executor.submit({
+                while (System.currentTimeMillis() < end) {
+                    dataSourceHandler.withConnection('autoscaled') { String dataSourceName, DataSource dataSource, Connection connection ->
+                        connection.createStatement().execute('SELECT 1')
+                        Thread.sleep(50)
+                    }
+                }
+            } as Callable)
+        }
+        DataSourcePoolScaledEvent grown = events.poll(5, TimeUnit.SECONDS)
+        futures*.get()
+
+        then:
+        grown.name == 'autoscaled'
+        grown.oldSize == 2
+        grown.newSize > 2
+        grown.newSize <= 6
+        grown.reason.contains('waiting')
+        server.getAttribute(objectName, 'ScaleUps') >= 1L
+
+        when:
+        DataSourcePoolScaledEvent shrunk = events.poll(5, TimeUnit.SECONDS)
+        while (shrunk != null && shrunk.newSize > shrunk.oldSize) {
+            shrunk = events.poll(5, TimeUnit.SECONDS)
+        }
+
+        then:
+        shrunk.newSize < shrunk.oldSize
+        hikariDataSource.maximumPoolSize < 6
+        hikariDataSource.minimumIdle <= hikariDataSource.maximumPoolSize
+        server.getAttribute(objectName, 'LastDecision').startsWith('Shrank')
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    @Unroll
+    void 'Swapping #name dataSource waits for in-flight callbacks before closing the previous pool'() {
+        given:
+        HikariDataSource previous = dataSourceHandler.withDataSource(name) { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(HikariDataSource)
+        }
+        Map<String, Object> configuration = new LinkedHashMap<>(dataSourceFactory.getConfigurationFor(name))
+        configuration.url = "jdbc:h2:mem:${name}-b;DB_CLOSE_DELAY=-1".toString()
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        ExecutorService executor = Executors.newFixedThreadPool(2)
+
+        when:
+        // the callback holds no connection while it waits, only callback tracking keeps the pool open
+        Future inFlight = executor.submit({
+            dataSourceHandler.withDataSource(name) { String dataSourceName, DataSource dataSource ->
+                started.countDown()
+                release.await(5, TimeUnit.SECONDS)
+                dataSource.connection.withCloseable { Connection connection -> connection.createStatement().execute('SELECT 1') }
+            }
+        } as Callable)
+        started.await(5, TimeUnit.SECONDS)
+        Future swap = executor.submit({ dataSourceHandler.swapDataSource(name, configuration) } as Callable)
+        Thread.sleep(200)
+
+        then:
+        !swap.done
+        !previous.closed
+        dataSourceHandler.withConnection(name) { String dataSourceName, DataSource dataSource, Connection connection ->
+            connection.metaData.URL
+        }.startsWith("jdbc:h2:mem:${name}-b")
+
+        when:
+        release.countDown()
+        inFlight.get(5, TimeUnit.SECONDS)
+        swap.get(5, TimeUnit.SECONDS)
+
+        then:
+        previous.closed
+        dataSourceFactory.getConfigurationFor(name).url == "jdbc:h2:mem:${name}-b;DB_CLOSE_DELAY=-1"
+
+        cleanup:
+        executor.shutdownNow()
+
+        where:
+        name << ['swapped', 'unmonitored']
+    }
+
+    void 'Swapping a dataSource runs the asynchronous callbacks it already accepted'() {
+        given:
+        Map<String, Object> configuration = new LinkedHashMap<>(dataSourceFactory.getConfigurationFor('throttled'))
+        configuration.url = 'jdbc:h2:mem:throttled-b;DB_CLOSE_DELAY=-1'
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+
+        when:
+        // the only permit is held, thus the following callbacks are queued
+        CompletableFuture<Boolean> blocker = dataSourceHandler.withDataSourceAsync('throttled') { String dataSourceName, DataSource dataSource ->
+            started.countDown()
+            release.await(5, TimeUnit.SECONDS)
+        }
+        started.await(5, TimeUnit.SECONDS)
+        List<CompletableFuture<Integer>> queued = (1..3).collect { int i ->
+            dataSourceHandler.withConnectionAsync('throttled') { String dataSourceName, DataSource dataSource, Connection connection -> i }
+        }
+        Future swap = executor.submit({ dataSourceHandler.swapDataSource('throttled', configuration) } as Callable)
+        Thread.sleep(200)
+        release.countDown()
+        swap.get(5, TimeUnit.SECONDS)
+
+        then:
+        blocker.get(5, TimeUnit.SECONDS)
+        queued*.get(5, TimeUnit.SECONDS) == [1, 2, 3]
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    void 'Lazy dataSources create their pool on first use'() {
+        given:
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+        MBeanServer server = ManagementFactory.platformMBeanServer
+        ObjectName objectName = new ObjectName('griffon.plugins.datasource:type=ConnectionPool,name=lazy,*')
+
+        when:
+        boolean pooled = dataSourceHandler.withDataSource('lazy') { String dataSourceName, DataSource dataSource ->
+            dataSource.isWrapperFor(HikariDataSource)
+        }
+
+        then:
+        !pooled
+        testEventHandler.events.empty
+        server.queryNames(objectName, null).empty
+
+        when:
+        dataSourceHandler.withConnection('lazy') { String dataSourceName, DataSource dataSource, Connection connection ->
+            connection.createStatement().execute('SELECT 1')
+        }
+        pooled = dataSourceHandler.withDataSource('lazy') { String dataSourceName, DataSource dataSource ->
+            dataSource.isWrapperFor(HikariDataSource)
+        }
+
+        then:
+        pooled
+        testEventHandler.events == ['DataSourceConnectStartEvent', 'DataSourceConnectEndEvent']
+        server.queryNames(objectName, null).size() == 1
+
+        when:
+        dataSourceHandler.closeDataSource('lazy')
+
+        then:
+        testEventHandler.events.size() == 4
+        server.queryNames(objectName, null).empty
+    }
+
+    void 'Warmup fills the pool up to minimumIdle and reports where the time went'() {
+        when:
+        List<DataSourceWarmupEvent> reports = new DataSourceWarmup(dataSourceHandler, dataSourceFactory).warmup(['warmed'])
+        HikariPoolMXBean pool = dataSourceHandler.withDataSource('warmed') { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(HikariDataSource).hikariPoolMXBean
+        }
+
+        then:
+        reports.size() == 1
+        reports[0].name == 'warmed'
+        reports[0].connections == 4
+        reports[0].connectTime >= 0
+        reports[0].fillTime >= 0
+        reports[0].queryTime >= 0
+        reports[0].totalTime == reports[0].connectTime + reports[0].fillTime + reports[0].queryTime
+        pool.totalConnections >= 4
+        pool.activeConnections == 0
+    }
+
+    void 'Closing a dataSource waits for connections in use before closing its pool'() {
+        given:
+        LinkedBlockingQueue<DataSourcePoolClosedEvent> events = new LinkedBlockingQueue<>()
+        application.eventRouter.subscribe(new Object() {
+            @EventHandler
+            void handleDataSourcePoolClosedEvent(DataSourcePoolClosedEvent event) {
+                events << event
+            }
+        })
+        HikariDataSource hikariDataSource = dataSourceHandler.withDataSource('closing') { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(HikariDataSource)
+        }
+        CountDownLatch acquired = new CountDownLatch(1)
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+
+        when:
+        executor.submit({
+            dataSourceHandler.withConnection('closing') { String dataSourceName, DataSource dataSource, Connection connection ->
+                acquired.countDown()
+                Thread.sleep(1000)
+            }
+        } as Callable)
+        acquired.await(5, TimeUnit.SECONDS)
+        dataSourceHandler.closeDataSource('closing')
+
+        DataSourcePoolClosedEvent undrained = events.poll(5, TimeUnit.SECONDS)
+
+        then:
+        hikariDataSource.closed
+        undrained.name == 'closing'
+        undrained.activeConnections == 1
+        !undrained.drained
+        undrained.waitTime >= 200
+
+        when:
+        dataSourceHandler.withDataSource { String dataSourceName, DataSource dataSource -> true }
+        dataSourceHandler.closeDataSource()
+        DataSourcePoolClosedEvent drained = events.poll(5, TimeUnit.SECONDS)
+
+        then:
+        drained.name == 'default'
+        drained.drained
+        events.poll(100, TimeUnit.MILLISECONDS) == null
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    void 'Connections held past the leak detection threshold are reported by call site'() {
+        given:
+        LinkedBlockingQueue<DataSourceConnectionLeakEvent> events = new LinkedBlockingQueue<>()
+        application.eventRouter.subscribe(new Object() {
+            @EventHandler
+            void handleDataSourceConnectionLeakEvent(DataSourceConnectionLeakEvent event) {
+                events.offer(event)
+            }
+        })
+        MBeanServer server = ManagementFactory.platformMBeanServer
+
+        when:
+        dataSourceHandler.withConnection('leaky') { String dataSourceName, DataSource dataSource, Connection connection ->
+            connection.createStatement().execute('SELECT 1')
+        }
+        Connection leaked = dataSourceHandler.withDataSource('leaky') { String dataSourceName, DataSource dataSource ->
+            dataSource.connection
+        }
+        DataSourceConnectionLeakEvent event = events.poll(5, TimeUnit.SECONDS)
+        ObjectName objectName = server.queryNames(new ObjectName('griffon.plugins.datasource:type=ConnectionLeaks,name=leaky,*'), null).first()
+
+        then:
+        event.name == 'leaky'
+        event.callSite.contains('DataSourceSpec')
+        event.heldTime >= 100
+        event.stackTrace[0].methodName == 'getConnection'
+        server.getAttribute(objectName, 'SampledBorrows') == 2L
+        server.getAttribute(objectName, 'Leaks') == 1L
+        server.getAttribute(objectName, 'LeakSites').size() == 1
+
+        when:
+        leaked.close()
+
+        then:
+        server.getAttribute(objectName, 'TrackedConnections') == 0
+        events.poll(300, TimeUnit.MILLISECONDS) == null
+    }
+
+    private int activeConnections(String name) {
+        dataSourceHandler.withDataSource(name) { String dataSourceName, DataSource dataSource ->
+            dataSource.unwrap(HikariDataSource).hikariPoolMXBean.activeConnections
+        }
+    }
+
+    private static long usedMemory() {
+        System.gc()
+        Runtime.runtime.totalMemory() - Runtime.runtime.freeMemory()
+    }
 }
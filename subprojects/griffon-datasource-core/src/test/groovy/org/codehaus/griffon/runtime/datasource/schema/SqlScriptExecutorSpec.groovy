@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.schema
+
+import groovy.sql.Sql
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.channels.Channels
+import java.nio.charset.StandardCharsets
+import java.sql.BatchUpdateException
+import java.sql.Connection
+import java.sql.DatabaseMetaData
+import java.sql.DriverManager
+import java.sql.SQLException
+import java.sql.Statement
+
+@Unroll
+class SqlScriptExecutorSpec extends Specification {
+    private static final String SCRIPT = '''CREATE TABLE t (id INT PRIMARY KEY);
+INSERT INTO t VALUES (1);
+INSERT INTO t VALUES (1);
+INSERT INTO t VALUES (2);
+INSERT INTO t VALUES (3);'''
+
+    private Connection connection
+
+    void setup() {
+        connection = DriverManager.getConnection("jdbc:h2:mem:${UUID.randomUUID()}", 'sa', '')
+    }
+
+    void cleanup() {
+        connection.close()
+    }
+
+    void 'Statements are sent in #batches batch(es) of up to #batchSize'() {
+        given:
+        SqlScriptExecutor executor = new SqlScriptExecutor('default', batchSize, false)
+
+        when:
+        int executed = executor.execute(connection, reader('CREATE TABLE t (id INT);\nINSERT INTO t VALUES (1);\nINSERT INTO t VALUES (2);\nINSERT INTO t VALUES (3);\nINSERT INTO t VALUES (4);'), 'script.sql')
+
+        then:
+        executed == 5
+        executor.batches == batches
+        ids() == [1, 2, 3, 4]
+
+        where:
+        batchSize || batches
+        1         || 0
+        2         || 3
+        100       || 1
+    }
+
+    void 'Queries are executed on their own between batches'() {
+        given:
+        SqlScriptExecutor executor = new SqlScriptExecutor('default', 100, false)
+
+        when:
+        int executed = executor.execute(connection, reader('CREATE TABLE t (id INT);\nINSERT INTO t VALUES (1);\nSELECT COUNT(*) FROM t;\nINSERT INTO t VALUES (2);'), 'script.sql')
+
+        then:
+        executed == 4
+        executor.batches == 2
+        ids() == [1, 2]
+    }
+
+    void 'A failing statement in the middle of a batch is skipped when continuing on error'() {
+        given:
+        SqlScriptExecutor executor = new SqlScriptExecutor('default', 100, true)
+
+        when:
+        int executed = executor.execute(connection, reader(SCRIPT), 'script.sql')
+
+        then:
+        executed == 4
+        executor.failed == 1
+        ids() == [1, 2, 3]
+    }
+
+    void 'A failing statement in the middle of a batch stops the script'() {
+        given:
+        SqlScriptExecutor executor = new SqlScriptExecutor('default', batchSize, false)
+
+        when:
+        executor.execute(connection, reader(SCRIPT), 'script.sql')
+
+        then:
+        SQLException e = thrown(SQLException)
+        e.message == 'Statement at line 3 of script.sql failed: INSERT INTO t VALUES (1)'
+        e.cause instanceof SQLException
+        executor.failed == 1
+
+        where:
+        batchSize << [1, 100]
+    }
+
+    void 'Statements after the first failure are resumed one at a time when the driver stops the batch'() {
+        given:
+        Statement statement = Mock(Statement)
+        Connection connection = Stub(Connection) {
+            getMetaData() >> Stub(DatabaseMetaData) {
+                supportsBatchUpdates() >> true
+            }
+            createStatement() >> statement
+            getAutoCommit() >> true
+        }
+        SqlScriptExecutor executor = new SqlScriptExecutor('default', 100, true)
+
+        when:
+        int executed = executor.execute(connection, reader('A;\nB;\nC;\nD;'), 'script.sql')
+
+        then:
+        1 * statement.executeBatch() >> { throw new BatchUpdateException(new int[]{1}) }
+        1 * statement.execute('B') >> { throw new SQLException('B failed') }
+        0 * statement.execute('A')
+        1 * statement.execute('C') >> false
+        1 * statement.execute('D') >> false
+        executed == 3
+        executor.failed == 1
+    }
+
+    private List<Integer> ids() {
+        new Sql(connection).rows('SELECT id FROM t ORDER BY id')*.id
+    }
+
+    private static SqlScriptReader reader(String script) {
+        new SqlScriptReader(Channels.newChannel(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8, ';')
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.schema
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.channels.Channels
+import java.nio.charset.StandardCharsets
+
+@Unroll
+class SqlScriptReaderSpec extends Specification {
+    void 'Script #script is split into #expected'() {
+        given:
+        SqlScriptReader reader = reader(script)
+
+        when:
+        List<String> statements = []
+        SqlStatement statement
+        while ((statement = reader.next()) != null) {
+            statements << statement.sql
+        }
+
+        then:
+        statements == expected
+
+        where:
+        script                                                 || expected
+        'SELECT 1; SELECT 2'                                   || ['SELECT 1', 'SELECT 2']
+        "INSERT INTO t VALUES ('a;b');"                        || ["INSERT INTO t VALUES ('a;b')"]
+        "INSERT INTO t VALUES ('it''s;');"                     || ["INSERT INTO t VALUES ('it''s;')"]
+        'SELECT "a;b" FROM t;'                                 || ['SELECT "a;b" FROM t']
+        '-- comment;\nSELECT 1;'                               || ['SELECT 1']
+        '/* comment; */ SELECT 1;'                             || ['SELECT 1']
+        'SELECT 1 /* inline; */ + 1;'                          || ['SELECT 1 /* inline; */ + 1']
+        'SELECT 1 -- trailing;\n;'                             || ['SELECT 1 -- trailing;']
+        'CREATE FUNCTION f() AS $body$ SELECT 1; $body$;'      || ['CREATE FUNCTION f() AS $body$ SELECT 1; $body$']
+        'DELIMITER //\nSELECT 1; SELECT 2//\nDELIMITER ;\nX;' || ['SELECT 1; SELECT 2', 'X']
+        ';;  ;'                                                || []
+    }
+
+    void 'Statements keep track of their starting line'() {
+        given:
+        SqlScriptReader reader = reader('-- header\n\nCREATE TABLE t (\n  id INT\n);\nDROP TABLE t;')
+
+        expect:
+        reader.next().lineNumber == 3
+        reader.next().lineNumber == 6
+        reader.next() == null
+    }
+
+    void 'Statements producing results are flagged as queries'() {
+        expect:
+        new SqlStatement(sql, 1).query == query
+
+        where:
+        sql                         || query
+        'SELECT * FROM t'           || true
+        'with x as (select 1) x'    || true
+        'INSERT INTO t VALUES (1)'  || false
+        'CREATE TABLE t (id INT)'   || false
+    }
+
+    private static SqlScriptReader reader(String script) {
+        new SqlScriptReader(Channels.newChannel(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8, ';')
+    }
+}
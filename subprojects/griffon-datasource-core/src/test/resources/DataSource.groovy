@@ -62,4 +62,223 @@ dataSources {
         dbCreate = 'create'
         url = 'jdbc:h2:mem:${application_name}-people'
     }
-}
\ No newline at end of file
+    cached {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-cached'
+        pool {
+            maximumPoolSize = 1
+        }
+        statementCache {
+            size = 4
+        }
+    }
+    slow {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-slow'
+        slowCallback {
+            threshold = 50
+        }
+    }
+    virtual {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-virtual'
+        async {
+            virtualThreads = true
+        }
+    }
+    replica1 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-replica1'
+    }
+    replica2 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-replica2'
+    }
+    routed {
+        routing {
+            primary = 'internal'
+            replicas = ['replica1', 'replica2', 'missing']
+        }
+    }
+    single {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-single'
+        pool {
+            maximumPoolSize = 1
+            connectionTimeout = 500
+        }
+    }
+    streaming {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-streaming;LAZY_QUERY_EXECUTION=1'
+        stream {
+            fetchSize = 500
+        }
+    }
+    batched {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-batched'
+        batch {
+            size = 100
+            rewriteInserts = true
+            commitInterval = 2
+        }
+    }
+    capped {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-capped'
+        batch {
+            size = 100
+            rewriteInserts = true
+            maxParameters = 64
+        }
+    }
+    bound {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-bound'
+        threadBoundConnections = true
+        pool {
+            maximumPoolSize = 1
+            connectionTimeout = 500
+        }
+    }
+    results {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-results'
+        resultCache {
+            maxRows = 100
+            ttl = 60000
+        }
+    }
+    spilled {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-spilled;LAZY_QUERY_EXECUTION=1'
+        resultBuffer {
+            heapSize = 4096
+        }
+    }
+    unpooled {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-unpooled;DB_CLOSE_DELAY=-1'
+        pooled = false
+    }
+    tuned {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-tuned'
+        poolOverrides = 'build/tmp/tuned-pool.properties'
+        pool {
+            maximumPoolSize = 4
+            minimumIdle = 1
+        }
+    }
+    autoscaled {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-autoscaled'
+        pool {
+            maximumPoolSize = 2
+            minimumIdle = 1
+        }
+        autoscale {
+            enabled = true
+            maxPoolSize = 6
+            interval = 50
+            cooldown = 200
+            shrinkAfter = 5
+        }
+    }
+    swapped {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-swapped-a;DB_CLOSE_DELAY=-1'
+        drainTimeout = 5000
+    }
+    unmonitored {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-unmonitored-a;DB_CLOSE_DELAY=-1'
+        jmx = false
+        drainTimeout = 5000
+    }
+    throttled {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-throttled-a;DB_CLOSE_DELAY=-1'
+        drainTimeout = 5000
+        async {
+            threads = 1
+            virtualThreads = true
+        }
+    }
+    lazy {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-lazy'
+        lazy {
+            enabled = true
+        }
+    }
+    closing {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-closing'
+        drainTimeout = 200
+    }
+    warmed {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-warmed'
+        pool {
+            minimumIdle = 4
+            maximumPoolSize = 6
+        }
+        warmup {
+            queries = ['SELECT 1']
+        }
+    }
+    leaky {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-leaky'
+        leakDetection {
+            threshold = 100
+            sampleRate = 1
+        }
+    }
+}
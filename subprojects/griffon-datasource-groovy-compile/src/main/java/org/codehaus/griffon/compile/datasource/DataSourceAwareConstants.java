@@ -38,16 +38,34 @@ public interface DataSourceAwareConstants extends BaseConstants {
     String DATA_SOURCE_HANDLER_TYPE = "griffon.plugins.datasource.DataSourceHandler";
     String DATA_SOURCE_CALLBACK_TYPE = "griffon.plugins.datasource.DataSourceCallback";
     String CONNECTION_CALLBACK_TYPE = "griffon.plugins.datasource.ConnectionCallback";
+    String COMPLETABLE_FUTURE_TYPE = "java.util.concurrent.CompletableFuture";
+    String STREAM_TYPE = "java.util.stream.Stream";
+    String LIST_TYPE = "java.util.List";
+    String MAP_TYPE = "java.util.Map";
+    String ROW_TYPE = "griffon.plugins.datasource.Row";
+    String BATCH_WRITER_TYPE = "griffon.plugins.datasource.BatchWriter";
+    String RESULT_BUFFER_CALLBACK_TYPE = "griffon.plugins.datasource.ResultBufferCallback";
     String RUNTIME_SQL_EXCEPTION_TYPE = "griffon.plugins.datasource.exceptions.RuntimeSQLException";
     String DATA_SOURCE_HANDLER_PROPERTY = "dataSourceHandler";
     String DATA_SOURCE_HANDLER_FIELD_NAME = "this$" + DATA_SOURCE_HANDLER_PROPERTY;
 
     String METHOD_WITH_DATA_SOURCE = "withDataSource";
     String METHOD_WITH_CONNECTION = "withConnection";
+    String METHOD_WITH_TRANSACTION = "withTransaction";
+    String METHOD_WITH_DATA_SOURCE_ASYNC = "withDataSourceAsync";
+    String METHOD_WITH_CONNECTION_ASYNC = "withConnectionAsync";
+    String METHOD_STREAM = "stream";
+    String METHOD_QUERY = "query";
+    String METHOD_UPDATE = "update";
+    String METHOD_WITH_RESULT_BUFFER = "withResultBuffer";
+    String METHOD_BATCH_WRITER = "batchWriter";
+    String METHOD_SWAP_DATA_SOURCE = "swapDataSource";
     String METHOD_CLOSE_DATA_SOURCE = "closeDataSource";
     String DATA_SOURCE_NAME = "dataSourceName";
     String CALLBACK = "callback";
     String CONNECTION = "connection";
+    String TYPE_INT = "int";
+    String TYPE_BOOLEAN = "boolean";
 
     MethodDescriptor[] METHODS = new MethodDescriptor[]{
         method(
@@ -59,6 +77,20 @@ public interface DataSourceAwareConstants extends BaseConstants {
             METHOD_CLOSE_DATA_SOURCE,
             args(annotatedType(types(type(ANNOTATION_NONNULL)), JAVA_LANG_STRING))
         ),
+        method(
+            type(VOID),
+            METHOD_SWAP_DATA_SOURCE,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), MAP_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        method(
+            type(VOID),
+            METHOD_SWAP_DATA_SOURCE,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), MAP_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
 
         annotatedMethod(
             annotations(ANNOTATION_NONNULL),
@@ -96,6 +128,181 @@ public interface DataSourceAwareConstants extends BaseConstants {
                 annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
                 annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_CALLBACK_TYPE, R)),
             throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                type(TYPE_INT),
+                type(TYPE_BOOLEAN),
+                annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_DATA_SOURCE_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), DATA_SOURCE_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_DATA_SOURCE_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), DATA_SOURCE_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_CONNECTION_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_CONNECTION_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, ROW_TYPE),
+            METHOD_STREAM,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, ROW_TYPE),
+            METHOD_STREAM,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, ROW_TYPE),
+            METHOD_STREAM,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE),
+                type(TYPE_INT)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(LIST_TYPE, ROW_TYPE),
+            METHOD_QUERY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(LIST_TYPE, ROW_TYPE),
+            METHOD_QUERY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_RESULT_BUFFER,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), RESULT_BUFFER_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_RESULT_BUFFER,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), RESULT_BUFFER_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(TYPE_INT),
+            METHOD_UPDATE,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        method(
+            type(TYPE_INT),
+            METHOD_UPDATE,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(BATCH_WRITER_TYPE),
+            METHOD_BATCH_WRITER,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(BATCH_WRITER_TYPE),
+            METHOD_BATCH_WRITER,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
         )
     };
 }
@@ -61,6 +61,11 @@ class DataSourceAwareASTTransformationSpec extends Specification {
         import griffon.plugins.datasource.DataSourceHandler
 
         import griffon.annotations.core.Nonnull
+        import griffon.plugins.datasource.BatchWriter
+        import griffon.plugins.datasource.Row
+        import griffon.plugins.datasource.ResultBufferCallback
+        import java.util.concurrent.CompletableFuture
+        import java.util.stream.Stream
         @griffon.transform.datasource.DataSourceAware
         class DataSourceHandlerBean implements DataSourceHandler {
             @Override
@@ -80,6 +85,82 @@ class DataSourceAwareASTTransformationSpec extends Specification {
                  return null
             }
             @Override
+            public <R> R withTransaction(@Nonnull ConnectionCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            public <R> R withTransaction(@Nonnull String dataSourceName, @Nonnull ConnectionCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            public <R> R withTransaction(@Nonnull String dataSourceName, int isolation, boolean readOnly, @Nonnull ConnectionCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            public <R> CompletableFuture<R> withDataSourceAsync(@Nonnull DataSourceCallback<R> callback) {
+                return null
+            }
+            @Override
+            public <R> CompletableFuture<R> withDataSourceAsync(@Nonnull String dataSourceName, @Nonnull DataSourceCallback<R> callback) {
+                return null
+            }
+            @Override
+            public <R> CompletableFuture<R> withConnectionAsync(@Nonnull ConnectionCallback<R> callback) {
+                return null
+            }
+            @Override
+            public <R> CompletableFuture<R> withConnectionAsync(@Nonnull String dataSourceName, @Nonnull ConnectionCallback<R> callback) {
+                return null
+            }
+            @Override
+            Stream<Row> stream(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            Stream<Row> stream(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            Stream<Row> stream(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            List<Row> query(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            List<Row> query(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            public <R> R withResultBuffer(@Nonnull String sql, @Nonnull List<?> params, @Nonnull ResultBufferCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            public <R> R withResultBuffer(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params, @Nonnull ResultBufferCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            int update(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+                return 0
+            }
+            @Override
+            int update(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeSQLException {
+                return 0
+            }
+            @Override
+            BatchWriter batchWriter(@Nonnull String sql) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            BatchWriter batchWriter(@Nonnull String dataSourceName, @Nonnull String sql) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+            void swapDataSource(@Nonnull Map<String, Object> configuration) throws RuntimeSQLException {}
+            @Override
+            void swapDataSource(@Nonnull String dataSourceName, @Nonnull Map<String, Object> configuration) throws RuntimeSQLException {}
+            @Override
             void closeDataSource(){}
             @Override
             void closeDataSource(@Nonnull String dataSourceName){}
@@ -0,0 +1,111 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.jmh;
+
+import griffon.plugins.datasource.DataSourceHandler;
+import org.codehaus.griffon.runtime.datasource.DefaultDataSourceHandler;
+import org.codehaus.griffon.runtime.datasource.DefaultDataSourceStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares platform and virtual thread execution of asynchronous callbacks. Each invocation issues a burst of
+ * {@code requests} callbacks that hold a connection for {@code latency} milliseconds, simulating a remote database,
+ * and waits for all of them. Run with {@code -prof gc} to compare allocation rates; virtual threads are only used
+ * on JVMs that support them, otherwise both modes fall back to platform threads.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncExecutionBenchmark {
+    @State(Scope.Benchmark)
+    public static class Handlers {
+        @Param({"platform", "virtual"})
+        public String mode;
+
+        @Param({"1000"})
+        public int requests;
+
+        @Param({"1"})
+        public int latency;
+
+        DataSourceHandler handler;
+
+        @Setup(Level.Trial)
+        public void setup(H2DataSources dataSources) {
+            Map<String, Object> async = new HashMap<>();
+            async.put("threads", dataSources.maximumPoolSize);
+            async.put("queueSize", requests);
+            async.put("virtualThreads", "virtual".equals(mode));
+            Map<String, Object> config = new HashMap<>();
+            config.put("async", async);
+            handler = new DefaultDataSourceHandler(H2DataSources.factoryFor(dataSources.jmxAware, config), new DefaultDataSourceStorage());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            handler.closeDataSource(H2DataSources.DATASOURCE_NAME);
+        }
+    }
+
+    @Benchmark
+    public Object burst(Handlers handlers) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[handlers.requests];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = handlers.handler.withConnectionAsync(H2DataSources.DATASOURCE_NAME,
+                (dataSourceName, dataSource, connection) -> query(connection, handlers.latency));
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+
+    private static int query(Connection connection, int latency) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            resultSet.next();
+            Thread.sleep(latency);
+            return resultSet.getInt(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.jmh;
+
+import griffon.plugins.datasource.BatchWriter;
+import griffon.plugins.datasource.DataSourceHandler;
+import org.codehaus.griffon.runtime.datasource.DefaultDataSourceHandler;
+import org.codehaus.griffon.runtime.datasource.DefaultDataSourceStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares inserting {@code rows} rows one statement at a time against {@code BatchWriter} with JDBC batches
+ * and with multi-row insert rewriting.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchInsertBenchmark {
+    private static final String INSERT = "INSERT INTO people (id, name, age) VALUES (?, ?, ?)";
+
+    @State(Scope.Benchmark)
+    public static class Writers {
+        @Param({"10000"})
+        public int rows;
+
+        @Param({"500"})
+        public int batchSize;
+
+        DataSourceHandler batching;
+        DataSourceHandler rewriting;
+
+        @Setup(Level.Trial)
+        public void setup(H2DataSources dataSources) {
+            batching = handler(dataSources, false);
+            rewriting = handler(dataSources, true);
+        }
+
+        @Setup(Level.Invocation)
+        public void truncate(H2DataSources dataSources) throws SQLException {
+            try (Connection connection = dataSources.hikari.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS people (id INT, name VARCHAR(64), age INT)");
+                statement.execute("TRUNCATE TABLE people");
+            }
+        }
+
+        private DataSourceHandler handler(H2DataSources dataSources, boolean rewriteInserts) {
+            Map<String, Object> batch = new HashMap<>();
+            batch.put("size", batchSize);
+            batch.put("rewriteInserts", rewriteInserts);
+            Map<String, Object> config = new HashMap<>();
+            config.put("batch", batch);
+            return new DefaultDataSourceHandler(H2DataSources.factoryFor(dataSources.jmxAware, config), new DefaultDataSourceStorage());
+        }
+    }
+
+    @Benchmark
+    public int naive(H2DataSources dataSources, Writers writers) {
+        return dataSources.handler.withConnection(H2DataSources.DATASOURCE_NAME, (dataSourceName, dataSource, connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                for (int i = 0; i < writers.rows; i++) {
+                    statement.setInt(1, i);
+                    statement.setString(2, "name" + i);
+                    statement.setInt(3, i % 100);
+                    statement.executeUpdate();
+                }
+            }
+            return writers.rows;
+        });
+    }
+
+    @Benchmark
+    public long batch(Writers writers) {
+        return write(writers.batching, writers.rows);
+    }
+
+    @Benchmark
+    public long rewrite(Writers writers) {
+        return write(writers.rewriting, writers.rows);
+    }
+
+    private static long write(DataSourceHandler handler, int rows) {
+        try (BatchWriter writer = handler.batchWriter(H2DataSources.DATASOURCE_NAME, INSERT)) {
+            for (int i = 0; i < rows; i++) {
+                writer.add(i, "name" + i, i % 100);
+            }
+            writer.flush();
+            return writer.getRowCount();
+        }
+    }
+}
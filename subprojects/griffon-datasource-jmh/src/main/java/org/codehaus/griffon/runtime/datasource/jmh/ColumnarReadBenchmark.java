@@ -0,0 +1,137 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.jmh;
+
+import griffon.plugins.datasource.ColumnarResult;
+import griffon.plugins.datasource.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading {@code rows} rows into maps, into {@code Row}s and into a {@code ColumnarResult}. Run with
+ * {@code -prof gc} to compare allocation rates.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnarReadBenchmark {
+    private static final String QUERY = "SELECT id, customer, region, amount FROM sales";
+    private static final String[] REGIONS = {"north", "south", "east", "west"};
+
+    @State(Scope.Benchmark)
+    public static class Sales {
+        @Param({"10000"})
+        public int rows;
+
+        @Setup(Level.Trial)
+        public void setup(H2DataSources dataSources) throws SQLException {
+            try (Connection connection = dataSources.hikari.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE TABLE sales (id INT, customer BIGINT, region VARCHAR(16), amount DOUBLE)");
+                }
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO sales VALUES (?, ?, ?, ?)")) {
+                    for (int i = 0; i < rows; i++) {
+                        statement.setInt(1, i);
+                        statement.setLong(2, i % 1000);
+                        statement.setString(3, REGIONS[i % REGIONS.length]);
+                        statement.setDouble(4, i * 0.5d);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public double maps(H2DataSources dataSources, Sales sales) {
+        List<Map<String, Object>> result = dataSources.handler.withConnection(H2DataSources.DATASOURCE_NAME, (dataSourceName, dataSource, connection) -> {
+            try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(QUERY)) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                List<Map<String, Object>> maps = new ArrayList<>();
+                while (resultSet.next()) {
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    for (int i = 1; i <= columnCount; i++) {
+                        map.put(metaData.getColumnLabel(i), resultSet.getObject(i));
+                    }
+                    maps.add(map);
+                }
+                return maps;
+            }
+        });
+        double total = 0d;
+        for (Map<String, Object> map : result) {
+            total += (Double) map.get("AMOUNT");
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double rows(H2DataSources dataSources, Sales sales) {
+        List<Row> result = dataSources.handler.query(H2DataSources.DATASOURCE_NAME, QUERY, Collections.emptyList());
+        double total = 0d;
+        for (Row row : result) {
+            total += row.<Double>get(3);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double columnar(H2DataSources dataSources, Sales sales) {
+        ColumnarResult result = dataSources.handler.withConnection(H2DataSources.DATASOURCE_NAME, (dataSourceName, dataSource, connection) -> {
+            try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(QUERY)) {
+                return ColumnarResult.read(resultSet);
+            }
+        });
+        ColumnarResult.DoubleColumn amounts = result.getDoubleColumn("amount");
+        double total = 0d;
+        for (int i = 0; i < result.getRowCount(); i++) {
+            total += amounts.getDouble(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead added by {@code DefaultDataSourceHandler} on top of a raw Hikari pool.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataSourceHandlerBenchmark {
+    @Benchmark
+    public void hikari(H2DataSources dataSources, Blackhole blackhole) throws SQLException {
+        try (Connection connection = dataSources.hikari.getConnection()) {
+            blackhole.consume(connection);
+        }
+    }
+
+    @Benchmark
+    public Object withConnection(H2DataSources dataSources) {
+        return dataSources.handler.withConnection(H2DataSources.DATASOURCE_NAME, (dataSourceName, dataSource, connection) -> connection);
+    }
+
+    @Benchmark
+    public void withDataSource(H2DataSources dataSources, Blackhole blackhole) {
+        dataSources.handler.withDataSource(H2DataSources.DATASOURCE_NAME, (dataSourceName, dataSource) -> {
+            try (Connection connection = dataSource.getConnection()) {
+                blackhole.consume(connection);
+            }
+            return null;
+        });
+    }
+}
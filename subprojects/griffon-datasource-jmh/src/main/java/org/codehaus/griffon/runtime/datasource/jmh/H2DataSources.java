@@ -0,0 +1,106 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.datasource.jmh;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.util.DriverDataSource;
+import griffon.plugins.datasource.DataSourceFactory;
+import griffon.plugins.datasource.DataSourceHandler;
+import org.codehaus.griffon.runtime.datasource.DataSourceDecorator;
+import org.codehaus.griffon.runtime.datasource.DefaultDataSourceHandler;
+import org.codehaus.griffon.runtime.datasource.DefaultDataSourceStorage;
+import org.codehaus.griffon.runtime.datasource.JMXAwareDataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * In-memory H2 dataSources shared by all benchmarks.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+public class H2DataSources {
+    static final String DATASOURCE_NAME = "default";
+    private static final String DRIVER_CLASS_NAME = "org.h2.Driver";
+
+    @Param({"8"})
+    public int maximumPoolSize;
+
+    HikariDataSource hikari;
+    DataSource decorator;
+    JMXAwareDataSource jmxAware;
+    DataSource driver;
+    DataSourceHandler handler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String url = "jdbc:h2:mem:jmh-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setDriverClassName(DRIVER_CLASS_NAME);
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(maximumPoolSize);
+        hikari = new HikariDataSource(config);
+
+        decorator = new DataSourceDecorator(hikari);
+        jmxAware = new JMXAwareDataSource(hikari);
+        driver = new DriverDataSource(url, DRIVER_CLASS_NAME, new Properties(), "sa", "");
+        handler = new DefaultDataSourceHandler(factoryFor(jmxAware), new DefaultDataSourceStorage());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hikari.close();
+    }
+
+    static DataSourceFactory factoryFor(DataSource dataSource) {
+        return factoryFor(dataSource, Collections.emptyMap());
+    }
+
+    static DataSourceFactory factoryFor(DataSource dataSource, Map<String, Object> configuration) {
+        return (DataSourceFactory) Proxy.newProxyInstance(H2DataSources.class.getClassLoader(), new Class<?>[]{DataSourceFactory.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "create":
+                    return dataSource;
+                case "getDataSourceNames":
+                    return Collections.singleton(DATASOURCE_NAME);
+                case "getConfigurationFor":
+                    return configuration;
+                case "destroy":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}